@@ -22,6 +22,7 @@ import javafx.scene.input.KeyEvent;
 import javafx.scene.layout.VBox;
 import org.fxmisc.richtext.CodeArea;
 import org.fxmisc.richtext.StyleClassedTextArea;
+import proj11DeutschMacDonald.bantam.ast.ASTNode;
 
 /**
  * Main controller handles actions evoked by the Main window.
@@ -94,6 +95,11 @@ public class Controller {
      */
     @FXML
     private Button checkLocalVarsButton;
+    /**
+     * Analyze all button defined in Main.fxml
+     */
+    @FXML
+    private Button analyzeAllButton;
     /**
      * TabPane defined in Main.fxml
      */
@@ -249,6 +255,7 @@ public class Controller {
         this.checkMainButton.disableProperty().bind(ifTabPaneEmpty);
         this.checkStringConstantsButton.disableProperty().bind(ifTabPaneEmpty);
         this.checkLocalVarsButton.disableProperty().bind(ifTabPaneEmpty);
+        this.analyzeAllButton.disableProperty().bind(ifTabPaneEmpty);
         this.closeMenuItem.disableProperty().bind(ifTabPaneEmpty);
         this.saveMenuItem.disableProperty().bind(ifTabPaneEmpty);
         this.saveAsMenuItem.disableProperty().bind(ifTabPaneEmpty);
@@ -302,6 +309,15 @@ public class Controller {
                     // Re-generates the tree
                     this.structureViewController.generateStructureTree(currentCodeArea.getText());
                 }
+                // if this is a bantam java file
+                else if (fileName.endsWith(".btm")) {
+                    this.structureViewController.attachCodeArea(currentCodeArea);
+                    this.structureViewController.generateBantamStructureTree(
+                            currentCodeArea.getText(), currentFile.getAbsolutePath());
+                }
+                else {
+                    this.resetStructureView();
+                }
             } else {
                 // Gets rid of open structure view
                 this.resetStructureView();
@@ -311,6 +327,7 @@ public class Controller {
 
     /**
      * Jump to the line where the selected class/method/field is declared.
+     * In a Bantam Java file, the declaration is selected as well.
      */
     @FXML
     private void handleFileTreeItemClicked()
@@ -320,7 +337,13 @@ public class Controller {
         if (selectedTreeItem != null)
         {
             int lineNum = this.structureViewController.getTreeItemLineNum(selectedTreeItem);
-            if (currentCodeArea != null) currentCodeArea.showParagraphAtTop(lineNum - 1);
+            if (currentCodeArea != null) {
+                currentCodeArea.showParagraphAtTop(lineNum - 1);
+                ASTNode node = this.structureViewController.getTreeItemNode(selectedTreeItem);
+                if (node != null && node.getEndOffset() <= currentCodeArea.getLength()) {
+                    currentCodeArea.selectRange(node.getStartOffset(), node.getEndOffset());
+                }
+            }
         }
     }
 
@@ -396,6 +419,19 @@ public class Controller {
                 event, this.tabPane.getFileFromTab(selectedTab));
     }
 
+    /**
+     * Calls the method that handles the Analyze all button action from the
+     * toolbarController.
+     *
+     * @param event Event object
+     */
+    @FXML
+    private void handleAnalyzeAllButtonAction(Event event) {
+        Tab selectedTab = this.tabPane.getSelectionModel().getSelectedItem();
+        this.toolbarController.handleAnalyzeAllButtonAction(
+                event, this.tabPane.getFileFromTab(selectedTab));
+    }
+
     /**
      * Calls the method that handles About menu item action from the
      * fileMenuController.
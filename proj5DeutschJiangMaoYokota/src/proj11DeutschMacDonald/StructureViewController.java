@@ -9,33 +9,46 @@
 package proj11DeutschMacDonald;
 
 import javafx.application.Platform;
+import javafx.scene.control.Label;
 import javafx.scene.control.TreeItem;
 import javafx.scene.control.TreeView;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
+import javafx.stage.Popup;
 
 import org.antlr.v4.runtime.CharStreams;
 import org.antlr.v4.runtime.CommonTokenStream;
 import org.antlr.v4.runtime.tree.ParseTree;
 import org.antlr.v4.runtime.tree.ParseTreeWalker;
 import org.antlr.v4.runtime.tree.TerminalNode;
+import org.fxmisc.richtext.CodeArea;
+import org.fxmisc.richtext.event.MouseOverTextEvent;
 import proj11DeutschMacDonald.Java8Files.Java8BaseListener;
 import proj11DeutschMacDonald.Java8Files.Java8Lexer;
 import proj11DeutschMacDonald.Java8Files.Java8Parser;
+import proj11DeutschMacDonald.bantam.ast.*;
+import proj11DeutschMacDonald.bantam.parser.Parser;
+import proj11DeutschMacDonald.bantam.util.CompilationException;
+import proj11DeutschMacDonald.bantam.util.ErrorHandler;
 
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
 
 
 /**
  * Controller that manages the generation and display of the structure of the
- * java code in the file currently being viewed.
+ * java code in the file currently being viewed.  For Bantam Java files it also
+ * keeps a SpanIndex of the file's AST, which is used to show the node under
+ * the mouse and to select the member the caret is in.
  */
 public class StructureViewController
 {
     private Map<TreeItem, Integer> treeItemLineNumMap;
+    private Map<TreeItem, ASTNode> treeItemNodeMap;
     private TreeView<String> treeView;
     private final ParseTreeWalker walker;
+    private volatile SpanIndex spanIndex; // the index of the current Bantam file, or null
 
     /**
      * Constructor for this class
@@ -43,6 +56,7 @@ public class StructureViewController
     public StructureViewController() {
         this.walker = new ParseTreeWalker();
         this.treeItemLineNumMap = new HashMap<>();
+        this.treeItemNodeMap = new HashMap<>();
     }
 
     /**
@@ -78,6 +92,8 @@ public class StructureViewController
                 walker.walk(codeStructureListener, tree);
 
                 Platform.runLater(() -> {
+                    spanIndex = null;
+                    treeItemNodeMap = new HashMap<>();
                     setRootNode(newRoot);
                 });
             }
@@ -85,6 +101,182 @@ public class StructureViewController
         structureTreeGenerationThread.start();
     }
 
+    /**
+     * Parses a Bantam Java file, storing its classes, fields and methods as
+     * TreeItems in our special tree and indexing the spans of its AST.
+     * Syntax errors are recovered from, so the structure is shown while the
+     * file is being edited.
+     *
+     * @param fileContents the text to be parsed
+     * @param sourceName the name of the file
+     */
+    public void generateBantamStructureTree(String fileContents, String sourceName)
+    {
+        Thread structureTreeGenerationThread = new Thread() {
+            public void run() {
+                Parser parser = new Parser(new ErrorHandler());
+                parser.setErrorRecovery(true);
+                Program root;
+                try {
+                    root = parser.parse(fileContents, sourceName);
+                } catch (CompilationException e) {
+                    return; // keep showing the last structure
+                }
+                SpanIndex index = new SpanIndex(root);
+
+                TreeItem<String> newRoot = new TreeItem<>(sourceName);
+                Map<TreeItem, Integer> lineNums = new HashMap<>();
+                Map<TreeItem, ASTNode> nodes = new HashMap<>();
+                Image classPic = loadImage("resources/c.png");
+                Image methodPic = loadImage("resources/m.png");
+                Image fieldPic = loadImage("resources/f.png");
+                ClassList classList = root.getClassList();
+                for (int i = 0; i < classList.getSize(); i++) {
+                    Class_ aClass = (Class_) classList.get(i);
+                    TreeItem<String> classNode = new TreeItem<>(aClass.getName());
+                    classNode.setGraphic(new ImageView(classPic));
+                    classNode.setExpanded(true);
+                    newRoot.getChildren().add(classNode);
+                    lineNums.put(classNode, aClass.getLineNum());
+                    nodes.put(classNode, aClass);
+
+                    MemberList memberList = aClass.getMemberList();
+                    for (int j = 0; j < memberList.getSize(); j++) {
+                        Member member = (Member) memberList.get(j);
+                        TreeItem<String> memberNode;
+                        if (member instanceof Method) {
+                            memberNode = new TreeItem<>(((Method) member).getName());
+                            memberNode.setGraphic(new ImageView(methodPic));
+                        }
+                        else {
+                            memberNode = new TreeItem<>(((Field) member).getName());
+                            memberNode.setGraphic(new ImageView(fieldPic));
+                        }
+                        classNode.getChildren().add(memberNode);
+                        lineNums.put(memberNode, member.getLineNum());
+                        nodes.put(memberNode, member);
+                    }
+                }
+
+                Platform.runLater(() -> {
+                    treeItemLineNumMap = lineNums;
+                    treeItemNodeMap = nodes;
+                    spanIndex = index;
+                    setRootNode(newRoot);
+                });
+            }
+        };
+        structureTreeGenerationThread.start();
+    }
+
+    /**
+     * Shows what is under the mouse in the given code area, and selects the
+     * member the caret is in.  The handlers are added once per code area and
+     * use the SpanIndex of the file shown last, so they do nothing unless the
+     * code area is showing a Bantam Java file.
+     *
+     * @param codeArea the code area of the selected tab
+     */
+    public void attachCodeArea(CodeArea codeArea)
+    {
+        if (codeArea.getProperties().containsKey(StructureViewController.class)) {
+            return;
+        }
+        codeArea.getProperties().put(StructureViewController.class, Boolean.TRUE);
+
+        Popup popup = new Popup();
+        Label popupLabel = new Label();
+        popupLabel.setStyle("-fx-background-color: lightyellow; -fx-padding: 4;");
+        popup.getContent().add(popupLabel);
+
+        codeArea.setMouseOverTextDelay(Duration.ofMillis(500));
+        codeArea.addEventHandler(MouseOverTextEvent.MOUSE_OVER_TEXT_BEGIN, event -> {
+            SpanIndex index = this.spanIndex;
+            if (index == null) {
+                return;
+            }
+            ASTNode node = index.findInnermost(event.getCharacterIndex());
+            if (node != null) {
+                popupLabel.setText(describe(index, node));
+                popup.show(codeArea, event.getScreenPosition().getX(),
+                        event.getScreenPosition().getY() + 10);
+            }
+        });
+        codeArea.addEventHandler(MouseOverTextEvent.MOUSE_OVER_TEXT_END, event -> {
+            popup.hide();
+        });
+
+        codeArea.caretPositionProperty().addListener((observable, oldPosition, newPosition) -> {
+            selectTreeItemAt(newPosition);
+        });
+    }
+
+    /**
+     * Selects the TreeItem of the field or method containing the given offset
+     *
+     * @param offset an offset in the current Bantam Java file
+     */
+    private void selectTreeItemAt(int offset)
+    {
+        SpanIndex index = this.spanIndex;
+        if (index == null) {
+            return;
+        }
+        ASTNode member = index.findEnclosing(offset, Member.class);
+        ASTNode node = member != null ? member : index.findEnclosing(offset, Class_.class);
+        for (Map.Entry<TreeItem, ASTNode> entry : this.treeItemNodeMap.entrySet()) {
+            if (entry.getValue() == node) {
+                this.treeView.getSelectionModel().select(entry.getKey());
+                return;
+            }
+        }
+    }
+
+    /**
+     * Describes a node for the popup shown when the mouse is over it
+     *
+     * @param index the SpanIndex containing the node
+     * @param node the node under the mouse
+     * @return the kind of node, its name if it has one, and where it is
+     */
+    private static String describe(SpanIndex index, ASTNode node)
+    {
+        String description = node.getClass().getSimpleName();
+        if (node instanceof VarExpr) {
+            description += " " + ((VarExpr) node).getName();
+        }
+        else if (node instanceof DispatchExpr) {
+            description += " " + ((DispatchExpr) node).getMethodName();
+        }
+        else if (node instanceof NewExpr) {
+            description += " " + ((NewExpr) node).getType();
+        }
+        Method method = index.findEnclosing(node.getStartOffset(), Method.class);
+        Class_ aClass = index.findEnclosing(node.getStartOffset(), Class_.class);
+        if (method != null && aClass != null) {
+            description += "\nin " + aClass.getName() + "." + method.getName();
+        }
+        return description + "\nline " + node.getLineNum();
+    }
+
+    /**
+     * Loads one of the structure view icons
+     *
+     * @param path the path of the icon relative to this class
+     * @return the icon, or null if it could not be loaded
+     */
+    private Image loadImage(String path)
+    {
+        try
+        {
+            return new Image(getClass().getResource(path).toString());
+        }
+        catch (Exception e)
+        {
+            return null;
+        }
+    }
+
     /**
      * Sets the currently displaying File TreeItem<String> View.
      *
@@ -101,6 +293,7 @@ public class StructureViewController
      */
     public void resetRootNode()
     {
+        this.spanIndex = null;
         this.setRootNode(null);
     }
 
@@ -114,6 +307,17 @@ public class StructureViewController
         return this.treeItemLineNumMap.get(treeItem);
     }
 
+    /**
+     * Returns the AST node of the specified tree item, if it belongs to
+     * a Bantam Java file
+     *
+     * @param treeItem Which TreeItem to get the node of
+     * @return the Class_ or Member shown by that tree item, or null
+     */
+    public ASTNode getTreeItemNode(TreeItem treeItem) {
+        return this.treeItemNodeMap.get(treeItem);
+    }
+
     /**
      * Private helper class that listens for code structure declarations
      * (classes, fields, methods) during a parse tree walk and builds a
@@ -8,17 +8,19 @@
 
 package proj11DeutschMacDonald;
 import javafx.application.Platform;
+import org.fxmisc.richtext.CodeArea;
 import org.fxmisc.richtext.StyleClassedTextArea;
 import javafx.event.Event;
 import proj11DeutschMacDonald.bantam.ast.*;
-import proj11DeutschMacDonald.bantam.lexer.Scanner;
-import proj11DeutschMacDonald.bantam.lexer.Token;
-import proj11DeutschMacDonald.bantam.parser.Parser;
+import proj11DeutschMacDonald.bantam.lexer.TokenBuffer;
+import proj11DeutschMacDonald.bantam.parser.ASTCache;
+import proj11DeutschMacDonald.bantam.parser.CompilationUnitCache;
+import proj11DeutschMacDonald.bantam.parser.CompilationUnitCache.CompilationUnit;
 import proj11DeutschMacDonald.bantam.semant.*;
 import proj11DeutschMacDonald.bantam.treedrawer.*;
-import proj11DeutschMacDonald.bantam.util.CompilationException;
+import proj11DeutschMacDonald.bantam.visitor.CompositeVisitor;
+import proj11DeutschMacDonald.bantam.visitor.ParallelVisitor;
 import proj11DeutschMacDonald.bantam.util.Error;
-import proj11DeutschMacDonald.bantam.util.ErrorHandler;
 import java.io.*;
 import java.util.*;
 
@@ -43,6 +45,25 @@ public class ToolBarController {
      * The FileMenuController
      */
     private FileMenuController fileMenuController;
+    /**
+     * The tokens, ASTs and check results of the texts compiled this session,
+     * backed by a disk cache of the ASTs of the texts parsed without errors
+     */
+    private final CompilationUnitCache compilationUnits;
+    /**
+     * Runs the checks that visit every class on the classes concurrently
+     */
+    private final ParallelVisitor parallelVisitor = new ParallelVisitor();
+
+    /**
+     * Constructor creating the compilation unit cache, using up to an
+     * eighth of the heap, and the AST cache in its default directory
+     */
+    public ToolBarController() {
+        this.compilationUnits = new CompilationUnitCache(
+                Runtime.getRuntime().maxMemory() / 8,
+                new ASTCache(ASTCache.getDefaultDirectory()));
+    }
 
     /**
      * Sets the console pane
@@ -73,21 +94,15 @@ public class ToolBarController {
     }
 
     /**
-     * Scans the given file and displays the tokens in a new tab
+     * Scans the text of the active tab and displays the tokens in a new tab.
+     * Unsaved changes are scanned too, so the file does not need to be saved.
      *
      * @param event Event object
      * @param file the Selected file
      */
     public void handleScanButtonAction(Event event, File file) {
-        int userResponse = fileMenuController.checkSaveBeforeContinue();
-        // user select cancel button
-        if (userResponse == 2) {
-            return;
-        }
-        // user select to save
-        else if (userResponse == 1) {
-            fileMenuController.handleSaveAction();
-        }
+        String source = tabPane.getActiveCodeArea().getText();
+        String sourceName = getSourceName(file);
 
         // run scan in new thread
         Thread scanThread = new Thread() {
@@ -97,12 +112,11 @@ public class ToolBarController {
                 });
 
                 try {
-                    ErrorHandler errorHandler = new ErrorHandler();
-                    Scanner scanner = new Scanner(file.getAbsolutePath(), errorHandler);
-                    String tokens = getTokens(scanner);
+                    CompilationUnit unit = compilationUnits.get(sourceName, source);
+                    String tokens = getTokens(unit.getTokens());
                     displayTokens(tokens);
 
-                    List<Error> errorList = errorHandler.getErrorList();
+                    List<Error> errorList = unit.getScanErrors();
                     printErrorList(errorList);
                     Platform.runLater(() -> {
                         console.appendText("Illegal tokens found: " + errorList.size() + "\n");
@@ -117,29 +131,24 @@ public class ToolBarController {
     }
 
     /**
-     * Scans and parses the given file and draws its AST
+     * Scans and parses the text of the active tab and draws its AST
      *
      * @param event Event object
      * @param file the selected file
      */
     public void handleScanAndParseButtonAction(Event event, File file) {
-        int userResponse = fileMenuController.checkSaveBeforeContinue();
-        // user select cancel button
-        if (userResponse == 2) {
-            return;
-        }
-        // user select to save
-        else if (userResponse == 1) {
-            fileMenuController.handleSaveAction();
-        }
+        CodeArea codeArea = tabPane.getActiveCodeArea();
+        String source = codeArea.getText();
+        String sourceName = getSourceName(file);
+        String title = tabPane.getSelectedTab().getText();
 
         // run scan and parse in new thread
         Thread scanAndParseThread = new Thread() {
             public void run() {
-                Program root = getParseTree(file);
+                CompilationUnit unit = getCompilationUnit(source, sourceName, codeArea);
 
-                if (root != null) {
-                    drawTree(root, file);
+                if (unit != null) {
+                    drawTree(unit.getProgram(), title);
                     Platform.runLater(() -> {
                         console.appendText("Scanning and parsing completed successfully\n");
                     });
@@ -150,21 +159,24 @@ public class ToolBarController {
     }
 
     /**
-     * Scans and parses the given file and checks for a Main.main method
+     * Scans and parses the text of the active tab and checks for a Main.main method
      *
      * @param event Event object
      * @param file the Selected file
      */
     public void handleCheckMainButtonAction(Event event, File file) {
-        MainMainVisitor mainMainVisitor = new MainMainVisitor();
+        CodeArea codeArea = tabPane.getActiveCodeArea();
+        String source = codeArea.getText();
+        String sourceName = getSourceName(file);
 
         Thread checkMainThread = new Thread() {
             public void run() {
-                Program root = getParseTree(file);
-                if (root == null) {
+                CompilationUnit unit = getCompilationUnit(source, sourceName, codeArea);
+                if (unit == null) {
                     return;
                 }
-                boolean result = mainMainVisitor.hasMain(root);
+                boolean result = unit.getResult("hasMain",
+                        root -> new MainMainVisitor().hasMain(root));
                 Platform.runLater(() -> {
                     console.appendText("Valid Main.main method exists: " + result + "\n");
                 });
@@ -174,26 +186,26 @@ public class ToolBarController {
     }
 
     /**
-     * Scans and parses the given file and shows the string constants in each method
+     * Scans and parses the text of the active tab and shows the string constants
+     * in each method
      *
      * @param event Event object
      * @param file the Selected file
      */
     public void handleCheckStringConstantsButtonAction(Event event, File file) {
-        StringConstantsVisitor stringConstantsVisitor = new StringConstantsVisitor();
+        CodeArea codeArea = tabPane.getActiveCodeArea();
+        String source = codeArea.getText();
+        String sourceName = getSourceName(file);
 
         Thread checkStringConstsThread = new Thread() {
             public void run() {
-                Program root = getParseTree(file);
-                if (root == null) {
+                CompilationUnit unit = getCompilationUnit(source, sourceName, codeArea);
+                if (unit == null) {
                     return;
                 }
-                Map<String, String> result = stringConstantsVisitor.getStringConstants(root);
-                String contents = "String constants in program: \n";
-                for (Map.Entry<String, String> entry : result.entrySet()) {
-                    contents += entry.getKey() + ": " + entry.getValue() + "\n";
-                }
-                final String displayString = contents;
+                Map<String, String> result = unit.getResult("stringConstants",
+                        root -> parallelVisitor.run(root, new StringConstantsVisitor()));
+                final String displayString = formatStringConstants(result);
                 Platform.runLater(() -> {
                     console.appendText(displayString);
                 });
@@ -203,27 +215,26 @@ public class ToolBarController {
     }
 
     /**
-     * Scans and parses the given file and counts the number of local variables
-     * in each method
+     * Scans and parses the text of the active tab and counts the number of
+     * local variables in each method
      *
      * @param event Event object
      * @param file the Selected file
      */
     public void handleCheckLocalVarsButtonAction(Event event, File file) {
-        NumLocalVarsVisitor numLocalVarsVisitor = new NumLocalVarsVisitor();
+        CodeArea codeArea = tabPane.getActiveCodeArea();
+        String source = codeArea.getText();
+        String sourceName = getSourceName(file);
 
         Thread checkLocalVarsThread = new Thread() {
             public void run() {
-                Program root = getParseTree(file);
-                if (root == null) {
+                CompilationUnit unit = getCompilationUnit(source, sourceName, codeArea);
+                if (unit == null) {
                     return;
                 }
-                Map<String, Integer> result = numLocalVarsVisitor.getNumLocalVars(root);
-                String contents = "Local variables per method:\n";
-                for (Map.Entry<String, Integer> entry : result.entrySet()) {
-                    contents += entry.getKey() + ": " + entry.getValue() + "\n";
-                }
-                final String displayString = contents;
+                Map<String, Integer> result = unit.getResult("numLocalVars",
+                        root -> parallelVisitor.run(root, new NumLocalVarsVisitor()));
+                final String displayString = formatNumLocalVars(result);
                 Platform.runLater(() -> {
                     console.appendText(displayString);
                 });
@@ -233,37 +244,124 @@ public class ToolBarController {
     }
 
     /**
-     * Helper method for running the Scanner and displaying results.
+     * Scans and parses the text of the active tab and runs all of the
+     * checks in one walk of the AST
+     *
+     * @param event Event object
+     * @param file the Selected file
+     */
+    public void handleAnalyzeAllButtonAction(Event event, File file) {
+        CodeArea codeArea = tabPane.getActiveCodeArea();
+        String source = codeArea.getText();
+        String sourceName = getSourceName(file);
+
+        Thread analyzeAllThread = new Thread() {
+            public void run() {
+                CompilationUnit unit = getCompilationUnit(source, sourceName, codeArea);
+                if (unit == null) {
+                    return;
+                }
+                List<Object> results = unit.getResult("analyzeAll", root -> {
+                    CompositeVisitor compositeVisitor = new CompositeVisitor();
+                    compositeVisitor.add(new MainMainVisitor());
+                    compositeVisitor.add(new StringConstantsVisitor());
+                    compositeVisitor.add(new NumLocalVarsVisitor());
+                    return compositeVisitor.run(root);
+                });
+                @SuppressWarnings("unchecked")
+                final String displayString =
+                        "Valid Main.main method exists: " + results.get(0) + "\n"
+                        + formatStringConstants((Map<String, String>) results.get(1))
+                        + formatNumLocalVars((Map<String, Integer>) results.get(2));
+                Platform.runLater(() -> {
+                    console.appendText(displayString);
+                });
+            }
+        };
+        analyzeAllThread.start();
+    }
+
+    /**
+     * Helper method for displaying the string constants in a program
+     *
+     * @param result the map from string constants to their names
+     * @return the text to display
+     */
+    private String formatStringConstants(Map<String, String> result) {
+        String contents = "String constants in program: \n";
+        for (Map.Entry<String, String> entry : result.entrySet()) {
+            contents += entry.getKey() + ": " + entry.getValue() + "\n";
+        }
+        return contents;
+    }
+
+    /**
+     * Helper method for displaying the number of local variables in each method
+     *
+     * @param result the map from class.method names to numbers of local variables
+     * @return the text to display
+     */
+    private String formatNumLocalVars(Map<String, Integer> result) {
+        String contents = "Local variables per method:\n";
+        for (Map.Entry<String, Integer> entry : result.entrySet()) {
+            contents += entry.getKey() + ": " + entry.getValue() + "\n";
+        }
+        return contents;
+    }
+
+    /**
+     * Helper method for displaying the results of the Scanner.
+     */
+    private String getTokens(TokenBuffer tokens) {
+        StringBuilder scannedTokens = new StringBuilder();
+        for (int i = 0; i < tokens.size(); i++) {
+            if (i > 0) {
+                scannedTokens.append("\n");
+            }
+            scannedTokens.append(tokens.getToken(i).toString());
+        }
+        return scannedTokens.toString();
+    }
+
+    /**
+     * Helper method for naming the text of the active tab in error messages
+     *
+     * @param file the file open in the active tab, or null if it was never saved
+     * @return the path of the file, or the title of the tab if there is no file
      */
-    private String getTokens(Scanner scanner) {
-        String scannedTokens = "";
-        Token token = scanner.scan();
-        while (token.kind != Token.Kind.EOF) {
-            scannedTokens += token.toString() + "\n";
-            token = scanner.scan();
+    private String getSourceName(File file) {
+        if (file != null) {
+            return file.getAbsolutePath();
         }
-        scannedTokens += token.toString();
-        return scannedTokens;
+        return tabPane.getSelectedTab().getText();
     }
 
     /**
-     * Helper method for running the Scanner and displaying results.
+     * Helper method for getting the compilation unit of a text, which runs
+     * the Parser unless the text was parsed before, and displaying results.
+     * If there are syntax errors, the first one is selected in the code area.
+     *
+     * @param source the text to parse
+     * @param sourceName the name to report errors under
+     * @param codeArea the code area the text came from
+     * @return the unit, or null if the text has errors
      */
-    private Program getParseTree(File file) {
+    private CompilationUnit getCompilationUnit(String source, String sourceName,
+                                               CodeArea codeArea) {
         try {
             Platform.runLater(() -> {
                 this.console.clear();
             });
 
-            ErrorHandler errorHandler = new ErrorHandler();
-            Parser parser = new Parser(errorHandler);
-
-            // parse and display
-            try {
-                return parser.parse(file.getAbsolutePath());
-            } catch (CompilationException e) {
-                printErrorList(errorHandler.getErrorList());
+            // parse, unless the same text was parsed before, reporting
+            // every syntax error at once
+            CompilationUnit unit = compilationUnits.get(sourceName, source);
+            List<Error> errorList = unit.getErrors();
+            if (errorList.isEmpty()) {
+                return unit;
             }
+            printErrorList(errorList);
+            highlightFirstError(source, unit.getProgram(), errorList, codeArea);
         }
         catch (Throwable e) {
             Platform.runLater(() -> {
@@ -274,6 +372,67 @@ public class ToolBarController {
         return null;
     }
 
+    /**
+     * Helper method for selecting the code of the first error with a line
+     * number.  The partial AST is indexed by span, and the outermost node
+     * starting on the error's line is selected up to the end of the line;
+     * if no node starts there, the whole line is selected.
+     *
+     * @param source the text that was parsed
+     * @param root the AST built by error recovery, or null if there is none
+     * @param errorList the errors found
+     * @param codeArea the code area the text came from
+     */
+    private void highlightFirstError(String source, Program root,
+                                     List<Error> errorList, CodeArea codeArea) {
+        int lineNum = -1;
+        for (Error error : errorList) {
+            if (error.getLineNum() > 0) {
+                lineNum = error.getLineNum();
+                break;
+            }
+        }
+        if (lineNum < 0) {
+            return;
+        }
+
+        // find the offsets of the start and end of the line
+        int lineStart = 0;
+        for (int line = 1; line < lineNum && lineStart >= 0; line++) {
+            lineStart = source.indexOf('\n', lineStart);
+            lineStart = lineStart < 0 ? -1 : lineStart + 1;
+        }
+        if (lineStart < 0) {
+            return;
+        }
+        int lineEnd = source.indexOf('\n', lineStart);
+        if (lineEnd < 0) {
+            lineEnd = source.length();
+        }
+
+        int start = lineStart;
+        int end = lineEnd;
+        if (root != null) {
+            for (ASTNode node : new SpanIndex(root).findOverlapping(lineStart, lineEnd)) {
+                if (node.getStartOffset() >= lineStart) {
+                    start = node.getStartOffset();
+                    end = Math.min(node.getEndOffset(), lineEnd);
+                    break;
+                }
+            }
+        }
+
+        final int selectionStart = start;
+        final int selectionEnd = end;
+        Platform.runLater(() -> {
+            // the text may have been edited since it was parsed
+            if (selectionEnd <= codeArea.getLength()) {
+                codeArea.selectRange(selectionStart, selectionEnd);
+                codeArea.requestFollowCaret();
+            }
+        });
+    }
+
     /**
      * Helper method for displaying a new tab with all the scanned tokens
      * @param scanResults the String of all the tokens to display
@@ -287,11 +446,11 @@ public class ToolBarController {
     /**
      * Helper function for drawing an AST
      * @param root the Program node at the root of the AST
-     * @param file the file to draw an AST for
+     * @param title the title of the tab the AST was parsed from
      */
-    private void drawTree(Program root, File file) {
+    private void drawTree(Program root, String title) {
         Drawer drawer = new Drawer();
-        drawer.draw(file.getName(), root);
+        drawer.draw(title, root);
     }
 
     /**
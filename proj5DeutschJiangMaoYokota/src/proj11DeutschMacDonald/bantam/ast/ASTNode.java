@@ -257,6 +257,16 @@ public abstract class ASTNode {
      */
     protected int lineNum;
 
+    /**
+     * The offset of the first character of this node in the source
+     */
+    protected int startOffset;
+
+    /**
+     * The offset just past the last character of this node in the source
+     */
+    protected int endOffset;
+
     /**
      * ASTNode constructor
      *
@@ -275,6 +285,35 @@ public abstract class ASTNode {
         return lineNum;
     }
 
+    /**
+     * Get the offset of the first character of this node in the source
+     *
+     * @return start offset
+     */
+    public int getStartOffset() {
+        return startOffset;
+    }
+
+    /**
+     * Get the offset just past the last character of this node in the source
+     *
+     * @return end offset
+     */
+    public int getEndOffset() {
+        return endOffset;
+    }
+
+    /**
+     * Set the characters of the source this node was parsed from
+     *
+     * @param startOffset the offset of the first character
+     * @param endOffset   the offset just past the last character
+     */
+    public void setSpan(int startOffset, int endOffset) {
+        this.startOffset = startOffset;
+        this.endOffset = endOffset;
+    }
+
     /**
      * Visitor method
      *
@@ -0,0 +1,1008 @@
+/*
+ * File: bantam.ast.ArenaAST.java
+ * CS361 Project 11
+ * Names: Martin Deutsch and Wyett MacDonald
+ * Date: 2/20/2019
+ * This file contains the ArenaAST, which stores a whole AST as int
+ * records in one array
+ */
+
+package proj11DeutschMacDonald.bantam.ast;
+
+import proj11DeutschMacDonald.bantam.visitor.PrePostVisitor;
+import proj11DeutschMacDonald.bantam.visitor.Visitor;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An ArenaAST is a compact copy of an AST.  Every node is a record of ints
+ * in one array instead of a separate object: the first four ints are the
+ * kind of the node, its line number and its start and end offsets, and the
+ * rest are its slots.  A slot
+ * holds the index of a child record, the id of a string in the string
+ * table, or a flag, and -1 stands for null.  A list node has the number of
+ * elements in its first slot, followed by the index of each element.
+ * <p>
+ * The slots of each kind are, in order:
+ * <pre>
+ *   PROGRAM          classList
+ *   CLASS            filename, name, parent, memberList
+ *   FIELD            type, name, init
+ *   METHOD           returnType, name, formalList, stmtList
+ *   FORMAL           type, name
+ *   DECL_STMT        type, name, init
+ *   EXPR_STMT        expr
+ *   IF_STMT          predExpr, thenStmt, elseStmt
+ *   WHILE_STMT       predExpr, bodyStmt
+ *   FOR_STMT         initExpr, predExpr, updateExpr, bodyStmt
+ *   BREAK_STMT       (none)
+ *   BLOCK_STMT       stmtList
+ *   RETURN_STMT      expr
+ * </pre>
+ * Every expression starts with its exprType, followed by:
+ * <pre>
+ *   DISPATCH_EXPR    refExpr, methodName, actualList
+ *   NEW_EXPR         type
+ *   NEW_ARRAY_EXPR   type, size
+ *   INSTANCEOF_EXPR  expr, type, upCheck
+ *   CAST_EXPR        type, expr, upCast
+ *   ASSIGN_EXPR      refName, name, expr
+ *   ARRAY_ASSIGN_EXPR refName, name, index, expr
+ *   binary kinds     leftExpr, rightExpr
+ *   NEG_EXPR, NOT_EXPR         expr
+ *   INCR_EXPR, DECR_EXPR       expr, isPostfix
+ *   VAR_EXPR         ref, name
+ *   ARRAY_EXPR       ref, name, index
+ *   CONST_INT_EXPR   constant, intConstant
+ *   CONST_BOOLEAN_EXPR, CONST_STRING_EXPR   constant
+ * </pre>
+ * The records are written children first, so the records of a subtree are
+ * contiguous and end with the record of its root.  fromProgram() and
+ * toProgram() convert between the two forms without recursion, so trees of
+ * any depth can be converted, and toBytes() and fromBytes() save and
+ * restore an ArenaAST.  The saved form
+ * starts with a magic number and FORMAT_VERSION, followed by the root, the
+ * node count, the records and the string table, each string stored once as
+ * UTF-8, so it is loaded with one bulk copy of the records.  Existing
+ * Visitors run over an ArenaAST through accept(), which rebuilds the object
+ * AST first, or acceptEachClass(), which rebuilds one class at a time so
+ * that only a single class is ever held as objects.
+ *
+ * @author Martin Deutsch
+ * @author Wyett MacDonald
+ */
+public class ArenaAST {
+
+    // the kinds of node
+    public static final int PROGRAM = 0;
+    public static final int CLASS_LIST = 1;
+    public static final int CLASS = 2;
+    public static final int MEMBER_LIST = 3;
+    public static final int FIELD = 4;
+    public static final int METHOD = 5;
+    public static final int FORMAL_LIST = 6;
+    public static final int FORMAL = 7;
+    public static final int STMT_LIST = 8;
+    public static final int DECL_STMT = 9;
+    public static final int EXPR_STMT = 10;
+    public static final int IF_STMT = 11;
+    public static final int WHILE_STMT = 12;
+    public static final int FOR_STMT = 13;
+    public static final int BREAK_STMT = 14;
+    public static final int BLOCK_STMT = 15;
+    public static final int RETURN_STMT = 16;
+    public static final int EXPR_LIST = 17;
+    public static final int DISPATCH_EXPR = 18;
+    public static final int NEW_EXPR = 19;
+    public static final int NEW_ARRAY_EXPR = 20;
+    public static final int INSTANCEOF_EXPR = 21;
+    public static final int CAST_EXPR = 22;
+    public static final int ASSIGN_EXPR = 23;
+    public static final int ARRAY_ASSIGN_EXPR = 24;
+    public static final int EQ_EXPR = 25;
+    public static final int NE_EXPR = 26;
+    public static final int LT_EXPR = 27;
+    public static final int LEQ_EXPR = 28;
+    public static final int GT_EXPR = 29;
+    public static final int GEQ_EXPR = 30;
+    public static final int AND_EXPR = 31;
+    public static final int OR_EXPR = 32;
+    public static final int PLUS_EXPR = 33;
+    public static final int MINUS_EXPR = 34;
+    public static final int TIMES_EXPR = 35;
+    public static final int DIVIDE_EXPR = 36;
+    public static final int MODULUS_EXPR = 37;
+    public static final int NEG_EXPR = 38;
+    public static final int NOT_EXPR = 39;
+    public static final int INCR_EXPR = 40;
+    public static final int DECR_EXPR = 41;
+    public static final int VAR_EXPR = 42;
+    public static final int ARRAY_EXPR = 43;
+    public static final int CONST_INT_EXPR = 44;
+    public static final int CONST_BOOLEAN_EXPR = 45;
+    public static final int CONST_STRING_EXPR = 46;
+
+    // the version of the layout of records and of the saved form, to be
+    // increased whenever either changes
+    public static final int FORMAT_VERSION = 1;
+
+    // the number of ints before the slots of a record
+    private static final int HEADER_SIZE = 4;
+
+    // the number of slots of each kind of record, or -1 for a list
+    private static final int[] SLOT_COUNTS = {
+            1, -1, 4, -1, 3, 4, -1, 2,           // PROGRAM to FORMAL
+            -1, 3, 1, 3, 2, 4, 0, 1, 1,          // STMT_LIST to RETURN_STMT
+            -1, 4, 2, 3, 4, 4, 4, 5,             // EXPR_LIST to ARRAY_ASSIGN_EXPR
+            3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, // EQ_EXPR to MODULUS_EXPR
+            2, 2, 3, 3, 3, 4, 3, 2, 2            // NEG_EXPR to CONST_STRING_EXPR
+    };
+
+    // the first int of the saved form, "BAST"
+    private static final int MAGIC = 0x42415354;
+
+    private final int[] records;
+    private final String[] strings;
+    private final int root;
+    private final int nodeCount;
+
+    /**
+     * Constructor for an ArenaAST, used by fromProgram() and fromBytes()
+     *
+     * @param records the records of all the nodes
+     * @param strings the string table
+     * @param root the index of the Program record
+     * @param nodeCount the number of nodes
+     */
+    private ArenaAST(int[] records, String[] strings, int root, int nodeCount) {
+        this.records = records;
+        this.strings = strings;
+        this.root = root;
+        this.nodeCount = nodeCount;
+    }
+
+    /**
+     * Copies an AST into a new ArenaAST.  Method bodies that have not been
+     * parsed yet are parsed first.
+     *
+     * @param program the root of the AST
+     * @return the ArenaAST holding the same tree
+     */
+    public static ArenaAST fromProgram(Program program) {
+        Encoder encoder = new Encoder();
+        int root = encoder.encode(program);
+        return new ArenaAST(Arrays.copyOf(encoder.records, encoder.length),
+                encoder.strings.toArray(new String[0]), root, encoder.nodeCount);
+    }
+
+    /**
+     * Saves this ArenaAST in the form read by fromBytes()
+     *
+     * @return the saved form
+     */
+    public byte[] toBytes() {
+        byte[][] encoded = new byte[strings.length][];
+        int size = 6 * 4 + records.length * 4;
+        for (int i = 0; i < strings.length; i++) {
+            encoded[i] = strings[i].getBytes(StandardCharsets.UTF_8);
+            size += 4 + encoded[i].length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(MAGIC);
+        buffer.putInt(FORMAT_VERSION);
+        buffer.putInt(root);
+        buffer.putInt(nodeCount);
+        buffer.putInt(records.length);
+        buffer.putInt(strings.length);
+        buffer.asIntBuffer().put(records);
+        buffer.position(buffer.position() + records.length * 4);
+        for (byte[] string : encoded) {
+            buffer.putInt(string.length);
+            buffer.put(string);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Restores an ArenaAST saved by toBytes()
+     *
+     * @param bytes the saved form
+     * @return the ArenaAST
+     * @throws IllegalArgumentException if the bytes are not an ArenaAST
+     *         saved with the current FORMAT_VERSION
+     */
+    public static ArenaAST fromBytes(byte[] bytes) {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            if (buffer.getInt() != MAGIC) {
+                throw new IllegalArgumentException("Not a saved AST");
+            }
+            int version = buffer.getInt();
+            if (version != FORMAT_VERSION) {
+                throw new IllegalArgumentException("Saved AST has format version "
+                        + version + ", expected " + FORMAT_VERSION);
+            }
+            int root = buffer.getInt();
+            int nodeCount = buffer.getInt();
+            int recordsLength = buffer.getInt();
+            int stringCount = buffer.getInt();
+            if (recordsLength < 0 || recordsLength > buffer.remaining() / 4
+                    || root < 0 || root >= recordsLength || stringCount < 0) {
+                throw new IllegalArgumentException("Saved AST is corrupt");
+            }
+
+            int[] records = new int[recordsLength];
+            buffer.asIntBuffer().get(records);
+            buffer.position(buffer.position() + recordsLength * 4);
+            String[] strings = new String[stringCount];
+            for (int i = 0; i < stringCount; i++) {
+                int length = buffer.getInt();
+                if (length < 0 || length > buffer.remaining()) {
+                    throw new IllegalArgumentException("Saved AST is corrupt");
+                }
+                strings[i] = new String(bytes, buffer.position(), length,
+                        StandardCharsets.UTF_8);
+                buffer.position(buffer.position() + length);
+            }
+            if (buffer.hasRemaining()) {
+                throw new IllegalArgumentException("Saved AST is corrupt");
+            }
+            return new ArenaAST(records, strings, root, nodeCount);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Saved AST is truncated");
+        }
+    }
+
+    /**
+     * @return the index of the Program record
+     */
+    public int getRoot() {
+        return root;
+    }
+
+    /**
+     * @return the number of nodes in the tree
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * @return the number of ints used by the records
+     */
+    public int getRecordsLength() {
+        return records.length;
+    }
+
+    /**
+     * @param node the index of a record
+     * @return the kind of the node
+     */
+    public int getKind(int node) {
+        return records[node];
+    }
+
+    /**
+     * @param node the index of a record
+     * @return the line number of the node
+     */
+    public int getLineNum(int node) {
+        return records[node + 1];
+    }
+
+    /**
+     * @param node the index of a record
+     * @return the offset of the first character of the node
+     */
+    public int getStartOffset(int node) {
+        return records[node + 2];
+    }
+
+    /**
+     * @param node the index of a record
+     * @return the offset just past the last character of the node
+     */
+    public int getEndOffset(int node) {
+        return records[node + 3];
+    }
+
+    /**
+     * Get one slot of a record: a child index, a string id or a flag
+     *
+     * @param node the index of a record
+     * @param slot the number of the slot, starting at 0
+     * @return the value of the slot, or -1 for null
+     */
+    public int getSlot(int node, int slot) {
+        return records[node + HEADER_SIZE + slot];
+    }
+
+    /**
+     * @param id the id of a string, or -1
+     * @return the string with the given id, or null for -1
+     */
+    public String getString(int id) {
+        return id < 0 ? null : strings[id];
+    }
+
+    /**
+     * @param node the index of a list record
+     * @return the number of elements in the list
+     */
+    public int getListSize(int node) {
+        return records[node + HEADER_SIZE];
+    }
+
+    /**
+     * @param node the index of a list record
+     * @param index the position of the element in the list
+     * @return the index of the element's record
+     */
+    public int getListElement(int node, int index) {
+        return records[node + HEADER_SIZE + 1 + index];
+    }
+
+    /**
+     * @param node the index of a record
+     * @return the number of ints used by the record
+     * @throws IllegalArgumentException if the record has an unknown kind
+     */
+    public int getRecordSize(int node) {
+        int kind = getKind(node);
+        if (kind < 0 || kind >= SLOT_COUNTS.length) {
+            throw new IllegalArgumentException("Unknown node kind " + kind);
+        }
+        int slotCount = SLOT_COUNTS[kind];
+        return HEADER_SIZE + (slotCount < 0 ? 1 + getListSize(node) : slotCount);
+    }
+
+    /**
+     * Rebuilds the object AST
+     *
+     * @return the root of the AST
+     */
+    public Program toProgram() {
+        return (Program) new Decoder(0, root).decode();
+    }
+
+    /**
+     * Runs a Visitor over the tree, as if it were accepted by the Program
+     * returned by toProgram()
+     *
+     * @param v the Visitor
+     * @return the result of visiting the Program
+     */
+    public Object accept(Visitor v) {
+        return toProgram().accept(v);
+    }
+
+    /**
+     * Runs a Visitor over each class in turn, rebuilding only that class as
+     * objects.  The Visitor's methods for the Program and the ClassList are
+     * not called.
+     *
+     * @param v the Visitor
+     */
+    public void acceptEachClass(Visitor v) {
+        int classList = getSlot(root, 0);
+        int start = 0;
+        for (int i = 0; i < getListSize(classList); i++) {
+            int class_ = getListElement(classList, i);
+            new Decoder(start, class_).decode().accept(v);
+            start = class_ + getRecordSize(class_);
+        }
+    }
+
+    /**
+     * A Decoder rebuilds the object nodes of a subtree.  The records of a
+     * subtree are contiguous and end with the record of its root, with every
+     * child before its parent, so they are rebuilt in one pass from first to
+     * last, each node finding its children already built.  No recursion is
+     * needed, so a tree of any depth can be rebuilt.
+     */
+    private final class Decoder {
+        private final int start;       // the index of the first record
+        private final int end;         // the index of the root's record
+        private final ASTNode[] built; // the node of each record rebuilt,
+                                       // at its index minus start
+        private int current;           // the index of the record being rebuilt
+
+        /**
+         * Constructor creating a Decoder of the given records
+         *
+         * @param start the index of the first record of the subtree
+         * @param end the index of the record of the root of the subtree
+         */
+        Decoder(int start, int end) {
+            this.start = start;
+            this.end = end;
+            this.built = new ASTNode[end - start + 1];
+        }
+
+        /**
+         * @return the root of the subtree
+         * @throws IllegalArgumentException if the records are not a subtree
+         */
+        ASTNode decode() {
+            current = start;
+            while (current < end) {
+                build();
+                int size = getRecordSize(current);
+                if (size < HEADER_SIZE) {
+                    throw new IllegalArgumentException("AST records are corrupt");
+                }
+                current += size;
+            }
+            if (current != end) {
+                throw new IllegalArgumentException("AST records are corrupt");
+            }
+            return build();
+        }
+
+        /**
+         * Rebuilds the node of the current record, whose children have been
+         * rebuilt
+         *
+         * @return the node
+         */
+        private ASTNode build() {
+            ASTNode astNode = decodeNode(current, getLineNum(current));
+            astNode.setSpan(getStartOffset(current), getEndOffset(current));
+            built[current - start] = astNode;
+            return astNode;
+        }
+
+        /**
+         * @param node the index of a child's record, or -1
+         * @return the rebuilt child, or null for -1
+         * @throws IllegalArgumentException if the child has not been rebuilt
+         */
+        private ASTNode child(int node) {
+            if (node < 0) {
+                return null;
+            }
+            if (node < start || node >= current || built[node - start] == null) {
+                throw new IllegalArgumentException("AST records are corrupt");
+            }
+            return built[node - start];
+        }
+
+        /**
+         * Rebuilds the object node of a record, apart from its span
+         *
+         * @param node the index of the record
+         * @param line the line number of the node
+         * @return the node
+         */
+        private ASTNode decodeNode(int node, int line) {
+            switch (getKind(node)) {
+                case PROGRAM:
+                    return new Program(line, (ClassList) child(getSlot(node, 0)));
+                case CLASS_LIST:
+                    return decodeList(node, new ClassList(line));
+                case CLASS:
+                    return new Class_(line, string(node, 0), string(node, 1),
+                            string(node, 2), (MemberList) child(getSlot(node, 3)));
+                case MEMBER_LIST:
+                    return decodeList(node, new MemberList(line));
+                case FIELD:
+                    return new Field(line, string(node, 0), string(node, 1), expr(node, 2));
+                case METHOD:
+                    return new Method(line, string(node, 0), string(node, 1),
+                            (FormalList) child(getSlot(node, 2)),
+                            (StmtList) child(getSlot(node, 3)));
+                case FORMAL_LIST:
+                    return decodeList(node, new FormalList(line));
+                case FORMAL:
+                    return new Formal(line, string(node, 0), string(node, 1));
+                case STMT_LIST:
+                    return decodeList(node, new StmtList(line));
+                case DECL_STMT:
+                    DeclStmt declStmt = new DeclStmt(line, string(node, 1), expr(node, 2));
+                    declStmt.setType(string(node, 0));
+                    return declStmt;
+                case EXPR_STMT:
+                    return new ExprStmt(line, expr(node, 0));
+                case IF_STMT:
+                    return new IfStmt(line, expr(node, 0), stmt(node, 1), stmt(node, 2));
+                case WHILE_STMT:
+                    return new WhileStmt(line, expr(node, 0), stmt(node, 1));
+                case FOR_STMT:
+                    return new ForStmt(line, expr(node, 0), expr(node, 1),
+                            expr(node, 2), stmt(node, 3));
+                case BREAK_STMT:
+                    return new BreakStmt(line);
+                case BLOCK_STMT:
+                    return new BlockStmt(line, (StmtList) child(getSlot(node, 0)));
+                case RETURN_STMT:
+                    return new ReturnStmt(line, expr(node, 0));
+                case EXPR_LIST:
+                    return decodeList(node, new ExprList(line));
+                default:
+                    Expr expr = decodeExpr(node, line);
+                    expr.setExprType(string(node, 0));
+                    return expr;
+            }
+        }
+
+        /**
+         * Rebuilds the object node of an expression record, apart from its type
+         *
+         * @param node the index of the record
+         * @param line the line number of the node
+         * @return the expression
+         */
+        private Expr decodeExpr(int node, int line) {
+            switch (getKind(node)) {
+                case DISPATCH_EXPR:
+                    return new DispatchExpr(line, expr(node, 1), string(node, 2),
+                            (ExprList) child(getSlot(node, 3)));
+                case NEW_EXPR:
+                    return new NewExpr(line, string(node, 1));
+                case NEW_ARRAY_EXPR:
+                    return new NewArrayExpr(line, string(node, 1), expr(node, 2));
+                case INSTANCEOF_EXPR:
+                    InstanceofExpr instanceofExpr =
+                            new InstanceofExpr(line, expr(node, 1), string(node, 2));
+                    instanceofExpr.setUpCheck(getSlot(node, 3) != 0);
+                    return instanceofExpr;
+                case CAST_EXPR:
+                    CastExpr castExpr = new CastExpr(line, string(node, 1), expr(node, 2));
+                    castExpr.setUpCast(getSlot(node, 3) != 0);
+                    return castExpr;
+                case ASSIGN_EXPR:
+                    return new AssignExpr(line, string(node, 1), string(node, 2),
+                            expr(node, 3));
+                case ARRAY_ASSIGN_EXPR:
+                    return new ArrayAssignExpr(line, string(node, 1), string(node, 2),
+                            expr(node, 3), expr(node, 4));
+                case EQ_EXPR:
+                    return new BinaryCompEqExpr(line, expr(node, 1), expr(node, 2));
+                case NE_EXPR:
+                    return new BinaryCompNeExpr(line, expr(node, 1), expr(node, 2));
+                case LT_EXPR:
+                    return new BinaryCompLtExpr(line, expr(node, 1), expr(node, 2));
+                case LEQ_EXPR:
+                    return new BinaryCompLeqExpr(line, expr(node, 1), expr(node, 2));
+                case GT_EXPR:
+                    return new BinaryCompGtExpr(line, expr(node, 1), expr(node, 2));
+                case GEQ_EXPR:
+                    return new BinaryCompGeqExpr(line, expr(node, 1), expr(node, 2));
+                case AND_EXPR:
+                    return new BinaryLogicAndExpr(line, expr(node, 1), expr(node, 2));
+                case OR_EXPR:
+                    return new BinaryLogicOrExpr(line, expr(node, 1), expr(node, 2));
+                case PLUS_EXPR:
+                    return new BinaryArithPlusExpr(line, expr(node, 1), expr(node, 2));
+                case MINUS_EXPR:
+                    return new BinaryArithMinusExpr(line, expr(node, 1), expr(node, 2));
+                case TIMES_EXPR:
+                    return new BinaryArithTimesExpr(line, expr(node, 1), expr(node, 2));
+                case DIVIDE_EXPR:
+                    return new BinaryArithDivideExpr(line, expr(node, 1), expr(node, 2));
+                case MODULUS_EXPR:
+                    return new BinaryArithModulusExpr(line, expr(node, 1), expr(node, 2));
+                case NEG_EXPR:
+                    return new UnaryNegExpr(line, expr(node, 1));
+                case NOT_EXPR:
+                    return new UnaryNotExpr(line, expr(node, 1));
+                case INCR_EXPR:
+                    return new UnaryIncrExpr(line, expr(node, 1), getSlot(node, 2) != 0);
+                case DECR_EXPR:
+                    return new UnaryDecrExpr(line, expr(node, 1), getSlot(node, 2) != 0);
+                case VAR_EXPR:
+                    return new VarExpr(line, expr(node, 1), string(node, 2));
+                case ARRAY_EXPR:
+                    return new ArrayExpr(line, expr(node, 1), string(node, 2), expr(node, 3));
+                case CONST_INT_EXPR:
+                    return new ConstIntExpr(line, string(node, 1), getSlot(node, 2));
+                case CONST_BOOLEAN_EXPR:
+                    return new ConstBooleanExpr(line, string(node, 1));
+                case CONST_STRING_EXPR:
+                    return new ConstStringExpr(line, string(node, 1));
+                default:
+                    throw new IllegalArgumentException("Unknown node kind " + getKind(node));
+            }
+        }
+
+        /**
+         * Adds the elements of a list record to an empty ListNode
+         *
+         * @param node the index of the list record
+         * @param list the empty ListNode
+         * @return the filled ListNode
+         */
+        private ListNode decodeList(int node, ListNode list) {
+            int size = getListSize(node);
+            for (int i = 0; i < size; i++) {
+                list.addElement(child(getListElement(node, i)));
+            }
+            list.trimToSize();
+            return list;
+        }
+
+        /**
+         * @return the string in the given slot of a record
+         */
+        private String string(int node, int slot) {
+            return getString(getSlot(node, slot));
+        }
+
+        /**
+         * @return the expression in the given slot of a record
+         */
+        private Expr expr(int node, int slot) {
+            return (Expr) child(getSlot(node, slot));
+        }
+
+        /**
+         * @return the statement in the given slot of a record
+         */
+        private Stmt stmt(int node, int slot) {
+            return (Stmt) child(getSlot(node, slot));
+        }
+    }
+
+    /**
+     * The Visitor that writes the records of an AST.  The tree is walked by
+     * PrePostVisitor.walk(), so a tree of any depth can be written, and each
+     * node is visited after its children.  The index of each record written
+     * is pushed on a stack, so each visit method pops the records of the
+     * children of its node, last child first, writes the record of its node
+     * and pushes its index.
+     */
+    private static class Encoder extends Visitor {
+        private int[] records = new int[1024];
+        private int length;
+        private int nodeCount;
+        private int[] childStack = new int[64]; // the records not yet used by a parent
+        private int childCount;                 // the number of records on the stack
+        private final Map<String, Integer> stringIds = new HashMap<>();
+        private final List<String> strings = new ArrayList<>();
+
+        /**
+         * @param root the root of a tree
+         * @return the index of the root's record
+         */
+        int encode(ASTNode root) {
+            new PrePostVisitor() {
+                protected boolean preVisit(ASTNode node) {
+                    return true;
+                }
+
+                protected void postVisit(ASTNode node) {
+                    node.accept(Encoder.this);
+                }
+            }.walk(root);
+            return pop();
+        }
+
+        /**
+         * @return the index of the record of the last child not yet used
+         */
+        private int pop() {
+            return childStack[--childCount];
+        }
+
+        /**
+         * @param child a child that is written only if it is not null
+         * @return the index of the child's record, or -1 for null
+         */
+        private int pop(ASTNode child) {
+            return child == null ? -1 : pop();
+        }
+
+        /**
+         * @param string a string, or null
+         * @return the id of the string in the string table, or -1 for null
+         */
+        private int id(String string) {
+            if (string == null) {
+                return -1;
+            }
+            Integer id = stringIds.get(string);
+            if (id == null) {
+                id = strings.size();
+                stringIds.put(string, id);
+                strings.add(string);
+            }
+            return id;
+        }
+
+        /**
+         * Appends a record and pushes its index
+         *
+         * @param kind the kind of the node
+         * @param node the node
+         * @param slots the values of the slots
+         * @return null
+         */
+        private Object record(int kind, ASTNode node, int... slots) {
+            int size = HEADER_SIZE + slots.length;
+            if (length + size > records.length) {
+                records = Arrays.copyOf(records,
+                        Math.max(records.length * 2, length + size));
+            }
+            if (childCount == childStack.length) {
+                childStack = Arrays.copyOf(childStack, childCount * 2);
+            }
+            childStack[childCount++] = length;
+            records[length] = kind;
+            records[length + 1] = node.getLineNum();
+            records[length + 2] = node.getStartOffset();
+            records[length + 3] = node.getEndOffset();
+            System.arraycopy(slots, 0, records, length + HEADER_SIZE, slots.length);
+            length += size;
+            nodeCount++;
+            return null;
+        }
+
+        /**
+         * Appends the record of a list whose elements have been written
+         */
+        private Object list(int kind, ListNode node) {
+            int[] slots = new int[node.getSize() + 1];
+            slots[0] = node.getSize();
+            for (int i = node.getSize(); i > 0; i--) {
+                slots[i] = pop();
+            }
+            return record(kind, node, slots);
+        }
+
+        /**
+         * Appends the record of a binary expression whose operands have
+         * been written
+         */
+        private Object binary(int kind, BinaryExpr node) {
+            int right = pop();
+            int left = pop();
+            return record(kind, node, id(node.getExprType()), left, right);
+        }
+
+        /**
+         * Appends the record of a unary expression whose operand has been
+         * written
+         */
+        private Object unary(int kind, UnaryExpr node) {
+            int expr = pop();
+            if (kind == INCR_EXPR || kind == DECR_EXPR) {
+                return record(kind, node, id(node.getExprType()), expr,
+                        node.isPostfix() ? 1 : 0);
+            }
+            return record(kind, node, id(node.getExprType()), expr);
+        }
+
+        public Object visit(Program node) {
+            return record(PROGRAM, node, pop());
+        }
+
+        public Object visit(ClassList node) {
+            return list(CLASS_LIST, node);
+        }
+
+        public Object visit(Class_ node) {
+            int memberList = pop();
+            return record(CLASS, node, id(node.getFilename()), id(node.getName()),
+                    id(node.getParent()), memberList);
+        }
+
+        public Object visit(MemberList node) {
+            return list(MEMBER_LIST, node);
+        }
+
+        public Object visit(Field node) {
+            int init = pop(node.getInit());
+            return record(FIELD, node, id(node.getType()), id(node.getName()), init);
+        }
+
+        public Object visit(Method node) {
+            int stmtList = pop();
+            int formalList = pop();
+            return record(METHOD, node, id(node.getReturnType()), id(node.getName()),
+                    formalList, stmtList);
+        }
+
+        public Object visit(FormalList node) {
+            return list(FORMAL_LIST, node);
+        }
+
+        public Object visit(Formal node) {
+            return record(FORMAL, node, id(node.getType()), id(node.getName()));
+        }
+
+        public Object visit(StmtList node) {
+            return list(STMT_LIST, node);
+        }
+
+        public Object visit(DeclStmt node) {
+            int init = pop(node.getInit());
+            return record(DECL_STMT, node, id(node.getType()), id(node.getName()), init);
+        }
+
+        public Object visit(ExprStmt node) {
+            return record(EXPR_STMT, node, pop());
+        }
+
+        public Object visit(IfStmt node) {
+            int elseStmt = pop(node.getElseStmt());
+            int thenStmt = pop();
+            int predExpr = pop();
+            return record(IF_STMT, node, predExpr, thenStmt, elseStmt);
+        }
+
+        public Object visit(WhileStmt node) {
+            int bodyStmt = pop();
+            int predExpr = pop();
+            return record(WHILE_STMT, node, predExpr, bodyStmt);
+        }
+
+        public Object visit(ForStmt node) {
+            int bodyStmt = pop();
+            int updateExpr = pop(node.getUpdateExpr());
+            int predExpr = pop(node.getPredExpr());
+            int initExpr = pop(node.getInitExpr());
+            return record(FOR_STMT, node, initExpr, predExpr, updateExpr, bodyStmt);
+        }
+
+        public Object visit(BreakStmt node) {
+            return record(BREAK_STMT, node);
+        }
+
+        public Object visit(BlockStmt node) {
+            return record(BLOCK_STMT, node, pop());
+        }
+
+        public Object visit(ReturnStmt node) {
+            return record(RETURN_STMT, node, pop(node.getExpr()));
+        }
+
+        public Object visit(ExprList node) {
+            return list(EXPR_LIST, node);
+        }
+
+        public Object visit(DispatchExpr node) {
+            int actualList = pop();
+            int refExpr = pop(node.getRefExpr());
+            return record(DISPATCH_EXPR, node, id(node.getExprType()), refExpr,
+                    id(node.getMethodName()), actualList);
+        }
+
+        public Object visit(NewExpr node) {
+            return record(NEW_EXPR, node, id(node.getExprType()), id(node.getType()));
+        }
+
+        public Object visit(NewArrayExpr node) {
+            int size = pop();
+            return record(NEW_ARRAY_EXPR, node, id(node.getExprType()),
+                    id(node.getType()), size);
+        }
+
+        public Object visit(InstanceofExpr node) {
+            int expr = pop();
+            return record(INSTANCEOF_EXPR, node, id(node.getExprType()), expr,
+                    id(node.getType()), node.getUpCheck() ? 1 : 0);
+        }
+
+        public Object visit(CastExpr node) {
+            int expr = pop();
+            return record(CAST_EXPR, node, id(node.getExprType()), id(node.getType()),
+                    expr, node.getUpCast() ? 1 : 0);
+        }
+
+        public Object visit(AssignExpr node) {
+            int expr = pop();
+            return record(ASSIGN_EXPR, node, id(node.getExprType()),
+                    id(node.getRefName()), id(node.getName()), expr);
+        }
+
+        public Object visit(ArrayAssignExpr node) {
+            int expr = pop();
+            int index = pop();
+            return record(ARRAY_ASSIGN_EXPR, node, id(node.getExprType()),
+                    id(node.getRefName()), id(node.getName()), index, expr);
+        }
+
+        public Object visit(BinaryCompEqExpr node) {
+            return binary(EQ_EXPR, node);
+        }
+
+        public Object visit(BinaryCompNeExpr node) {
+            return binary(NE_EXPR, node);
+        }
+
+        public Object visit(BinaryCompLtExpr node) {
+            return binary(LT_EXPR, node);
+        }
+
+        public Object visit(BinaryCompLeqExpr node) {
+            return binary(LEQ_EXPR, node);
+        }
+
+        public Object visit(BinaryCompGtExpr node) {
+            return binary(GT_EXPR, node);
+        }
+
+        public Object visit(BinaryCompGeqExpr node) {
+            return binary(GEQ_EXPR, node);
+        }
+
+        public Object visit(BinaryLogicAndExpr node) {
+            return binary(AND_EXPR, node);
+        }
+
+        public Object visit(BinaryLogicOrExpr node) {
+            return binary(OR_EXPR, node);
+        }
+
+        public Object visit(BinaryArithPlusExpr node) {
+            return binary(PLUS_EXPR, node);
+        }
+
+        public Object visit(BinaryArithMinusExpr node) {
+            return binary(MINUS_EXPR, node);
+        }
+
+        public Object visit(BinaryArithTimesExpr node) {
+            return binary(TIMES_EXPR, node);
+        }
+
+        public Object visit(BinaryArithDivideExpr node) {
+            return binary(DIVIDE_EXPR, node);
+        }
+
+        public Object visit(BinaryArithModulusExpr node) {
+            return binary(MODULUS_EXPR, node);
+        }
+
+        public Object visit(UnaryNegExpr node) {
+            return unary(NEG_EXPR, node);
+        }
+
+        public Object visit(UnaryNotExpr node) {
+            return unary(NOT_EXPR, node);
+        }
+
+        public Object visit(UnaryIncrExpr node) {
+            return unary(INCR_EXPR, node);
+        }
+
+        public Object visit(UnaryDecrExpr node) {
+            return unary(DECR_EXPR, node);
+        }
+
+        public Object visit(VarExpr node) {
+            int ref = pop(node.getRef());
+            return record(VAR_EXPR, node, id(node.getExprType()), ref, id(node.getName()));
+        }
+
+        public Object visit(ArrayExpr node) {
+            int index = pop();
+            int ref = pop(node.getRef());
+            return record(ARRAY_EXPR, node, id(node.getExprType()), ref,
+                    id(node.getName()), index);
+        }
+
+        public Object visit(ConstIntExpr node) {
+            return record(CONST_INT_EXPR, node, id(node.getExprType()),
+                    id(node.getConstant()), node.getIntConstant());
+        }
+
+        public Object visit(ConstBooleanExpr node) {
+            return record(CONST_BOOLEAN_EXPR, node, id(node.getExprType()),
+                    id(node.getConstant()));
+        }
+
+        public Object visit(ConstStringExpr node) {
+            return record(CONST_STRING_EXPR, node, id(node.getExprType()),
+                    id(node.getConstant()));
+        }
+    }
+}
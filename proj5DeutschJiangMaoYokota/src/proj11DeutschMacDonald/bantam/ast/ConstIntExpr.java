@@ -56,6 +56,18 @@ public class ConstIntExpr extends ConstExpr {
         intConstant = Integer.parseInt(constant);
     }
 
+    /**
+     * ConstIntExpr constructor for a constant whose value is already known
+     *
+     * @param lineNum     source line number corresponding to this AST node
+     * @param constant    constant value (as a String)
+     * @param intConstant constant value (as an int)
+     */
+    public ConstIntExpr(int lineNum, String constant, int intConstant) {
+        super(lineNum, constant);
+        this.intConstant = intConstant;
+    }
+
     /**
      * Get the constant value represented as an int
      *
@@ -28,28 +28,54 @@
    --added get(int index) method
    --changed getIterator to iterator and added "implements Iterable<ListNode>"
      so that foreach loops can be used
+
+   Modified by Martin Deutsch and Wyett MacDonald
+   Feb 2019
+   --replaced the synchronized Vector with an array that grows as needed
+     and is trimmed to size when the list is complete
 */
 
 package proj11DeutschMacDonald.bantam.ast;
 
 import proj11DeutschMacDonald.bantam.visitor.Visitor;
 
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.Vector;
+import java.util.NoSuchElementException;
 
 /**
  * The abstract <tt>ListNode</tt> class represents a generic list of AST
  * nodes.  It contains a line number (<tt>lineNum</tt>) and a list
  * (<tt>listElements</tt>).
+ * <p>
+ * The elements are kept in an array that grows as elements are added and
+ * that the parser trims to the exact size once the list is complete.  The
+ * list is not synchronized.  Visitors can walk it without allocating by
+ * looping over <tt>get(i)</tt> for <tt>i</tt> below <tt>getSize()</tt>.
  *
  * @see ASTNode
  */
 public abstract class ListNode extends ASTNode
     implements Iterable<ASTNode> {
     /**
-     * List of ASTNode elements
+     * The array shared by all lists that have no elements
+     */
+    private static final ASTNode[] EMPTY = new ASTNode[0];
+
+    /**
+     * The capacity of a list when its first element is added
+     */
+    private static final int INITIAL_CAPACITY = 4;
+
+    /**
+     * List of ASTNode elements; only the first <tt>size</tt> are used
      */
-    private Vector<ASTNode> listElements;
+    private ASTNode[] listElements;
+
+    /**
+     * Number of elements in the list
+     */
+    private int size;
 
     /**
      * ListNode constructor
@@ -58,7 +84,7 @@ public abstract class ListNode extends ASTNode
      */
     protected ListNode(int lineNum) {
         super(lineNum);
-        listElements = new Vector<ASTNode>();
+        listElements = EMPTY;
     }
 
     /**
@@ -68,17 +94,45 @@ public abstract class ListNode extends ASTNode
      * @return the updated list
      */
     public ListNode addElement(ASTNode node) {
-        listElements.add(node);
+        if (size == listElements.length) {
+            int capacity = size == 0 ? INITIAL_CAPACITY : size + (size >> 1);
+            listElements = Arrays.copyOf(listElements, capacity);
+        }
+        listElements[size++] = node;
         return this;
     }
 
+    /**
+     * Shrink the storage of this list to its number of elements.  The parser
+     * calls this once a list is complete; adding elements afterwards is still
+     * allowed.
+     */
+    public void trimToSize() {
+        if (size < listElements.length) {
+            listElements = size == 0 ? EMPTY : Arrays.copyOf(listElements, size);
+        }
+    }
+
     /**
      * Returns an iterator for this list
      *
      * @return iterator for this list
      */
     public Iterator<ASTNode> iterator() {
-        return listElements.iterator();
+        return new Iterator<ASTNode>() {
+            private int next = 0;
+
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            public ASTNode next() {
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+                return listElements[next++];
+            }
+        };
     }
 
     /**
@@ -87,7 +141,7 @@ public abstract class ListNode extends ASTNode
      * @return list size
      */
     public int getSize() {
-        return listElements.size();
+        return size;
     }
 
     /**
@@ -98,7 +152,10 @@ public abstract class ListNode extends ASTNode
      *         too large or too small
      */
     public ASTNode get(int index) {
-        return listElements.get(index);
+        if (index >= size) {
+            throw new ArrayIndexOutOfBoundsException(index);
+        }
+        return listElements[index];
     }
 
     /**
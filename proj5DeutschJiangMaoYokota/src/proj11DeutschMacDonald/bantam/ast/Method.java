@@ -28,12 +28,15 @@ package proj11DeutschMacDonald.bantam.ast;
 
 import proj11DeutschMacDonald.bantam.visitor.Visitor;
 
+import java.util.function.Supplier;
+
 /**
  * The <tt>Method</tt> class represents a method declaration within
  * a class declaration.  It contains the name of the method (<tt>name</tt>),
  * a list of formal parameters (<tt>formalList</tt>), the return type of the
  * method (<tt>returnType</tt>), and a list of statements from the method body
- * (<tt>stmtList</tt>).
+ * (<tt>stmtList</tt>).  The method body may be parsed lazily, in which
+ * case it is parsed the first time <tt>getStmtList</tt> is called.
  *
  * @see ASTNode
  */
@@ -58,6 +61,16 @@ public class Method extends Member {
      */
     protected StmtList stmtList;
 
+    /**
+     * Parses the method body on first use, or null if it has been parsed
+     */
+    private volatile Supplier<StmtList> bodyParser;
+
+    /**
+     * What stopped the method body from being parsed, or null if nothing did
+     */
+    private volatile Throwable bodyFailure;
+
     /**
      * Method constructor
      *
@@ -76,6 +89,24 @@ public class Method extends Member {
         this.stmtList = stmtList;
     }
 
+    /**
+     * Method constructor for a method whose body has not been parsed yet
+     *
+     * @param lineNum    source line number corresponding to this AST node
+     * @param returnType the return type of this method
+     * @param name       the name of this method
+     * @param formalList a list of formal parameters
+     * @param bodyParser parses the method body when it is first needed
+     */
+    public Method(int lineNum, String returnType, String name,
+                  FormalList formalList, Supplier<StmtList> bodyParser) {
+        super(lineNum);
+        this.returnType = returnType;
+        this.name = name;
+        this.formalList = formalList;
+        this.bodyParser = bodyParser;
+    }
+
     /**
      * Get the return type of this method
      *
@@ -104,14 +135,50 @@ public class Method extends Member {
     }
 
     /**
-     * Get list of statements from method body
+     * Get list of statements from method body, parsing the body first
+     * if it has not been parsed yet.  If parsing the body failed, the same
+     * failure is thrown on every call without parsing the body again.
      *
      * @return list of statements
      */
     public StmtList getStmtList() {
+        if (bodyParser != null || bodyFailure != null) {
+            parseBody();
+        }
         return stmtList;
     }
 
+    /**
+     * Check whether the method body has been parsed, or has failed to parse
+     *
+     * @return true if the body has been parsed, false if it is still pending
+     */
+    public boolean isBodyParsed() {
+        return bodyParser == null;
+    }
+
+    /**
+     * Parse the method body, once, even if several threads ask for it,
+     * and rethrow what stopped it if it failed
+     */
+    private synchronized void parseBody() {
+        if (bodyParser != null) {
+            try {
+                stmtList = bodyParser.get();
+            } catch (RuntimeException | Error e) {
+                bodyFailure = e;
+            } finally {
+                bodyParser = null;
+            }
+        }
+        if (bodyFailure instanceof RuntimeException) {
+            throw (RuntimeException) bodyFailure;
+        }
+        if (bodyFailure instanceof Error) {
+            throw (Error) bodyFailure;
+        }
+    }
+
     /**
      * Visitor method
      *
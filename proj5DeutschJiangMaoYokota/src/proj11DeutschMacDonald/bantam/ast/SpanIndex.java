@@ -0,0 +1,285 @@
+/*
+ * File: bantam.ast.SpanIndex.java
+ * CS361 Project 11
+ * Names: Martin Deutsch and Wyett MacDonald
+ * Date: 2/20/2019
+ * This file contains the SpanIndex, which finds the AST nodes at a
+ * position in the source
+ */
+
+package proj11DeutschMacDonald.bantam.ast;
+
+import proj11DeutschMacDonald.bantam.visitor.PrePostVisitor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A SpanIndex answers position queries over an AST whose nodes have spans,
+ * such as the ASTs built by the Parser.  The nodes are kept sorted by start
+ * offset, with enclosing nodes before the nodes they contain, and a segment
+ * tree holds the greatest end offset of each range of them.  The nodes
+ * containing an offset all start at or before it, and the innermost one is
+ * the last of those that ends after it, so it is found by one descent of the
+ * tree in logarithmic time.  The nodes overlapping a range are found the same
+ * way, in logarithmic time for each node found.
+ * <p>
+ * A node contains an offset if it starts at or before it and ends after it,
+ * so nodes with empty spans, like an empty argument list, are never found.
+ *
+ * @author Martin Deutsch
+ * @author Wyett MacDonald
+ */
+public class SpanIndex {
+
+    private final ASTNode[] nodes; // the nodes, sorted by start offset
+    private final int[] starts;    // the start offset of each node
+    private final int[] ends;      // the end offset of each node
+    private final int[] parents;   // the index of each node's parent, or -1
+    private final int[] maxEnds;   // the segment tree of the greatest end offsets
+    private final int leaves;      // the number of leaves in the segment tree
+
+    /**
+     * Constructor building the index of all the nodes of an AST.  Method
+     * bodies that have not been parsed yet are parsed first.
+     *
+     * @param root the root of the AST
+     */
+    public SpanIndex(ASTNode root) {
+        Collector collector = new Collector();
+        collector.walk(root);
+        int size = collector.collected.size();
+
+        // the nodes are collected parents first and in source order, so
+        // they are normally sorted already
+        Integer[] order = new Integer[size];
+        boolean sorted = true;
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+            if (i > 0 && compare(collector.collected.get(i - 1),
+                    collector.collected.get(i)) > 0) {
+                sorted = false;
+            }
+        }
+        if (!sorted) {
+            Arrays.sort(order, (a, b) -> compare(collector.collected.get(a),
+                    collector.collected.get(b)));
+        }
+
+        int[] position = new int[size];
+        for (int i = 0; i < size; i++) {
+            position[order[i]] = i;
+        }
+        this.nodes = new ASTNode[size];
+        this.starts = new int[size];
+        this.ends = new int[size];
+        this.parents = new int[size];
+        for (int i = 0; i < size; i++) {
+            ASTNode node = collector.collected.get(order[i]);
+            int parent = collector.parents.get(order[i]);
+            nodes[i] = node;
+            starts[i] = node.getStartOffset();
+            ends[i] = node.getEndOffset();
+            parents[i] = parent < 0 ? -1 : position[parent];
+        }
+
+        int leaves = 1;
+        while (leaves < size) {
+            leaves *= 2;
+        }
+        this.leaves = leaves;
+        this.maxEnds = new int[2 * leaves];
+        Arrays.fill(maxEnds, Integer.MIN_VALUE);
+        System.arraycopy(ends, 0, maxEnds, leaves, size);
+        for (int i = leaves - 1; i > 0; i--) {
+            maxEnds[i] = Math.max(maxEnds[2 * i], maxEnds[2 * i + 1]);
+        }
+    }
+
+    /**
+     * Orders nodes by start offset, and longer spans first
+     */
+    private static int compare(ASTNode a, ASTNode b) {
+        if (a.getStartOffset() != b.getStartOffset()) {
+            return Integer.compare(a.getStartOffset(), b.getStartOffset());
+        }
+        return Integer.compare(b.getEndOffset(), a.getEndOffset());
+    }
+
+    /**
+     * @return the number of nodes in the index
+     */
+    public int size() {
+        return nodes.length;
+    }
+
+    /**
+     * Finds the innermost node containing the given offset
+     *
+     * @param offset an offset in the source
+     * @return the innermost node, or null if no node contains the offset
+     */
+    public ASTNode findInnermost(int offset) {
+        int index = findInnermostIndex(offset);
+        return index < 0 ? null : nodes[index];
+    }
+
+    /**
+     * Finds the innermost node of the given type containing the given
+     * offset, such as the method or statement the caret is in
+     *
+     * @param offset an offset in the source
+     * @param type the class of node to find
+     * @return the innermost node of the type, or null if there is none
+     */
+    public <T extends ASTNode> T findEnclosing(int offset, Class<T> type) {
+        for (int i = findInnermostIndex(offset); i >= 0; i = parents[i]) {
+            if (type.isInstance(nodes[i])) {
+                return type.cast(nodes[i]);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds the nodes that overlap the range from start to end, that is
+     * the nodes that start before end and end after start
+     *
+     * @param start the offset of the first character of the range
+     * @param end the offset just past the last character of the range
+     * @return the nodes, enclosing nodes before the nodes they contain
+     */
+    public List<ASTNode> findOverlapping(int start, int end) {
+        List<ASTNode> found = new ArrayList<>();
+        int last = lastStartingBefore(end) - 1;
+        if (last >= 0) {
+            collectEndingAfter(1, 0, leaves, last, start, found);
+        }
+        return found;
+    }
+
+    /**
+     * Returns the node that encloses the given one
+     *
+     * @param node a node in this index
+     * @return the parent of the node, or null for the root or a node
+     *         that is not in the index
+     */
+    public ASTNode getParent(ASTNode node) {
+        int index = indexOf(node);
+        return index < 0 || parents[index] < 0 ? null : nodes[parents[index]];
+    }
+
+    /**
+     * @return the index of the innermost node containing the offset, or -1
+     */
+    private int findInnermostIndex(int offset) {
+        int last = lastStartingBefore(offset + 1) - 1;
+        return last < 0 ? -1 : lastEndingAfter(1, 0, leaves, last, offset);
+    }
+
+    /**
+     * @return the number of nodes starting before the given offset
+     */
+    private int lastStartingBefore(int offset) {
+        int low = 0;
+        int high = nodes.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (starts[middle] < offset) {
+                low = middle + 1;
+            }
+            else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Finds the last node at or before the limit that ends after the offset
+     *
+     * @param tree the segment tree node covering the nodes from low to high
+     * @param low the first node covered
+     * @param high the node just past the last one covered
+     * @param limit the last node that may be returned
+     * @param offset the offset the node must end after
+     * @return the index of the node, or -1 if there is none
+     */
+    private int lastEndingAfter(int tree, int low, int high, int limit, int offset) {
+        if (low > limit || maxEnds[tree] <= offset) {
+            return -1;
+        }
+        if (high - low == 1) {
+            return low;
+        }
+        int middle = (low + high) >>> 1;
+        int found = lastEndingAfter(2 * tree + 1, middle, high, limit, offset);
+        return found >= 0 ? found : lastEndingAfter(2 * tree, low, middle, limit, offset);
+    }
+
+    /**
+     * Adds all the nodes at or before the limit that end after the offset
+     *
+     * @param tree the segment tree node covering the nodes from low to high
+     * @param low the first node covered
+     * @param high the node just past the last one covered
+     * @param limit the last node that may be added
+     * @param offset the offset the nodes must end after
+     * @param found the list to add the nodes to
+     */
+    private void collectEndingAfter(int tree, int low, int high, int limit, int offset,
+                                    List<ASTNode> found) {
+        if (low > limit || maxEnds[tree] <= offset) {
+            return;
+        }
+        if (high - low == 1) {
+            found.add(nodes[low]);
+            return;
+        }
+        int middle = (low + high) >>> 1;
+        collectEndingAfter(2 * tree, low, middle, limit, offset, found);
+        collectEndingAfter(2 * tree + 1, middle, high, limit, offset, found);
+    }
+
+    /**
+     * @return the index of the given node, or -1 if it is not in the index
+     */
+    private int indexOf(ASTNode node) {
+        int first = lastStartingBefore(node.getStartOffset());
+        for (int i = first; i < nodes.length && starts[i] == node.getStartOffset(); i++) {
+            if (nodes[i] == node) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The Visitor that collects every node of the AST along with the
+     * position of its parent in the list
+     */
+    private static class Collector extends PrePostVisitor {
+        private final List<ASTNode> collected = new ArrayList<>();
+        private final List<Integer> parents = new ArrayList<>();
+        private int parent = -1;
+
+        /**
+         * Adds a node and makes it the parent of the nodes visited next
+         */
+        protected boolean preVisit(ASTNode node) {
+            parents.add(parent);
+            parent = collected.size();
+            collected.add(node);
+            return true;
+        }
+
+        /**
+         * Makes the parent of the node the parent again
+         */
+        protected void postVisit(ASTNode node) {
+            parent = parents.get(parent);
+        }
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * File: bantam.lexer.IdentifierTable.java
+ * CS361 Project 11
+ * Names: Martin Deutsch and Wyett MacDonald
+ * Date: 2/20/2019
+ * This file contains the IdentifierTable, which interns identifier
+ * spellings for one compilation
+ */
+
+package proj11DeutschMacDonald.bantam.lexer;
+
+/**
+ * An IdentifierTable maps identifier spellings to one shared String each,
+ * so that every occurrence of a name in the tokens and the AST refers to
+ * the same String.  Lookups are made on a range of source characters, so
+ * no String is created for a name that is already in the table.
+ * Keywords are never stored; Token's keyword Strings are returned instead.
+ * <p>
+ * A table is meant to be used by one compilation on one thread; it is
+ * not synchronized.  Several threads can still share names through a
+ * parent table: each thread interns into its own child table, which looks
+ * names up in the parent first and only stores the names the parent lacks.
+ * The parent must not change while its children are in use.
+ *
+ * @author Martin Deutsch
+ * @author Wyett MacDonald
+ */
+public class IdentifierTable {
+
+    private String[] entries;  // open-addressed table of interned spellings
+    private int[] hashes;      // the String.hashCode() of each entry
+    private int size;          // the number of entries in the table
+    private final IdentifierTable parent; // read-only table searched first, or null
+
+    /**
+     * Creates an empty IdentifierTable
+     */
+    public IdentifierTable() {
+        this(null);
+    }
+
+    /**
+     * Creates an empty IdentifierTable that returns the parent's String
+     * for any name the parent holds.  The parent is only read, never changed.
+     *
+     * @param parent the table to search first
+     */
+    public IdentifierTable(IdentifierTable parent) {
+        this.entries = new String[256];
+        this.hashes = new int[256];
+        this.parent = parent;
+    }
+
+    /**
+     * Returns the shared String spelled by the given characters, adding
+     * it to the table if it is not there yet
+     *
+     * @param chars  the characters holding the identifier
+     * @param start  the offset of the first character of the identifier
+     * @param length the number of characters in the identifier
+     * @return the interned spelling
+     */
+    public String intern(char[] chars, int start, int length) {
+        String keyword = Token.getKeyword(chars, start, length);
+        if (keyword != null) {
+            return keyword;
+        }
+
+        // same hash as String.hashCode(), so Strings can be looked up too
+        int hash = 0;
+        for (int i = start; i < start + length; i++) {
+            hash = 31 * hash + chars[i];
+        }
+
+        if (parent != null) {
+            String entry = parent.find(hash, chars, start, length);
+            if (entry != null) {
+                return entry;
+            }
+        }
+
+        int mask = entries.length - 1;
+        int slot = mix(hash) & mask;
+        String entry;
+        while ((entry = entries[slot]) != null) {
+            if (hashes[slot] == hash && matches(entry, chars, start, length)) {
+                return entry;
+            }
+            slot = (slot + 1) & mask;
+        }
+        String spelling = new String(chars, start, length);
+        insert(slot, spelling, hash);
+        return spelling;
+    }
+
+    /**
+     * Looks up the spelling of the given characters without changing the table
+     *
+     * @return the entry, or null if the table does not hold the spelling
+     */
+    private String find(int hash, char[] chars, int start, int length) {
+        int mask = entries.length - 1;
+        int slot = mix(hash) & mask;
+        String entry;
+        while ((entry = entries[slot]) != null) {
+            if (hashes[slot] == hash && matches(entry, chars, start, length)) {
+                return entry;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return parent != null ? parent.find(hash, chars, start, length) : null;
+    }
+
+    /**
+     * Looks up the given spelling without changing the table
+     *
+     * @return the entry, or null if the table does not hold the spelling
+     */
+    private String find(int hash, String spelling) {
+        int mask = entries.length - 1;
+        int slot = mix(hash) & mask;
+        String entry;
+        while ((entry = entries[slot]) != null) {
+            if (hashes[slot] == hash && entry.equals(spelling)) {
+                return entry;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return parent != null ? parent.find(hash, spelling) : null;
+    }
+
+    /**
+     * Returns the shared String equal to the given spelling, adding it to
+     * the table if it is not there yet
+     *
+     * @param spelling the spelling of an identifier
+     * @return the interned spelling
+     */
+    public String intern(String spelling) {
+        int hash = spelling.hashCode();
+        if (parent != null) {
+            String entry = parent.find(hash, spelling);
+            if (entry != null) {
+                return entry;
+            }
+        }
+
+        int mask = entries.length - 1;
+        int slot = mix(hash) & mask;
+        String entry;
+        while ((entry = entries[slot]) != null) {
+            if (hashes[slot] == hash && entry.equals(spelling)) {
+                return entry;
+            }
+            slot = (slot + 1) & mask;
+        }
+        insert(slot, spelling, hash);
+        return spelling;
+    }
+
+    /**
+     * @return the number of distinct spellings in the table
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Stores a new entry in the given free slot, growing the table when
+     * it becomes half full
+     */
+    private void insert(int slot, String spelling, int hash) {
+        entries[slot] = spelling;
+        hashes[slot] = hash;
+        size++;
+        if (size * 2 > entries.length) {
+            rehash();
+        }
+    }
+
+    /**
+     * Doubles the size of the table
+     */
+    private void rehash() {
+        String[] oldEntries = entries;
+        int[] oldHashes = hashes;
+        entries = new String[oldEntries.length * 2];
+        hashes = new int[oldEntries.length * 2];
+        int mask = entries.length - 1;
+        for (int i = 0; i < oldEntries.length; i++) {
+            if (oldEntries[i] != null) {
+                int slot = mix(oldHashes[i]) & mask;
+                while (entries[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                entries[slot] = oldEntries[i];
+                hashes[slot] = oldHashes[i];
+            }
+        }
+    }
+
+    /**
+     * Spreads the bits of a String hash code so nearby names do not cluster
+     */
+    private static int mix(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * @return true if the characters starting at the given offset spell the entry
+     */
+    private static boolean matches(String entry, char[] chars, int start, int length) {
+        if (entry.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (entry.charAt(i) != chars[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
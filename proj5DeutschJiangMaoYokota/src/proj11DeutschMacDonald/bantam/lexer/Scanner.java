@@ -12,10 +12,6 @@ import proj11DeutschMacDonald.bantam.util.CompilationException;
 import proj11DeutschMacDonald.bantam.util.Error;
 import proj11DeutschMacDonald.bantam.util.ErrorHandler;
 import java.io.Reader;
-import java.math.BigInteger;
-import java.util.Set;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 /**
  * This class handles tokenizing a Java file, returning the next token when scan is called
@@ -30,15 +26,59 @@ public class Scanner
     private SourceFile sourceFile;
     private ErrorHandler errorHandler;
     private char currentChar;
-
-    private final static Set<Character> punctuation = Stream.of('.', ';',
-            ':', ',').collect(Collectors.toSet());
-    private final static Set<Character> escapeCharacters = Stream.of('t', 'n',
-            'f', '"', '\\').collect(Collectors.toSet());
-    private final static Set<Character> brackets = Stream.of('(', ')', '{',
-            '}', '[', ']').collect(Collectors.toSet());
-    private final static Set<Character> operators = Stream.of('+', '-','/', '=', '<', '>', '&', '|',
-            '*', '%', '!').collect(Collectors.toSet());
+    private char[] buffer;      // the characters of the source file
+    private int bufferLength;   // the number of valid characters in buffer
+    private int nextOffset;     // the offset of the character after currentChar
+    private int tokenStart;     // the offset of the first character of the current token
+    private int tokenLine;      // the line number of the current token
+    private int tokenIntValue;  // the value of the current token if it is an INTCONST
+    private IdentifierTable identifiers = new IdentifierTable(); // interned names
+
+    // character classes used by scan() to pick the kind of token to build
+    private final static byte OTHER = 0;
+    private final static byte LETTER = 1;
+    private final static byte DIGIT = 2;
+    private final static byte QUOTE = 3;
+    private final static byte PUNCTUATION = 4;
+    private final static byte BRACKET = 5;
+    private final static byte OPERATOR = 6;
+    private final static byte WHITESPACE = 7;
+    private final static byte END_OF_FILE = 8;
+
+    // lookup tables for ASCII characters; other characters fall back to
+    // the Character methods
+    private final static byte[] charClasses = new byte[128];
+    private final static boolean[] identifierChars = new boolean[128];
+    private final static boolean[] escapeCharacters = new boolean[128];
+
+    static {
+        for (char c = 0; c < 128; c++) {
+            if (Character.isLetter(c)) {
+                charClasses[c] = LETTER;
+            }
+            else if (Character.isDigit(c)) {
+                charClasses[c] = DIGIT;
+            }
+            else if (Character.isWhitespace(c)) {
+                charClasses[c] = WHITESPACE;
+            }
+            identifierChars[c] = Character.isLetterOrDigit(c) || c == '_';
+        }
+        charClasses['"'] = QUOTE;
+        for (char c : ".;:,".toCharArray()) {
+            charClasses[c] = PUNCTUATION;
+        }
+        for (char c : "(){}[]".toCharArray()) {
+            charClasses[c] = BRACKET;
+        }
+        for (char c : "+-/=<>&|*%!".toCharArray()) {
+            charClasses[c] = OPERATOR;
+        }
+        charClasses[SourceFile.eof] = END_OF_FILE;
+        for (char c : "tnf\"\\".toCharArray()) {
+            escapeCharacters[c] = true;
+        }
+    }
 
     /**
      * Constructor just taking the error handler
@@ -59,8 +99,7 @@ public class Scanner
      */
     public Scanner(String filename, ErrorHandler handler) {
         this.errorHandler = handler;
-        this.currentChar = ' ';
-        this.sourceFile = new SourceFile(filename);
+        this.setSourceFile(new SourceFile(filename));
     }
 
     /**
@@ -71,15 +110,48 @@ public class Scanner
      */
     public Scanner(Reader reader, ErrorHandler handler) {
         this.errorHandler = handler;
-        this.sourceFile = new SourceFile(reader);
+        this.setSourceFile(new SourceFile(reader));
     }
 
     /**
-     * Sets the sourceFile to scan
+     * Constructor taking source text held in memory and the error handler
+     *
+     * @param source the text to tokenize
+     * @param logicalName the name to report errors under, such as the path
+     *                    of the unsaved file the text came from
+     * @param handler the ErrorHandler to register errors with
+     */
+    public Scanner(CharSequence source, String logicalName, ErrorHandler handler) {
+        this.errorHandler = handler;
+        this.setSourceFile(new SourceFile(source, logicalName));
+    }
+
+    /**
+     * Sets the sourceFile to scan and restarts scanning at its first character
      * @param sourceFile the SourceFile object to scan from
      */
     public void setSourceFile(SourceFile sourceFile) {
         this.sourceFile = sourceFile;
+        this.buffer = sourceFile.getBuffer();
+        this.bufferLength = sourceFile.getLength();
+        this.nextOffset = 0;
+        this.currentChar = ' ';
+    }
+
+    /**
+     * Sets the table used to intern identifier spellings, so that several
+     * Scanners in one compilation can share names
+     * @param identifiers the IdentifierTable to use
+     */
+    public void setIdentifierTable(IdentifierTable identifiers) {
+        this.identifiers = identifiers;
+    }
+
+    /**
+     * @return the table used to intern identifier spellings
+     */
+    public IdentifierTable getIdentifierTable() {
+        return this.identifiers;
     }
 
     /**
@@ -91,60 +163,189 @@ public class Scanner
      */
     public Token scan()
     {
-        // go to next meaningful character
-        this.goToNonWhitespaceChar();
-
-        // initialize the spelling, kind and position of the token
-        StringBuilder spelling = new StringBuilder();
-        Token.Kind kind;
-        int position = this.sourceFile.getCurrentLineNumber();
-
-        // identifier
-        if (Character.isLetter(this.currentChar)) {
-            kind = this.handleIdentifier(spelling);
+        Token.Kind kind = this.scanToken();
+        String spelling;
+        if (kind == Token.Kind.IDENTIFIER) {
+            spelling = this.identifiers.intern(this.buffer, this.tokenStart,
+                    this.getTokenLength());
         }
-        // integer
-        else if (Character.isDigit(this.currentChar)) {
-            kind = this.handleInteger(spelling);
+        else if (kind == Token.Kind.EOF) {
+            spelling = "EOF";
         }
-        // string
-        else if (this.currentChar == '"') {
-            kind = this.handleString(spelling);
+        else {
+            spelling = this.getTokenSpelling();
         }
-        // punctuation
-        else if (punctuation.contains(this.currentChar)) {
-            kind = this.handlePunctuation(spelling);
+        Token token = new Token(kind, spelling, this.tokenLine);
+        token.offset = this.tokenStart;
+        token.endOffset = this.tokenStart + this.getTokenLength();
+        if (kind == Token.Kind.INTCONST) {
+            token.intValue = this.tokenIntValue;
         }
-        // brackets
-        else if (brackets.contains(this.currentChar)) {
-            kind = this.handleBrace(spelling);
+        return token;
+    }
+
+    /**
+     * Scans all the remaining tokens, including comments and the final EOF token,
+     * into a TokenBuffer. No Token or String objects are created; the spellings
+     * can be read from the buffer on demand.
+     *
+     * @return the TokenBuffer holding the scanned tokens
+     */
+    public TokenBuffer scanAll() {
+        TokenBuffer tokens = new TokenBuffer(this.buffer, this.bufferLength,
+                this.sourceFile.getFilename(), this.identifiers);
+        while (this.scanInto(tokens) != Token.Kind.EOF) {
+            // keep scanning
         }
-        // operators
-        else if (operators.contains(this.currentChar)) {
-            kind = this.handleOperator(spelling);
+        return tokens;
+    }
+
+    /**
+     * Re-scans a source file after an edit, reusing the tokens of the previous
+     * scan wherever the edit cannot have changed them.  Scanning restarts after
+     * the last token that ends before the edit, and stops as soon as a new token
+     * past the edit starts where an old token (shifted by the edit) started,
+     * since every token after that point must be the same as before.  Only
+     * errors in the re-scanned region are registered with the ErrorHandler.
+     * <p>
+     * After this call the Scanner is positioned in the edited source.
+     *
+     * @param previous      the tokens from scanning the source before the edit
+     * @param offset        the offset in the old source where the edit starts
+     * @param removedLength the number of characters removed at the offset
+     * @param insertedText  the text inserted at the offset
+     * @return the TokenBuffer for the edited source
+     */
+    public TokenBuffer rescan(TokenBuffer previous, int offset, int removedLength,
+                              CharSequence insertedText) {
+        char[] oldSource = previous.getSource();
+        int oldLength = previous.getSourceLength();
+        if (offset < 0 || removedLength < 0 || offset + removedLength > oldLength) {
+            throw new IllegalArgumentException("Edit is outside the source");
         }
-        // EOF
-        else if (this.currentChar == SourceFile.eof) {
-            kind = this.handleEOF(spelling);
+
+        // apply the edit to a copy of the source
+        int insertedLength = insertedText.length();
+        int delta = insertedLength - removedLength;
+        char[] newSource = new char[oldLength + delta];
+        System.arraycopy(oldSource, 0, newSource, 0, offset);
+        for (int i = 0; i < insertedLength; i++) {
+            newSource[offset + i] = insertedText.charAt(i);
         }
-        // unsupported characters
-        else {
-            kind = this.handleUnsupportedChar(spelling);
+        System.arraycopy(oldSource, offset + removedLength, newSource,
+                offset + insertedLength, oldLength - offset - removedLength);
+        this.setSourceFile(new SourceFile(newSource, newSource.length,
+                previous.getFilename()));
+
+        // keep the tokens that end before the edit, since the scanner looks
+        // one character past the end of a token
+        int stable = previous.findTokenBefore(offset);
+        while (stable >= 0 && previous.getStart(stable) + previous.getLength(stable) >= offset) {
+            stable--;
+        }
+        TokenBuffer tokens = new TokenBuffer(newSource, newSource.length,
+                previous.getFilename(), this.identifiers);
+        tokens.copyFrom(previous, 0, stable + 1, 0, 0);
+        this.nextOffset = stable >= 0 ? previous.getStart(stable) + previous.getLength(stable) : 0;
+
+        // scan until the new tokens line up with the old ones again
+        int editEnd = offset + insertedLength;
+        int old = stable + 1;
+        Token.Kind kind;
+        do {
+            kind = this.scanInto(tokens);
+            int last = tokens.size() - 1;
+            int start = tokens.getStart(last);
+            if (start < editEnd) {
+                continue;
+            }
+            while (old < previous.size() && previous.getStart(old) + delta < start) {
+                old++;
+            }
+            if (old < previous.size() && previous.getStart(old) + delta == start
+                    && previous.getKind(old) == kind
+                    && previous.getLength(old) == tokens.getLength(last)) {
+                tokens.removeLast();
+                tokens.copyFrom(previous, old, previous.size(), delta,
+                        this.tokenLine - previous.getLine(old));
+                return tokens;
+            }
+        } while (kind != Token.Kind.EOF);
+        return tokens;
+    }
+
+    /**
+     * Scans the next token and appends it to the given TokenBuffer
+     *
+     * @param tokens the buffer to add the token to
+     * @return the kind of the token
+     */
+    private Token.Kind scanInto(TokenBuffer tokens) {
+        Token.Kind kind = this.scanToken();
+        int length = this.getTokenLength();
+        if (kind == Token.Kind.IDENTIFIER) {
+            kind = Token.getIdentifierKind(this.buffer, this.tokenStart, length);
         }
+        tokens.add(kind, this.tokenStart, length, this.tokenLine,
+                kind == Token.Kind.INTCONST ? this.tokenIntValue : 0);
+        return kind;
+    }
+
+    /**
+     * Finds the next token, recording its start offset and line number.
+     * When this returns, currentChar is the first character after the token.
+     *
+     * @return the kind of the token found
+     */
+    private Token.Kind scanToken() {
+        // go to next meaningful character
+        this.goToNonWhitespaceChar();
+
+        this.tokenStart = Math.min(this.nextOffset - 1, this.bufferLength);
+        this.tokenLine = this.getCurrentLineNumber();
+
+        switch (classify(this.currentChar)) {
+            case LETTER:
+                return this.handleIdentifier();
+            case DIGIT:
+                return this.handleInteger();
+            case QUOTE:
+                return this.handleString();
+            case PUNCTUATION:
+                return this.handlePunctuation();
+            case BRACKET:
+                return this.handleBrace();
+            case OPERATOR:
+                return this.handleOperator();
+            case END_OF_FILE:
+                return this.handleEOF();
+            default:
+                return this.handleUnsupportedChar();
+        }
+    }
+
+    /**
+     * @return the number of characters in the current token so far
+     */
+    private int getTokenLength() {
+        return Math.min(this.nextOffset - 1, this.bufferLength) - this.tokenStart;
+    }
 
-        // generate the token
-        return new Token(kind, spelling.toString(), position);
+    /**
+     * @return the characters of the current token so far
+     */
+    private String getTokenSpelling() {
+        return new String(this.buffer, this.tokenStart, this.getTokenLength());
     }
 
     /**
      * Handles creating an identifier token.
      *
-     * @param spelling the StringBuilder representing the current spelling
      * @return The token kind "IDENTIFIER"
      */
-    private Token.Kind handleIdentifier(StringBuilder spelling) {
-        while (Character.isLetterOrDigit(this.currentChar) || this.currentChar == '_') {
-            this.appendAndAdvance(spelling);
+    private Token.Kind handleIdentifier() {
+        while (isIdentifierChar(this.currentChar)) {
+            this.advance();
         }
         return Token.Kind.IDENTIFIER;
     }
@@ -152,50 +353,57 @@ public class Scanner
     /**
      * Handles creating an integer token.
      *
-     * @param spelling the StringBuilder representing the current spelling
      * @return The token kind "INTCONST" assuming the integer is not too long. If the
      * integer is longer than 2^31-1, then the token kind will be "ERROR"
      */
-    private Token.Kind handleInteger(StringBuilder spelling) {
-        int start = this.sourceFile.getCurrentLineNumber();
-        while (Character.isDigit(this.currentChar)) {
-            this.appendAndAdvance(spelling);
+    private Token.Kind handleInteger() {
+        int start = this.getCurrentLineNumber();
+        // accumulate the value, stopping once it can no longer fit in an int
+        int value = 0;
+        boolean tooLarge = false;
+        while (classify(this.currentChar) == DIGIT) {
+            int digit = Character.digit(this.currentChar, 10);
+            if (value > (Integer.MAX_VALUE - digit) / 10) {
+                tooLarge = true;
+            }
+            else {
+                value = value * 10 + digit;
+            }
+            this.advance();
         }
-        // use BigInteger to compare arbitrarily large number from program to max int value
-        BigInteger bigInt = new BigInteger(spelling.toString());
-        if(bigInt.compareTo(BigInteger.valueOf(Integer.MAX_VALUE)) > 0) {
+        if (tooLarge) {
             this.registerError(start, "Integer constant too large");
             return Token.Kind.ERROR;
         }
+        this.tokenIntValue = value;
         return Token.Kind.INTCONST;
     }
 
     /**
      * Handles creating an String token.
      *
-     * @param spelling the StringBuilder representing the current spelling
      * @return The token kind "STRCONST." If the string is more than 5000 characters,
      * or if the eor or eol token is found, or if the escape character is not supported
      * then the token kind will be "ERROR"
      */
-    private Token.Kind handleString(StringBuilder spelling) {
-        int start = this.sourceFile.getCurrentLineNumber();
+    private Token.Kind handleString() {
+        int start = this.getCurrentLineNumber();
         boolean hitEOL = false;
         Token.Kind kind = Token.Kind.STRCONST;
 
-        this.appendAndAdvance(spelling);
+        this.advance();
 
         while (this.currentChar != '"') {
             // if escape character, add the next character to the string and continue
             if (this.currentChar == '\\') {
-                this.appendAndAdvance(spelling);
+                this.advance();
                 // check if escape character is supported
-                if (!escapeCharacters.contains(this.currentChar)) {
+                if (this.currentChar >= 128 || !escapeCharacters[this.currentChar]) {
                     this.registerError(start, "Unsupported escape character");
                     kind = Token.Kind.ERROR;
                 }
             }
-            this.appendAndAdvance(spelling);
+            this.advance();
 
             // if eol, string is invalid
             if (this.currentChar == SourceFile.eol && !hitEOL) {
@@ -212,11 +420,11 @@ public class Scanner
         }
 
         // error if string greater than 5000 characters (not including start and end quotes)
-        if (spelling.length() > 5002) {
+        if (this.getTokenLength() > 5002) {
             this.registerError(start, "String constant too long");
             kind = Token.Kind.ERROR;
         }
-        this.appendAndAdvance(spelling);
+        this.advance();
         return kind;
     }
 
@@ -224,10 +432,9 @@ public class Scanner
      * Handles creating a punctuation token.
      * Includes '.', ',', ';', and ':' tokens.
      *
-     * @param spelling the StringBuilder representing the current spelling
      * @return The token kind corresponding to the type of punctuation found.
      */
-    private Token.Kind handlePunctuation(StringBuilder spelling) {
+    private Token.Kind handlePunctuation() {
         Token.Kind kind;
         switch(this.currentChar) {
             case '.':
@@ -242,7 +449,7 @@ public class Scanner
             default:
                 kind = Token.Kind.COLON;
         }
-        this.appendAndAdvance(spelling);
+        this.advance();
         return kind;
     }
 
@@ -250,10 +457,9 @@ public class Scanner
      * Handles creating a brace token.
      * Includes '(', ')', '{', '}', '[' and ']' tokens
      *
-     * @param spelling the StringBuilder representing the current spelling
      * @return The token kind corresponding to the type of brace found.
      */
-    private Token.Kind handleBrace(StringBuilder spelling) {
+    private Token.Kind handleBrace() {
         Token.Kind kind;
         switch (this.currentChar) {
             case '(':
@@ -274,7 +480,7 @@ public class Scanner
             default:
                 kind = Token.Kind.RBRACKET;
         }
-        this.appendAndAdvance(spelling);
+        this.advance();
         return kind;
     }
 
@@ -283,26 +489,25 @@ public class Scanner
      * Includes '*', '%', '+', '++', '-', '--', '=', '==', '&&', '||', '!',
      * '<', and '>' tokens.
      *
-     * @param spelling the StringBuilder representing the current spelling
      * @return The token kind corresponding to the type of operation found. If the
      * operation character is followed by an unsupported character, the token kind will
      * be "ERROR"
      */
-    private Token.Kind handleOperator(StringBuilder spelling) {
-        int start = this.sourceFile.getCurrentLineNumber();
+    private Token.Kind handleOperator() {
+        int start = this.getCurrentLineNumber();
 
         Token.Kind kind;
         switch (this.currentChar) {
             case '*':
                 kind = Token.Kind.MULDIV;
-                this.appendAndAdvance(spelling);
+                this.advance();
                 break;
             case '%':
                 kind =Token.Kind.MULDIV;
-                this.appendAndAdvance(spelling);
+                this.advance();
                 break;
             case '+':
-                if (this.getNextCharAndCompare('+', spelling)) {
+                if (this.getNextCharAndCompare('+')) {
                     kind = Token.Kind.UNARYINCR;
                 }
                 else {
@@ -310,7 +515,7 @@ public class Scanner
                 }
                 break;
             case '-':
-                if (this.getNextCharAndCompare('-', spelling)) {
+                if (this.getNextCharAndCompare('-')) {
                     kind = Token.Kind.UNARYDECR;
                 }
                 else {
@@ -318,7 +523,7 @@ public class Scanner
                 }
                 break;
             case '=':
-                if (this.getNextCharAndCompare('=', spelling)) {
+                if (this.getNextCharAndCompare('=')) {
                     kind = Token.Kind.COMPARE;
                 }
                 else {
@@ -326,7 +531,7 @@ public class Scanner
                 }
                 break;
             case '&':
-                if (this.getNextCharAndCompare('&', spelling)) {
+                if (this.getNextCharAndCompare('&')) {
                     kind = Token.Kind.BINARYLOGIC;
                 }
                 else {
@@ -335,7 +540,7 @@ public class Scanner
                 }
                 break;
             case '|':
-                if (this.getNextCharAndCompare('|', spelling)) {
+                if (this.getNextCharAndCompare('|')) {
                     kind = Token.Kind.BINARYLOGIC;
                 }
                 else {
@@ -344,7 +549,7 @@ public class Scanner
                 }
                 break;
             case '!':
-                if (getNextCharAndCompare('=', spelling)) {
+                if (getNextCharAndCompare('=')) {
                     kind = Token.Kind.COMPARE;
                 }
                 else {
@@ -352,7 +557,7 @@ public class Scanner
                 }
                 break;
             case '<':
-                if (getNextCharAndCompare('=', spelling)) {
+                if (getNextCharAndCompare('=')) {
                     kind = Token.Kind.COMPARE;
                 }
                 else {
@@ -360,14 +565,14 @@ public class Scanner
                 }
                 break;
             case '>':
-                if (getNextCharAndCompare('=', spelling)) {
+                if (getNextCharAndCompare('=')) {
                     kind = Token.Kind.COMPARE;
                 }
                 else {
                     kind = Token.Kind.COMPARE;
                 }
                 break;
-            default: kind = handleForwardSlash(spelling);
+            default: kind = handleForwardSlash();
         }
         return kind;
     }
@@ -376,17 +581,16 @@ public class Scanner
      * Handles creating a token including a forward slash.
      * Includes '/' and comment tokens.
      *
-     * @param spelling the StringBuilder representing the current spelling
      * @return The token kind "MULDIV" if single forward slash or "COMMENT" if a
      * comment.
      */
-    private Token.Kind handleForwardSlash(StringBuilder spelling) {
-        this.appendAndAdvance(spelling);
+    private Token.Kind handleForwardSlash() {
+        this.advance();
         if (this.currentChar == '/') {
-            return handleSingleLineComment(spelling);
+            return handleSingleLineComment();
         }
         else if (this.currentChar == '*') {
-            return handleMultiLineComment(spelling);
+            return handleMultiLineComment();
         }
         else {
             return Token.Kind.MULDIV;
@@ -396,12 +600,11 @@ public class Scanner
     /**
      * Handles creating a token for a single-line comment.
      *
-     * @param spelling the StringBuilder representing the current spelling
      * @return The token kind "COMMENT"
      */
-    private Token.Kind handleSingleLineComment(StringBuilder spelling) {
+    private Token.Kind handleSingleLineComment() {
         while (this.currentChar != SourceFile.eol && this.currentChar != SourceFile.eof) {
-            this.appendAndAdvance(spelling);
+            this.advance();
         }
         return Token.Kind.COMMENT;
     }
@@ -409,18 +612,17 @@ public class Scanner
     /**
      * Handles creating a token for a multi-line comment.
      *
-     * @param spelling the StringBuilder representing the current spelling
      * @return The token kind "COMMENT" or "ERROR if the comment block is unterminated.
      */
-    private Token.Kind handleMultiLineComment(StringBuilder spelling) {
-        int start = this.sourceFile.getCurrentLineNumber();
+    private Token.Kind handleMultiLineComment() {
+        int start = this.getCurrentLineNumber();
 
         while (this.currentChar != SourceFile.eof) {
-            this.appendAndAdvance(spelling);
+            this.advance();
             if (this.currentChar == '*') {
-                this.appendAndAdvance(spelling);
+                this.advance();
                 if (this.currentChar == '/') {
-                    this.appendAndAdvance(spelling);
+                    this.advance();
                     return Token.Kind.COMMENT;
                 }
             }
@@ -432,23 +634,20 @@ public class Scanner
     /**
      * Handles creating a token for EOF
      *
-     * @param spelling the StringBuilder representing the current spelling
      * @return The token kind EOF
      */
-    private Token.Kind handleEOF(StringBuilder spelling) {
-        spelling.append("EOF");
+    private Token.Kind handleEOF() {
         return Token.Kind.EOF;
     }
 
     /**
      * Handles checking for an unsupported character.
      *
-     * @param spelling the StringBuilder representing the current spelling
      * @return The token kind "ERROR"
      */
-    private Token.Kind handleUnsupportedChar(StringBuilder spelling) {
-        this.registerError(sourceFile.getCurrentLineNumber(), "Unsupported character");
-        this.appendAndAdvance(spelling);
+    private Token.Kind handleUnsupportedChar() {
+        this.registerError(this.getCurrentLineNumber(), "Unsupported character");
+        this.advance();
         return Token.Kind.ERROR;
     }
 
@@ -456,14 +655,13 @@ public class Scanner
      * Gets the next character and checks to see if it matches the given character.
      *
      * @param compareChar The character to be checked against the current character.
-     * @param spelling The StringBuilder representing the current spelling
      * @return true if the current character is followed by the character
      * passed in by the parameter compareChar. Otherwise, will return false.
      */
-    private boolean getNextCharAndCompare(char compareChar, StringBuilder spelling) {
-        this.appendAndAdvance(spelling);
+    private boolean getNextCharAndCompare(char compareChar) {
+        this.advance();
         if (this.currentChar == compareChar) {
-            this.appendAndAdvance(spelling);
+            this.advance();
             return true;
         }
         return false;
@@ -473,18 +671,55 @@ public class Scanner
      * Will munch whitespace until a non-whitespace character is found.
      */
     private void goToNonWhitespaceChar() {
-        while (Character.isWhitespace(this.currentChar)) {
-            this.currentChar = this.sourceFile.getNextChar();
+        while (classify(this.currentChar) == WHITESPACE) {
+            this.advance();
+        }
+    }
+
+    /**
+     * Find the character class of the given character
+     *
+     * @param c the character to classify
+     * @return one of the character class constants
+     */
+    private static byte classify(char c) {
+        if (c < 128) {
+            return charClasses[c];
         }
+        else if (Character.isLetter(c)) {
+            return LETTER;
+        }
+        else if (Character.isDigit(c)) {
+            return DIGIT;
+        }
+        else if (Character.isWhitespace(c)) {
+            return WHITESPACE;
+        }
+        return OTHER;
+    }
+
+    /**
+     * @param c the character to check
+     * @return true if the character can appear after the first letter of an identifier
+     */
+    private static boolean isIdentifierChar(char c) {
+        return c < 128 ? identifierChars[c] : Character.isLetterOrDigit(c);
+    }
+
+    /**
+     * Go to the next character in the source buffer, or to the eof character
+     * if the end of the buffer has been reached
+     */
+    private void advance() {
+        int offset = this.nextOffset++;
+        this.currentChar = offset < this.bufferLength ? this.buffer[offset] : SourceFile.eof;
     }
 
     /**
-     * Append the current character and go to the next character from the source file
-     * @param spelling the StringBuilder representing the current spelling
+     * @return the line number of the current character
      */
-    private void appendAndAdvance(StringBuilder spelling) {
-        spelling.append(this.currentChar);
-        this.currentChar = this.sourceFile.getNextChar();
+    private int getCurrentLineNumber() {
+        return this.sourceFile.getLineNumber(this.nextOffset - 1);
     }
 
     /**
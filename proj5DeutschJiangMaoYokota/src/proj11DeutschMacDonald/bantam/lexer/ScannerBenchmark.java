@@ -0,0 +1,77 @@
+/*
+ * File: bantam.lexer.ScannerBenchmark.java
+ * CS361 Project 11
+ * Names: Martin Deutsch and Wyett MacDonald
+ * Date: 2/20/2019
+ * This file contains a driver that measures how fast the Scanner tokenizes
+ * a set of Bantam Java files
+ */
+
+package proj11DeutschMacDonald.bantam.lexer;
+
+import proj11DeutschMacDonald.bantam.util.CompilationException;
+import proj11DeutschMacDonald.bantam.util.ErrorHandler;
+
+/**
+ * ScannerBenchmark scans the given files repeatedly and reports the
+ * number of tokens scanned per second.  The first rounds are used to
+ * warm up the JIT and are not reported.
+ *
+ * @author Martin Deutsch
+ * @author Wyett MacDonald
+ */
+public class ScannerBenchmark {
+
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int TIMED_ROUNDS = 5;
+
+    /**
+     * Scans every file once and returns the total number of tokens
+     *
+     * @param filenames the files to scan
+     * @return the number of tokens scanned, including the EOF tokens
+     */
+    private static long scanAll(String[] filenames) {
+        long tokens = 0;
+        for (String filename : filenames) {
+            Scanner scanner = new Scanner(filename, new ErrorHandler());
+            Token token = scanner.scan();
+            tokens++;
+            while (token.kind != Token.Kind.EOF) {
+                token = scanner.scan();
+                tokens++;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Main method scans the given files and prints the scanning throughput
+     *
+     * @param args a list of file names
+     */
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.out.println("Please enter files to scan");
+            return;
+        }
+
+        try {
+            for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                scanAll(args);
+            }
+            long bestTime = Long.MAX_VALUE;
+            long tokens = 0;
+            for (int i = 0; i < TIMED_ROUNDS; i++) {
+                long start = System.nanoTime();
+                tokens = scanAll(args);
+                bestTime = Math.min(bestTime, System.nanoTime() - start);
+            }
+            System.out.printf("%d tokens in %.1f ms (%.0f tokens/sec)%n", tokens,
+                    bestTime / 1e6, tokens / (bestTime / 1e9));
+        }
+        catch (CompilationException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+}
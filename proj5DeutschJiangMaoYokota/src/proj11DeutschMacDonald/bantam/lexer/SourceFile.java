@@ -12,6 +12,10 @@
  * of the authors.
  *
  * Modified by Dale Skrien, Fall 2018
+ * Modified by Martin Deutsch and Wyett MacDonald, Spring 2019
+ *   --the whole source is now loaded (or memory-mapped) into a char buffer
+ *     that the Scanner indexes directly; line numbers are computed from
+ *     a table of line breaks instead of one character at a time
  */
 
 package proj11DeutschMacDonald.bantam.lexer;
@@ -19,10 +23,16 @@ package proj11DeutschMacDonald.bantam.lexer;
 import proj11DeutschMacDonald.bantam.util.CompilationException;
 
 import java.io.*;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
 
 /**
- * A class for extracting the characters, one at a time, from a text file or an
- * InputStream.
+ * A class holding the characters of a text file or a Reader in a single buffer.
+ * The characters can still be extracted one at a time with getNextChar(), but
+ * the Scanner reads the buffer returned by getBuffer() directly.
  */
 class SourceFile
 {
@@ -30,66 +40,193 @@ class SourceFile
     private static final char cr = '\r';  // carriage return character
     static final char eof = '\u0000';     // end of file character
 
-    private Reader sourceReader;   // the reader of the file
-    private int currentLineNumber; // for bantam.error messages
-    private int prevChar;          // the previous character read
+    private char[] buffer;         // the characters of the source
+    private int length;            // the number of valid characters in buffer
+    private int nextOffset;        // the offset of the next character to read
+    private int[] lineBreaks;      // offsets of the line break characters, built lazily
+    private int lineBreakCount;    // the number of valid entries in lineBreaks
+    private int lastLineIndex;     // the result of the previous line lookup
     private String filename;       // the file currently being scanned.
 
     /**
-     * creates a new SourceFile object for the file with the given name
-     * Note:  You should always call isValid() to check that the SourceFile
-     * was set up properly before calling getNextChar().
+     * creates a new SourceFile object for the file with the given name.
+     * The file is memory-mapped and decoded into a char buffer in one step.
      *
      * @param filename the name of the file to be read.
      */
     SourceFile(String filename) {
-        try {
-            sourceReader = new FileReader(filename);
+        this.filename = filename;
+        try (FileInputStream in = new FileInputStream(filename);
+             FileChannel channel = in.getChannel()) {
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY,
+                    0, channel.size());
+            setBuffer(Charset.defaultCharset().decode(bytes));
         } catch (FileNotFoundException e) {
             throw new CompilationException("File " + filename + " not found.");
+        } catch (IOException e) {
+            throw new CompilationException("File " + filename + " could not be read.");
         }
-        currentLineNumber = 1;
-        prevChar = -1;
-        this.filename = filename;
     }
 
 
     SourceFile(Reader in) {
-        sourceReader = in;
-        currentLineNumber = 1;
-        prevChar = -1;
+        char[] chars = new char[8192];
+        int count = 0;
+        try {
+            int read;
+            while ((read = in.read(chars, count, chars.length - count)) != -1) {
+                count += read;
+                if (count == chars.length) {
+                    chars = Arrays.copyOf(chars, chars.length * 2);
+                }
+            }
+        } catch (IOException e) {
+            // a Reader has no file name to report
+            throw new CompilationException("Source could not be read.");
+        }
+        this.buffer = chars;
+        this.length = count;
+    }
+
+    /**
+     * creates a new SourceFile object holding a copy of the given text,
+     * such as the unsaved contents of an editor
+     *
+     * @param source   the text of the source
+     * @param filename the name to report errors under
+     */
+    SourceFile(CharSequence source, String filename) {
+        this.filename = filename;
+        this.length = source.length();
+        this.buffer = new char[this.length];
+        if (source instanceof String) {
+            ((String) source).getChars(0, this.length, this.buffer, 0);
+        }
+        else if (source instanceof StringBuilder) {
+            ((StringBuilder) source).getChars(0, this.length, this.buffer, 0);
+        }
+        else {
+            for (int i = 0; i < this.length; i++) {
+                this.buffer[i] = source.charAt(i);
+            }
+        }
+    }
+
+    /**
+     * creates a new SourceFile object holding the given characters
+     *
+     * @param chars    the characters of the source
+     * @param length   the number of valid characters in chars
+     * @param filename the name of the file the characters came from, or null
+     */
+    SourceFile(char[] chars, int length, String filename) {
+        this.buffer = chars;
+        this.length = length;
+        this.filename = filename;
+    }
+
+    /**
+     * Stores the decoded characters, copying only if the CharBuffer
+     * is not backed by an accessible array
+     *
+     * @param chars the decoded contents of the file
+     */
+    private void setBuffer(CharBuffer chars) {
+        if (chars.hasArray() && chars.arrayOffset() == 0) {
+            this.buffer = chars.array();
+            this.length = chars.limit();
+        }
+        else {
+            this.length = chars.remaining();
+            this.buffer = new char[this.length];
+            chars.get(this.buffer);
+        }
     }
 
+    /**
+     * Returns the buffer holding the source characters.  Only the first
+     * getLength() characters are valid.
+     *
+     * @return the character buffer
+     */
+    char[] getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * @return the number of characters in the source
+     */
+    int getLength() {
+        return length;
+    }
 
+    /**
+     * Returns the line number of the character most recently returned
+     * by getNextChar()
+     *
+     * @return the current line number
+     */
     int getCurrentLineNumber() {
-        return currentLineNumber;
+        return getLineNumber(nextOffset - 1);
+    }
+
+    /**
+     * Returns the line number of the character at the given offset.
+     * A cr character, or an eol character not preceded by a cr character,
+     * counts as the first character of the next line.
+     * Lookups that move forward through the file (as the Scanner does)
+     * take amortized constant time; others use a binary search.
+     *
+     * @param offset the offset of a character in the buffer
+     * @return the line number of that character, starting at 1
+     */
+    int getLineNumber(int offset) {
+        if (lineBreaks == null) {
+            findLineBreaks();
+        }
+        // i is the number of line breaks at or before the offset
+        int i = lastLineIndex;
+        if (i < lineBreakCount && lineBreaks[i] <= offset) {
+            i++;
+        }
+        if ((i > 0 && lineBreaks[i - 1] > offset)
+                || (i < lineBreakCount && lineBreaks[i] <= offset)) {
+            i = Arrays.binarySearch(lineBreaks, 0, lineBreakCount, offset);
+            i = i >= 0 ? i + 1 : -i - 1;
+        }
+        lastLineIndex = i;
+        return i + 1;
+    }
+
+    /**
+     * Records the offset of every line break in one pass over the buffer
+     */
+    private void findLineBreaks() {
+        int[] breaks = new int[64];
+        int count = 0;
+        for (int i = 0; i < length; i++) {
+            char c = buffer[i];
+            if (c == cr || (c == eol && (i == 0 || buffer[i - 1] != cr))) {
+                if (count == breaks.length) {
+                    breaks = Arrays.copyOf(breaks, count * 2);
+                }
+                breaks[count++] = i;
+            }
+        }
+        lineBreaks = breaks;
+        lineBreakCount = count;
     }
 
     String getFilename() { return filename; }
 
     /**
      * Finds and returns the next character in the source file.
-     * If the end of the file has been reached or an exception occurs,
-     * then an exception is thrown.
-     * If the character is the cr character or the eol char not preceded by the cr
-     * character, the current line number is also incremented.
+     * If the end of the file has been reached, the eof character is returned.
      *
      * @return the next character in the source file
      */
-    char getNextChar(){
-        try {
-            int c = sourceReader.read();
-
-            if (c == -1) {
-                c = eof;
-            }
-            else if (c == cr || (c == eol && prevChar != cr)) {
-                currentLineNumber++;
-            }
-            prevChar = c;
-            return (char) c;
-        } catch (IOException e) {
-            throw new CompilationException("File " + filename + " could not be read.");
-        }
+    char getNextChar() {
+        int offset = nextOffset++;
+        return offset < length ? buffer[offset] : eof;
     }
-}
\ No newline at end of file
+}
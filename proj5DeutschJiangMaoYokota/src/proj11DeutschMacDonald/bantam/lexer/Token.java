@@ -15,16 +15,15 @@
 
  package proj11DeutschMacDonald.bantam.lexer;
 
- import java.util.Set;
- import java.util.stream.Collectors;
- import java.util.stream.Stream;
-
  public class Token
  {
      //instance variables
      public Kind kind;
      public String spelling; // the actual sequence of chars in the token
      public int position; // the line number where the token was found
+     public int intValue; // the value of an INTCONST token
+     public int offset; // the offset of the token's first character in the source
+     public int endOffset; // the offset just past the token's last character
 
      public String getSpelling() {
          return spelling;
@@ -37,11 +36,8 @@
          this.position = position;
 
          //patch the kind in the case of boolean constants and keywords
-         if (kind == Kind.IDENTIFIER && (spelling.equals("true") || spelling.equals("false"))) {
-             this.kind = Kind.BOOLEAN;
-         }
-         else if (kind == Kind.IDENTIFIER && reservedWords.contains(spelling)) {
-             this.kind = Enum.valueOf(Kind.class, spelling.toUpperCase());
+         if (kind == Kind.IDENTIFIER) {
+             this.kind = getIdentifierKind(spelling);
          }
          else {
              this.kind = kind;
@@ -78,7 +74,88 @@
          RETURN, WHILE
      }
 
-     private static Set<String> reservedWords = Stream.of("break", "cast", "class", "var",
-             "else", "extends", "for", "if", "instanceof", "new", "return", "while").collect(Collectors.toSet());
+     /**
+      * Finds the kind of an identifier spelled by the given characters, without
+      * creating a String.  Keywords and boolean constants get their own kinds.
+      *
+      * @param chars  the characters holding the identifier
+      * @param start  the offset of the first character of the identifier
+      * @param length the number of characters in the identifier
+      * @return the kind of the identifier
+      */
+     static Kind getIdentifierKind(char[] chars, int start, int length) {
+         String keyword = getKeyword(chars, start, length);
+         return keyword == null ? Kind.IDENTIFIER : keywordKinds[keywordHash(keyword)];
+     }
+
+     /**
+      * Finds the keyword spelled by the given characters, using a perfect
+      * hash on the first character, the last character and the length
+      *
+      * @param chars  the characters holding the identifier
+      * @param start  the offset of the first character of the identifier
+      * @param length the number of characters in the identifier
+      * @return the shared keyword String, or null if the identifier is not a keyword
+      */
+     static String getKeyword(char[] chars, int start, int length) {
+         if (length < 2 || length > 10) {
+             return null;
+         }
+         String keyword = keywordTable[
+                 hash(chars[start], chars[start + length - 1], length)];
+         if (keyword == null || keyword.length() != length) {
+             return null;
+         }
+         for (int i = 0; i < length; i++) {
+             if (keyword.charAt(i) != chars[start + i]) {
+                 return null;
+             }
+         }
+         return keyword;
+     }
+
+     /**
+      * Finds the kind of an identifier with the given spelling
+      *
+      * @param spelling the spelling of the identifier
+      * @return the kind of the identifier
+      */
+     private static Kind getIdentifierKind(String spelling) {
+         int length = spelling.length();
+         if (length < 2 || length > 10) {
+             return Kind.IDENTIFIER;
+         }
+         int index = hash(spelling.charAt(0), spelling.charAt(length - 1), length);
+         return spelling.equals(keywordTable[index]) ? keywordKinds[index] : Kind.IDENTIFIER;
+     }
+
+     /**
+      * The perfect hash function for the keywords.  It maps each of them to
+      * a different slot of keywordTable.
+      */
+     private static int hash(char first, char last, int length) {
+         return (first + 7 * last + length) & 31;
+     }
+
+     private static int keywordHash(String keyword) {
+         return hash(keyword.charAt(0), keyword.charAt(keyword.length() - 1), keyword.length());
+     }
+
+     private static final String[] keywordTable = new String[32];
+     private static final Kind[] keywordKinds = new Kind[32];
+
+     static {
+         String[] keywords = {"true", "false", "break", "cast", "class", "var",
+                 "else", "extends", "for", "if", "instanceof", "new", "return", "while"};
+         for (String keyword : keywords) {
+             int index = keywordHash(keyword);
+             if (keywordTable[index] != null) {
+                 throw new IllegalStateException("Keyword hash collision: " + keyword);
+             }
+             keywordTable[index] = keyword;
+             keywordKinds[index] = keyword.equals("true") || keyword.equals("false") ?
+                     Kind.BOOLEAN : Kind.valueOf(keyword.toUpperCase());
+         }
+     }
 
  }
\ No newline at end of file
@@ -0,0 +1,320 @@
+/*
+ * File: bantam.lexer.TokenBuffer.java
+ * CS361 Project 11
+ * Names: Martin Deutsch and Wyett MacDonald
+ * Date: 2/20/2019
+ * This file contains the TokenBuffer, which stores a scanned token
+ * stream in parallel primitive arrays
+ */
+
+package proj11DeutschMacDonald.bantam.lexer;
+
+import java.util.Arrays;
+
+/**
+ * A TokenBuffer holds the tokens of a source file as parallel arrays of
+ * kinds, start offsets, lengths and line numbers instead of Token objects.
+ * Spellings are only created when asked for, from the source characters.
+ * Build one with Scanner.scanAll().
+ *
+ * @author Martin Deutsch
+ * @author Wyett MacDonald
+ */
+public class TokenBuffer {
+
+    private static final Token.Kind[] kindValues = Token.Kind.values();
+
+    private final char[] source;    // the characters the tokens were scanned from
+    private final int sourceLength; // the number of valid characters in source
+    private final String filename;  // the file the tokens were scanned from
+    private final IdentifierTable identifiers; // interns the identifier spellings
+    private byte[] kinds;           // the ordinal of each token's kind
+    private int[] starts;           // the offset of each token's first character
+    private int[] lengths;          // the number of characters in each token
+    private int[] lines;            // the line number of each token
+    private int[] intValues;        // the value of each INTCONST token
+    private int size;               // the number of tokens in the buffer
+
+    /**
+     * Creates an empty TokenBuffer for the given source characters
+     *
+     * @param source   the characters the tokens will be scanned from
+     * @param sourceLength the number of valid characters in source
+     * @param filename the name of the file being scanned, or null
+     * @param identifiers the table used to intern identifier spellings
+     */
+    TokenBuffer(char[] source, int sourceLength, String filename,
+                IdentifierTable identifiers) {
+        this.source = source;
+        this.sourceLength = sourceLength;
+        this.filename = filename;
+        this.identifiers = identifiers;
+        int capacity = Math.max(16, sourceLength / 4);
+        this.kinds = new byte[capacity];
+        this.starts = new int[capacity];
+        this.lengths = new int[capacity];
+        this.lines = new int[capacity];
+        this.intValues = new int[capacity];
+    }
+
+    /**
+     * Creates a TokenBuffer sharing the tokens of another one, but interning
+     * spellings into a different table
+     *
+     * @param other the TokenBuffer whose tokens are shared
+     * @param identifiers the table used to intern identifier spellings
+     */
+    private TokenBuffer(TokenBuffer other, IdentifierTable identifiers) {
+        this.source = other.source;
+        this.sourceLength = other.sourceLength;
+        this.filename = other.filename;
+        this.identifiers = identifiers;
+        this.kinds = other.kinds;
+        this.starts = other.starts;
+        this.lengths = other.lengths;
+        this.lines = other.lines;
+        this.intValues = other.intValues;
+        this.size = other.size;
+    }
+
+    /**
+     * Returns a TokenBuffer that shares these tokens but interns spellings
+     * into the given table, so that another thread can read the tokens.
+     * Neither buffer may have tokens added afterwards.
+     *
+     * @param identifiers the table for the new buffer to intern spellings into
+     * @return the new TokenBuffer
+     */
+    public TokenBuffer withIdentifierTable(IdentifierTable identifiers) {
+        return new TokenBuffer(this, identifiers);
+    }
+
+    /**
+     * Interns the spelling of every identifier and keyword token, so that
+     * getSpelling() finds them all in the identifier table afterwards
+     */
+    public void internSpellings() {
+        for (int i = 0; i < size; i++) {
+            Token.Kind kind = getKind(i);
+            if (kind == Token.Kind.IDENTIFIER || kind == Token.Kind.BOOLEAN
+                    || kind.compareTo(Token.Kind.BREAK) >= 0) {
+                identifiers.intern(source, starts[i], lengths[i]);
+            }
+        }
+    }
+
+    /**
+     * Appends a token to the buffer
+     *
+     * @param kind   the kind of the token
+     * @param start  the offset of the first character of the token
+     * @param length the number of characters in the token
+     * @param line   the line number of the token
+     * @param intValue the value of the token if it is an INTCONST
+     */
+    void add(Token.Kind kind, int start, int length, int line, int intValue) {
+        if (size == kinds.length) {
+            int capacity = size * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+            intValues = Arrays.copyOf(intValues, capacity);
+        }
+        kinds[size] = (byte) kind.ordinal();
+        starts[size] = start;
+        lengths[size] = length;
+        lines[size] = line;
+        intValues[size] = intValue;
+        size++;
+    }
+
+    /**
+     * Removes the last token from the buffer
+     */
+    void removeLast() {
+        size--;
+    }
+
+    /**
+     * Appends a range of tokens from another buffer, moving them by the
+     * given number of characters and lines
+     *
+     * @param other       the buffer to copy from
+     * @param from        the index of the first token to copy
+     * @param to          the index after the last token to copy
+     * @param offsetDelta the amount to add to each start offset
+     * @param lineDelta   the amount to add to each line number
+     */
+    void copyFrom(TokenBuffer other, int from, int to, int offsetDelta, int lineDelta) {
+        for (int i = from; i < to; i++) {
+            add(other.getKind(i), other.starts[i] + offsetDelta, other.lengths[i],
+                    other.lines[i] + lineDelta, other.intValues[i]);
+        }
+    }
+
+    /**
+     * Finds the last token that starts before the given offset
+     *
+     * @param offset an offset in the source
+     * @return the index of the token, or -1 if no token starts before the offset
+     */
+    public int findTokenBefore(int offset) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (starts[middle] < offset) {
+                low = middle + 1;
+            }
+            else {
+                high = middle - 1;
+            }
+        }
+        return high;
+    }
+
+    /**
+     * @return the characters the tokens were scanned from
+     */
+    char[] getSource() {
+        return source;
+    }
+
+    /**
+     * @return the number of characters in the source
+     */
+    public int getSourceLength() {
+        return sourceLength;
+    }
+
+    /**
+     * @return the number of tokens in the buffer, including the EOF token
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the name of the file the tokens were scanned from
+     */
+    public String getFilename() {
+        return filename;
+    }
+
+    /**
+     * @param index the index of a token
+     * @return the kind of the token
+     */
+    public Token.Kind getKind(int index) {
+        return kindValues[kinds[index]];
+    }
+
+    /**
+     * @param index the index of a token
+     * @return the offset of the first character of the token
+     */
+    public int getStart(int index) {
+        return starts[index];
+    }
+
+    /**
+     * @param index the index of a token
+     * @return the number of characters in the token
+     */
+    public int getLength(int index) {
+        return lengths[index];
+    }
+
+    /**
+     * Returns one character of a token without creating its spelling
+     *
+     * @param index the index of a token
+     * @param offset the position of the character within the token
+     * @return the character
+     */
+    public char getChar(int index, int offset) {
+        return source[starts[index] + offset];
+    }
+
+    /**
+     * @param index the index of a token
+     * @return the line number of the token
+     */
+    public int getLine(int index) {
+        return lines[index];
+    }
+
+    /**
+     * @return the table used to intern the identifier spellings
+     */
+    public IdentifierTable getIdentifierTable() {
+        return identifiers;
+    }
+
+    /**
+     * @param index the index of an INTCONST token
+     * @return the value of the integer constant
+     */
+    public int getIntValue(int index) {
+        return intValues[index];
+    }
+
+    /**
+     * Creates the spelling of a token.  As with Scanner.scan(), the
+     * spelling of the EOF token is "EOF".  Identifiers and keywords
+     * return their interned spelling.
+     *
+     * @param index the index of a token
+     * @return the spelling of the token
+     */
+    public String getSpelling(int index) {
+        Token.Kind kind = getKind(index);
+        if (kind == Token.Kind.EOF) {
+            return "EOF";
+        }
+        else if (kind == Token.Kind.IDENTIFIER || kind == Token.Kind.BOOLEAN
+                || kind.compareTo(Token.Kind.BREAK) >= 0) {
+            return identifiers.intern(source, starts[index], lengths[index]);
+        }
+        return new String(source, starts[index], lengths[index]);
+    }
+
+    /**
+     * Checks the spelling of a token without creating a String
+     *
+     * @param index    the index of a token
+     * @param spelling the spelling to compare against
+     * @return true if the token has the given spelling
+     */
+    public boolean spellingEquals(int index, String spelling) {
+        if (getKind(index) == Token.Kind.EOF) {
+            return spelling.equals("EOF");
+        }
+        int length = lengths[index];
+        if (length != spelling.length()) {
+            return false;
+        }
+        int start = starts[index];
+        for (int i = 0; i < length; i++) {
+            if (source[start + i] != spelling.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Creates a Token object for a token in the buffer
+     *
+     * @param index the index of a token
+     * @return a Token with the same kind, spelling and position
+     */
+    public Token getToken(int index) {
+        Token token = new Token(getKind(index), getSpelling(index), lines[index]);
+        token.intValue = intValues[index];
+        token.offset = starts[index];
+        token.endOffset = starts[index] + lengths[index];
+        return token;
+    }
+}
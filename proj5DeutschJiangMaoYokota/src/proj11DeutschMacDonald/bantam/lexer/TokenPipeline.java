@@ -0,0 +1,272 @@
+/*
+ * File: bantam.lexer.TokenPipeline.java
+ * CS361 Project 11
+ * Names: Martin Deutsch and Wyett MacDonald
+ * Date: 2/20/2019
+ * This file contains the TokenPipeline, which runs a Scanner on its own
+ * thread and hands its tokens to one consumer through a ring buffer
+ */
+
+package proj11DeutschMacDonald.bantam.lexer;
+
+import proj11DeutschMacDonald.bantam.util.CompilationException;
+import proj11DeutschMacDonald.bantam.util.Error;
+import proj11DeutschMacDonald.bantam.util.ErrorHandler;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * A TokenPipeline reads and scans a source file on a separate thread while
+ * another thread, usually the Parser's, takes the tokens with next().  The
+ * tokens go through a single-producer, single-consumer ring buffer with no
+ * locks: the scanner thread publishes them in batches by advancing the tail
+ * index, and the consumer frees slots by advancing the head index.
+ * <p>
+ * Lexical errors are registered with the consumer's ErrorHandler by the
+ * consumer's thread, when it takes the token the error was found in, so the
+ * ErrorHandler is only used by one thread and receives the same errors in
+ * the same order as with a Scanner called directly.
+ * <p>
+ * The scanner thread interns identifiers into its own IdentifierTable, so
+ * names are shared within the file but not with other files.
+ *
+ * @author Martin Deutsch
+ * @author Wyett MacDonald
+ */
+public class TokenPipeline {
+
+    private static final int CAPACITY = 4096;   // slots in the ring, a power of 2
+    private static final int BATCH_SIZE = 256;  // tokens published at a time
+    private static final int SPINS = 100;       // yields before parking a waiting thread
+    private static final long PARK_NANOS = 20000;
+
+    private final Token[] ring = new Token[CAPACITY];
+    private final AtomicLong head = new AtomicLong(); // the next slot to consume
+    private final AtomicLong tail = new AtomicLong(); // the next slot to publish
+    private final ConcurrentLinkedQueue<PendingError> pendingErrors =
+            new ConcurrentLinkedQueue<>();
+    private final ErrorHandler errorHandler;
+    private final Thread scannerThread;
+    private volatile Throwable failure; // what stopped the scanner thread
+    private volatile boolean closed;
+
+    // used only by the scanner thread
+    private long produced;    // the number of tokens scanned so far
+    private long cachedHead;  // the last head value read
+
+    // used only by the consumer thread
+    private long consumed;    // the number of tokens taken so far
+    private long cachedTail;  // the last tail value read
+    private Token eofToken;   // the EOF token, returned again after the end
+
+    /**
+     * Creates a TokenPipeline that scans the given file
+     *
+     * @param filename the path to the file to tokenize
+     * @param handler the ErrorHandler to register errors with
+     */
+    public TokenPipeline(String filename, ErrorHandler handler) {
+        this.errorHandler = handler;
+        this.scannerThread = new Thread(() ->
+                produce(() -> new Scanner(filename, new PendingErrorHandler())));
+        this.scannerThread.setDaemon(true);
+    }
+
+    /**
+     * Creates a TokenPipeline that scans the given text
+     *
+     * @param source the text to tokenize
+     * @param logicalName the name to report errors under
+     * @param handler the ErrorHandler to register errors with
+     */
+    public TokenPipeline(CharSequence source, String logicalName, ErrorHandler handler) {
+        this.errorHandler = handler;
+        this.scannerThread = new Thread(() ->
+                produce(() -> new Scanner(source, logicalName, new PendingErrorHandler())));
+        this.scannerThread.setDaemon(true);
+    }
+
+    /**
+     * Starts scanning on the scanner thread
+     */
+    public void start() {
+        scannerThread.start();
+    }
+
+    /**
+     * Stops the scanner thread, for when the consumer does not need
+     * the rest of the tokens
+     */
+    public void close() {
+        closed = true;
+        LockSupport.unpark(scannerThread);
+    }
+
+    /**
+     * Returns the next token, waiting for the scanner thread if necessary.
+     * After the EOF token, the EOF token is returned again.
+     *
+     * @return the next token
+     * @throws CompilationException if the source could not be read
+     * @throws java.lang.Error if the scanner thread failed with an Error, such as an
+     *                         OutOfMemoryError
+     */
+    public Token next() {
+        if (eofToken != null) {
+            return eofToken;
+        }
+        if (consumed == cachedTail) {
+            cachedTail = waitForTokens();
+        }
+        int slot = (int) consumed & (CAPACITY - 1);
+        Token token = ring[slot];
+        ring[slot] = null;
+        registerErrors(consumed);
+        consumed++;
+        head.lazySet(consumed);
+        if (token.kind == Token.Kind.EOF) {
+            eofToken = token;
+        }
+        return token;
+    }
+
+    /**
+     * Waits until the scanner thread has published more tokens
+     *
+     * @return the new tail index
+     */
+    private long waitForTokens() {
+        int spins = 0;
+        long available;
+        while ((available = tail.get()) == consumed) {
+            Throwable e = failure;
+            if (e != null && tail.get() == consumed) {
+                if (e instanceof RuntimeException) {
+                    throw (RuntimeException) e;
+                }
+                if (e instanceof java.lang.Error) {
+                    throw (java.lang.Error) e;
+                }
+                throw new IllegalStateException(e);
+            }
+            if (spins < SPINS) {
+                spins++;
+                Thread.yield();
+            }
+            else {
+                LockSupport.parkNanos(PARK_NANOS);
+            }
+        }
+        return available;
+    }
+
+    /**
+     * Registers the lexical errors found while scanning the tokens up to
+     * and including the given one
+     *
+     * @param tokenNumber the number of the token being consumed
+     */
+    private void registerErrors(long tokenNumber) {
+        PendingError error;
+        while ((error = pendingErrors.peek()) != null && error.tokenNumber <= tokenNumber) {
+            pendingErrors.poll();
+            errorHandler.register(error.kind, error.filename, error.lineNum, error.message);
+        }
+    }
+
+    /**
+     * Reads the source and scans tokens into the ring until the end of the
+     * file, publishing them every BATCH_SIZE tokens
+     *
+     * @param scannerFactory creates the Scanner, reading the source
+     */
+    private void produce(Supplier<Scanner> scannerFactory) {
+        try {
+            Scanner scanner = scannerFactory.get();
+            Token token;
+            do {
+                if (produced - cachedHead == CAPACITY) {
+                    tail.lazySet(produced);
+                    if (!waitForSpace()) {
+                        return;
+                    }
+                }
+                token = scanner.scan();
+                ring[(int) produced & (CAPACITY - 1)] = token;
+                produced++;
+                if (produced % BATCH_SIZE == 0) {
+                    tail.lazySet(produced);
+                }
+            } while (token.kind != Token.Kind.EOF && !closed);
+            tail.set(produced);
+        } catch (Throwable e) {
+            // anything stopping the thread is handed to the consumer, which
+            // would otherwise wait for tokens forever
+            tail.set(produced);
+            failure = e;
+        }
+    }
+
+    /**
+     * Waits until the consumer has freed a slot in the ring
+     *
+     * @return false if the pipeline was closed while waiting
+     */
+    private boolean waitForSpace() {
+        int spins = 0;
+        while ((cachedHead = head.get()) == produced - CAPACITY) {
+            if (closed) {
+                return false;
+            }
+            if (spins < SPINS) {
+                spins++;
+                Thread.yield();
+            }
+            else {
+                LockSupport.parkNanos(PARK_NANOS);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A lexical error waiting to be registered by the consumer
+     */
+    private static class PendingError {
+        final long tokenNumber;
+        final Error.Kind kind;
+        final String filename;
+        final int lineNum;
+        final String message;
+
+        PendingError(long tokenNumber, Error.Kind kind, String filename,
+                     int lineNum, String message) {
+            this.tokenNumber = tokenNumber;
+            this.kind = kind;
+            this.filename = filename;
+            this.lineNum = lineNum;
+            this.message = message;
+        }
+    }
+
+    /**
+     * The ErrorHandler given to the Scanner, which queues each error with
+     * the number of the token being scanned
+     */
+    private class PendingErrorHandler extends ErrorHandler {
+        @Override
+        public void register(Error.Kind kind, String filename, int lineNum,
+                             String errorMessage) {
+            pendingErrors.add(new PendingError(produced, kind, filename,
+                    lineNum, errorMessage));
+        }
+
+        @Override
+        public void register(Error.Kind kind, String errorMessage) {
+            register(kind, null, -1, errorMessage);
+        }
+    }
+}
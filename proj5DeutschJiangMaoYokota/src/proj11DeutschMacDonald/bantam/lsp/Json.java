@@ -0,0 +1,408 @@
+/*
+ * File: bantam.lsp.Json.java
+ * CS361 Project 11
+ * Names: Martin Deutsch and Wyett MacDonald
+ * Date: 2/20/2019
+ * This file contains Json, which reads and writes the JSON text of the
+ * messages of the LanguageServer
+ */
+
+package proj11DeutschMacDonald.bantam.lsp;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Json reads JSON text into plain Java objects and writes them back.  An
+ * object is read as a Map from String to value, an array as a List, a number
+ * as a Long if it is a whole number that fits and a Double otherwise, and
+ * true, false and null as Boolean.TRUE, Boolean.FALSE and null.  Any Number,
+ * Map, Collection, Boolean, CharSequence or null can be written.
+ *
+ * @author Martin Deutsch
+ * @author Wyett MacDonald
+ */
+public final class Json {
+
+    private final String text;
+    private int position;
+
+    /**
+     * Constructor creating a reader of the given text
+     *
+     * @param text the JSON text
+     */
+    private Json(String text) {
+        this.text = text;
+    }
+
+    /**
+     * Reads a JSON value
+     *
+     * @param text the JSON text
+     * @return the value
+     * @throws IllegalArgumentException if the text is not one JSON value
+     */
+    public static Object parse(String text) {
+        Json reader = new Json(text);
+        Object value = reader.readValue();
+        reader.skipWhitespace();
+        if (reader.position != text.length()) {
+            throw reader.error("Unexpected text after the value");
+        }
+        return value;
+    }
+
+    /**
+     * Writes a value as JSON text
+     *
+     * @param value the value
+     * @return the JSON text
+     * @throws IllegalArgumentException if the value cannot be written
+     */
+    public static String toJson(Object value) {
+        StringBuilder out = new StringBuilder();
+        write(value, out);
+        return out.toString();
+    }
+
+    /**
+     * Makes a Map of the given names and values, for building the objects
+     * of a message
+     *
+     * @param namesAndValues a name followed by its value, for each member
+     * @return the Map, keeping the order of the members
+     */
+    public static Map<String, Object> object(Object... namesAndValues) {
+        Map<String, Object> object = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < namesAndValues.length; i += 2) {
+            object.put((String) namesAndValues[i], namesAndValues[i + 1]);
+        }
+        return object;
+    }
+
+    /**
+     * Writes a value as JSON text
+     *
+     * @param value the value
+     * @param out the builder to write to
+     */
+    private static void write(Object value, StringBuilder out) {
+        if (value == null) {
+            out.append("null");
+        }
+        else if (value instanceof CharSequence) {
+            writeString(value.toString(), out);
+        }
+        else if (value instanceof Boolean || value instanceof Long
+                || value instanceof Integer) {
+            out.append(value);
+        }
+        else if (value instanceof Number) {
+            double number = ((Number) value).doubleValue();
+            if (Double.isNaN(number) || Double.isInfinite(number)) {
+                throw new IllegalArgumentException("Cannot write " + number + " as JSON");
+            }
+            out.append(number == Math.rint(number) && Math.abs(number) < 1e15
+                    ? Long.toString((long) number) : Double.toString(number));
+        }
+        else if (value instanceof Map) {
+            out.append('{');
+            boolean first = true;
+            for (Map.Entry<?, ?> member : ((Map<?, ?>) value).entrySet()) {
+                if (!first) {
+                    out.append(',');
+                }
+                first = false;
+                writeString(String.valueOf(member.getKey()), out);
+                out.append(':');
+                write(member.getValue(), out);
+            }
+            out.append('}');
+        }
+        else if (value instanceof Iterable) {
+            out.append('[');
+            boolean first = true;
+            for (Object element : (Iterable<?>) value) {
+                if (!first) {
+                    out.append(',');
+                }
+                first = false;
+                write(element, out);
+            }
+            out.append(']');
+        }
+        else {
+            throw new IllegalArgumentException("Cannot write a "
+                    + value.getClass().getName() + " as JSON");
+        }
+    }
+
+    /**
+     * Writes a string as JSON text, escaping what JSON requires
+     *
+     * @param string the string
+     * @param out the builder to write to
+     */
+    private static void writeString(String string, StringBuilder out) {
+        out.append('"');
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    }
+                    else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+
+    /**
+     * @return the value starting at the current position
+     */
+    private Object readValue() {
+        skipWhitespace();
+        if (position == text.length()) {
+            throw error("Unexpected end of the text");
+        }
+        char c = text.charAt(position);
+        switch (c) {
+            case '{':
+                return readObject();
+            case '[':
+                return readArray();
+            case '"':
+                return readString();
+            case 't':
+                readWord("true");
+                return Boolean.TRUE;
+            case 'f':
+                readWord("false");
+                return Boolean.FALSE;
+            case 'n':
+                readWord("null");
+                return null;
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    return readNumber();
+                }
+                throw error("Unexpected character '" + c + "'");
+        }
+    }
+
+    /**
+     * @return the object starting at the current position
+     */
+    private Map<String, Object> readObject() {
+        Map<String, Object> object = new LinkedHashMap<>();
+        position++;
+        skipWhitespace();
+        if (peek() == '}') {
+            position++;
+            return object;
+        }
+        while (true) {
+            skipWhitespace();
+            if (peek() != '"') {
+                throw error("Expected the name of a member");
+            }
+            String name = readString();
+            skipWhitespace();
+            expect(':');
+            object.put(name, readValue());
+            skipWhitespace();
+            if (peek() == '}') {
+                position++;
+                return object;
+            }
+            expect(',');
+        }
+    }
+
+    /**
+     * @return the array starting at the current position
+     */
+    private List<Object> readArray() {
+        List<Object> array = new ArrayList<>();
+        position++;
+        skipWhitespace();
+        if (peek() == ']') {
+            position++;
+            return array;
+        }
+        while (true) {
+            array.add(readValue());
+            skipWhitespace();
+            if (peek() == ']') {
+                position++;
+                return array;
+            }
+            expect(',');
+        }
+    }
+
+    /**
+     * @return the string starting at the current position
+     */
+    private String readString() {
+        position++;
+        StringBuilder string = new StringBuilder();
+        while (true) {
+            if (position >= text.length()) {
+                throw error("Unterminated string");
+            }
+            char c = text.charAt(position++);
+            if (c == '"') {
+                return string.toString();
+            }
+            if (c != '\\') {
+                string.append(c);
+                continue;
+            }
+            if (position >= text.length()) {
+                throw error("Unterminated string");
+            }
+            char escaped = text.charAt(position++);
+            switch (escaped) {
+                case '"':
+                case '\\':
+                case '/':
+                    string.append(escaped);
+                    break;
+                case 'b':
+                    string.append('\b');
+                    break;
+                case 'f':
+                    string.append('\f');
+                    break;
+                case 'n':
+                    string.append('\n');
+                    break;
+                case 'r':
+                    string.append('\r');
+                    break;
+                case 't':
+                    string.append('\t');
+                    break;
+                case 'u':
+                    if (position + 4 > text.length()) {
+                        throw error("Incomplete \\u escape");
+                    }
+                    try {
+                        string.append((char) Integer.parseInt(
+                                text.substring(position, position + 4), 16));
+                    } catch (NumberFormatException e) {
+                        throw error("Invalid \\u escape");
+                    }
+                    position += 4;
+                    break;
+                default:
+                    throw error("Invalid escape \\" + escaped);
+            }
+        }
+    }
+
+    /**
+     * @return the number starting at the current position
+     */
+    private Number readNumber() {
+        int start = position;
+        boolean whole = true;
+        while (position < text.length()) {
+            char c = text.charAt(position);
+            if (c == '.' || c == 'e' || c == 'E') {
+                whole = false;
+            }
+            else if (c != '-' && c != '+' && (c < '0' || c > '9')) {
+                break;
+            }
+            position++;
+        }
+        String number = text.substring(start, position);
+        try {
+            if (whole) {
+                try {
+                    return Long.parseLong(number);
+                } catch (NumberFormatException e) {
+                    // too large for a long
+                }
+            }
+            return Double.parseDouble(number);
+        } catch (NumberFormatException e) {
+            throw error("Invalid number " + number);
+        }
+    }
+
+    /**
+     * Reads the given word at the current position
+     *
+     * @param word the word
+     */
+    private void readWord(String word) {
+        if (!text.startsWith(word, position)) {
+            throw error("Unexpected text");
+        }
+        position += word.length();
+    }
+
+    /**
+     * Reads the given character at the current position
+     *
+     * @param c the character
+     */
+    private void expect(char c) {
+        if (peek() != c) {
+            throw error("Expected '" + c + "'");
+        }
+        position++;
+    }
+
+    /**
+     * @return the character at the current position, or 0 at the end
+     */
+    private char peek() {
+        return position < text.length() ? text.charAt(position) : 0;
+    }
+
+    /**
+     * Moves the position past any whitespace
+     */
+    private void skipWhitespace() {
+        while (position < text.length()) {
+            char c = text.charAt(position);
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+                return;
+            }
+            position++;
+        }
+    }
+
+    /**
+     * @param message what is wrong
+     * @return an exception for an error at the current position
+     */
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " at position " + position);
+    }
+}
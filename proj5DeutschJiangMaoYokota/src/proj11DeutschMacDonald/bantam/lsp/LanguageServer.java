@@ -0,0 +1,799 @@
+/*
+ * File: bantam.lsp.LanguageServer.java
+ * CS361 Project 11
+ * Names: Martin Deutsch and Wyett MacDonald
+ * Date: 2/20/2019
+ * This file contains the LanguageServer, which gives editors the errors and
+ * outline of Bantam Java files through the Language Server Protocol
+ */
+
+package proj11DeutschMacDonald.bantam.lsp;
+
+import proj11DeutschMacDonald.bantam.ast.ClassList;
+import proj11DeutschMacDonald.bantam.ast.Class_;
+import proj11DeutschMacDonald.bantam.ast.Field;
+import proj11DeutschMacDonald.bantam.ast.Member;
+import proj11DeutschMacDonald.bantam.ast.MemberList;
+import proj11DeutschMacDonald.bantam.ast.Method;
+import proj11DeutschMacDonald.bantam.ast.Program;
+import proj11DeutschMacDonald.bantam.parser.CompilationUnitCache;
+import proj11DeutschMacDonald.bantam.parser.CompilationUnitCache.CompilationUnit;
+import proj11DeutschMacDonald.bantam.semant.MainMainVisitor;
+import proj11DeutschMacDonald.bantam.semant.SemanticAnalyzer;
+import proj11DeutschMacDonald.bantam.util.Error;
+import proj11DeutschMacDonald.bantam.util.ErrorHandler;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A LanguageServer talks to an editor over standard input and output with
+ * the Language Server Protocol, JSON-RPC messages each preceded by a
+ * Content-Length header.  It publishes the lexical and syntactic errors of
+ * each open document, or the errors found by the SemanticAnalyzer if there
+ * are none, and a warning if such a program has no Main.main method, and
+ * answers documentSymbol requests with the classes, fields and methods of a
+ * document.
+ * <p>
+ * Editors send the changes to a document as edits of ranges of its text
+ * (incremental sync), which are applied to the text kept by the server.  A
+ * document is analysed once the editor has sent no change to it for the
+ * debounce delay, so a burst of keystrokes costs one analysis.  The analysis
+ * scans and parses the whole text into a CompilationUnit, which is kept in a
+ * CompilationUnitCache under the URI of the document, so requests about the
+ * same version of the text use the same tokens and AST.  The Scanner's
+ * rescan() is not used, because it only reports the lexical errors of the
+ * rescanned region and errors carry no offsets to move the others by.
+ * <p>
+ * Work made useless by a newer change is dropped: a pending analysis is
+ * cancelled when the document changes again, an analysis that finishes
+ * after a change does not publish its errors, and the requests about a
+ * document that are still running when it changes are answered with the
+ * ContentModified error.  A request can also be cancelled by the editor
+ * with $/cancelRequest.
+ * <p>
+ * Analyses run on one thread and requests on another, so that the thread
+ * reading messages never waits for the parser.
+ *
+ * @author Martin Deutsch
+ * @author Wyett MacDonald
+ */
+public class LanguageServer {
+
+    // the default time a document must go unchanged before it is analysed
+    public static final long DEFAULT_DEBOUNCE_MILLIS = 30;
+
+    // the memory the cached compilation units may hold, as estimated
+    private static final long CACHE_BYTES = 256L << 20;
+
+    // JSON-RPC and Language Server Protocol error codes
+    private static final int PARSE_ERROR = -32700;
+    private static final int INVALID_REQUEST = -32600;
+    private static final int METHOD_NOT_FOUND = -32601;
+    private static final int INVALID_PARAMS = -32602;
+    private static final int INTERNAL_ERROR = -32603;
+    private static final int SERVER_NOT_INITIALIZED = -32002;
+    private static final int REQUEST_CANCELLED = -32800;
+    private static final int CONTENT_MODIFIED = -32801;
+
+    // Language Server Protocol constants
+    private static final int SYNC_INCREMENTAL = 2;
+    private static final int SEVERITY_ERROR = 1;
+    private static final int SEVERITY_WARNING = 2;
+    private static final int SYMBOL_CLASS = 5;
+    private static final int SYMBOL_METHOD = 6;
+    private static final int SYMBOL_FIELD = 8;
+
+    private final InputStream in;
+    private final OutputStream out;
+    private final long debounceMillis;
+    private final CompilationUnitCache units = new CompilationUnitCache(CACHE_BYTES, null);
+    private final ScheduledExecutorService analyses;
+    private final ExecutorService requests;
+    private final Map<String, Document> documents = new ConcurrentHashMap<>();
+    private final Map<Object, PendingRequest> pendingRequests = new ConcurrentHashMap<>();
+    private boolean initialized;       // used by the reading thread only
+    private boolean shutdownRequested; // used by the reading thread only
+
+    /**
+     * Constructor creating a LanguageServer
+     *
+     * @param in the stream the editor's messages are read from
+     * @param out the stream the server's messages are written to
+     * @param debounceMillis the time a document must go unchanged before it
+     *                       is analysed, in milliseconds
+     */
+    public LanguageServer(InputStream in, OutputStream out, long debounceMillis) {
+        this.in = new BufferedInputStream(in);
+        this.out = out;
+        this.debounceMillis = debounceMillis;
+        this.analyses = Executors.newSingleThreadScheduledExecutor(runnable ->
+                newDaemonThread(runnable, "language-server-analysis"));
+        this.requests = Executors.newSingleThreadExecutor(runnable ->
+                newDaemonThread(runnable, "language-server-request"));
+    }
+
+    /**
+     * Reads and handles messages until the editor sends exit or closes the
+     * input
+     *
+     * @return the exit code: 0 if the editor asked the server to shut down
+     *         before the end, and 1 otherwise
+     * @throws IOException if the messages cannot be read
+     */
+    public int run() throws IOException {
+        try {
+            while (true) {
+                String body = readMessage();
+                if (body == null) {
+                    return 1;
+                }
+                Object message;
+                try {
+                    message = Json.parse(body);
+                } catch (IllegalArgumentException e) {
+                    sendError(null, PARSE_ERROR, e.getMessage());
+                    continue;
+                }
+                if (!(message instanceof Map)) {
+                    sendError(null, INVALID_REQUEST, "A message must be an object");
+                    continue;
+                }
+                @SuppressWarnings("unchecked")
+                Map<String, Object> map = (Map<String, Object>) message;
+                if (!handle(map)) {
+                    return shutdownRequested ? 0 : 1;
+                }
+            }
+        } finally {
+            analyses.shutdownNow();
+            requests.shutdownNow();
+        }
+    }
+
+    /**
+     * Handles one message
+     *
+     * @param message the message
+     * @return false if the message was exit
+     */
+    private boolean handle(Map<String, Object> message) {
+        Object id = message.get("id");
+        boolean isRequest = message.containsKey("id");
+        Object method = message.get("method");
+        if (!(method instanceof String)) {
+            // a response to a request of the server, which sends none
+            return true;
+        }
+        if (method.equals("exit")) {
+            return false;
+        }
+        if (!initialized && !method.equals("initialize")) {
+            if (isRequest) {
+                sendError(id, SERVER_NOT_INITIALIZED, "The server is not initialized");
+            }
+            return true;
+        }
+        if (shutdownRequested && isRequest) {
+            sendError(id, INVALID_REQUEST, "The server is shutting down");
+            return true;
+        }
+
+        try {
+            Map<?, ?> params = (Map<?, ?>) message.get("params");
+            switch ((String) method) {
+                case "initialize":
+                    initialized = true;
+                    sendResult(id, initializeResult());
+                    break;
+                case "shutdown":
+                    shutdownRequested = true;
+                    sendResult(id, null);
+                    break;
+                case "textDocument/didOpen":
+                    open((Map<?, ?>) params.get("textDocument"));
+                    break;
+                case "textDocument/didChange":
+                    change((Map<?, ?>) params.get("textDocument"),
+                            (List<?>) params.get("contentChanges"));
+                    break;
+                case "textDocument/didClose":
+                    close((String) ((Map<?, ?>) params.get("textDocument")).get("uri"));
+                    break;
+                case "textDocument/documentSymbol":
+                    documentSymbol(id,
+                            (String) ((Map<?, ?>) params.get("textDocument")).get("uri"));
+                    break;
+                case "$/cancelRequest":
+                    PendingRequest request = pendingRequests.get(params.get("id"));
+                    if (request != null) {
+                        request.fail(REQUEST_CANCELLED, "The request was cancelled");
+                    }
+                    break;
+                default:
+                    if (isRequest) {
+                        sendError(id, METHOD_NOT_FOUND, "Unknown method " + method);
+                    }
+            }
+        } catch (ClassCastException | NullPointerException | IndexOutOfBoundsException e) {
+            if (isRequest) {
+                sendError(id, INVALID_PARAMS, "Invalid parameters of " + method);
+            }
+            else {
+                System.err.println("bantam: ignored " + method + " with invalid parameters");
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the result of the initialize request, giving the server's
+     *         capabilities
+     */
+    private Map<String, Object> initializeResult() {
+        return Json.object(
+                "capabilities", Json.object(
+                        "textDocumentSync", Json.object(
+                                "openClose", true,
+                                "change", SYNC_INCREMENTAL),
+                        "documentSymbolProvider", true),
+                "serverInfo", Json.object("name", "bantam"));
+    }
+
+    /**
+     * Starts keeping a document opened in the editor and analyses it at once
+     *
+     * @param textDocument the TextDocumentItem of the document
+     */
+    private void open(Map<?, ?> textDocument) {
+        String uri = (String) textDocument.get("uri");
+        Document document = new Document(uri, (String) textDocument.get("text"),
+                ((Number) textDocument.get("version")).intValue());
+        Document previous = documents.put(uri, document);
+        if (previous != null) {
+            discard(previous);
+        }
+        synchronized (document) {
+            scheduleAnalysis(document, 0);
+        }
+    }
+
+    /**
+     * Applies the changes the editor made to a document, and analyses it
+     * once it stops changing
+     *
+     * @param textDocument the VersionedTextDocumentIdentifier of the document
+     * @param contentChanges the changes, in the order they were made
+     */
+    private void change(Map<?, ?> textDocument, List<?> contentChanges) {
+        Document document = documents.get((String) textDocument.get("uri"));
+        if (document == null) {
+            System.err.println("bantam: ignored a change to " + textDocument.get("uri")
+                    + ", which is not open");
+            return;
+        }
+        synchronized (document) {
+            for (Object contentChange : contentChanges) {
+                Map<?, ?> change = (Map<?, ?>) contentChange;
+                document.apply((Map<?, ?>) change.get("range"), (String) change.get("text"));
+            }
+            Object version = textDocument.get("version");
+            if (version instanceof Number) {
+                document.version = ((Number) version).intValue();
+            }
+            document.generation++;
+            failRequests(document);
+            scheduleAnalysis(document, debounceMillis);
+        }
+    }
+
+    /**
+     * Stops keeping a document closed in the editor and clears its errors
+     *
+     * @param uri the URI of the document
+     */
+    private void close(String uri) {
+        Document document = documents.remove(uri);
+        if (document != null) {
+            discard(document);
+        }
+        publishDiagnostics(uri, null, Collections.emptyList());
+    }
+
+    /**
+     * Drops the pending work on a document that is no longer kept
+     *
+     * @param document the document
+     */
+    private void discard(Document document) {
+        synchronized (document) {
+            document.generation++;
+            if (document.analysis != null) {
+                document.analysis.cancel(false);
+            }
+            failRequests(document);
+        }
+    }
+
+    /**
+     * Answers the requests still running on a document with ContentModified.
+     * The caller must hold the lock of the document.
+     *
+     * @param document the document
+     */
+    private void failRequests(Document document) {
+        for (PendingRequest request : document.requests) {
+            request.fail(CONTENT_MODIFIED, "The document has changed");
+        }
+        document.requests.clear();
+    }
+
+    /**
+     * Replaces the pending analysis of a document by one of its current
+     * text.  The caller must hold the lock of the document.
+     *
+     * @param document the document
+     * @param delayMillis the time to wait before analysing, in milliseconds
+     */
+    private void scheduleAnalysis(Document document, long delayMillis) {
+        if (document.analysis != null) {
+            document.analysis.cancel(false);
+        }
+        long generation = document.generation;
+        document.analysis = analyses.schedule(() -> analyze(document, generation),
+                delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Scans and parses a document and publishes its errors, unless it has
+     * changed in the meantime.  A document too deeply nested to analyse
+     * gets a single error.
+     *
+     * @param document the document
+     * @param generation the generation of the text to analyse
+     */
+    private void analyze(Document document, long generation) {
+        String text;
+        int version;
+        synchronized (document) {
+            if (document.generation != generation) {
+                return;
+            }
+            text = document.text.toString();
+            version = document.version;
+        }
+        List<Object> diagnostics;
+        try {
+            diagnostics = diagnose(units.get(document.uri, text), new LineIndex(text));
+        } catch (RuntimeException e) {
+            System.err.println("bantam: failed to analyse " + document.uri + ": " + e);
+            return;
+        } catch (StackOverflowError e) {
+            // the document is reported rather than left with stale errors
+            diagnostics = Collections.singletonList(Json.object(
+                    "range", range(0, 0, 0, 0),
+                    "severity", SEVERITY_ERROR,
+                    "source", "bantam",
+                    "message", "The document is nested too deeply to analyse"));
+        }
+        synchronized (document) {
+            if (document.generation == generation) {
+                publishDiagnostics(document.uri, version, diagnostics);
+            }
+        }
+    }
+
+    /**
+     * Makes the diagnostics of a compilation unit.  Errors only have a line
+     * number, so each diagnostic covers the whole line of its error.
+     *
+     * @param unit the compilation unit of the document
+     * @param lineIndex the LineIndex of the text of the unit
+     * @return the Diagnostic objects
+     */
+    private List<Object> diagnose(CompilationUnit unit, LineIndex lineIndex) {
+        List<Object> diagnostics = new ArrayList<>();
+        List<Error> errors = unit.getErrors();
+        Program program = unit.getProgram();
+        boolean parsed = errors.isEmpty() && program != null;
+        if (parsed) {
+            errors = unit.getResult("semanticErrors", root -> {
+                ErrorHandler errorHandler = new ErrorHandler();
+                new SemanticAnalyzer(errorHandler).analyze(root);
+                return errorHandler.getErrorList();
+            });
+        }
+        for (Error error : errors) {
+            int line = Math.max(0, Math.min(error.getLineNum() - 1,
+                    lineIndex.getLineCount() - 1));
+            int length = lineIndex.getLineEnd(unit.getSource(), line)
+                    - lineIndex.getLineStart(line);
+            diagnostics.add(Json.object(
+                    "range", range(line, 0, line, length),
+                    "severity", SEVERITY_ERROR,
+                    "source", "bantam",
+                    "message", error.getMessage()));
+        }
+        if (parsed && !unit.<Boolean>getResult("hasMain",
+                root -> new MainMainVisitor().hasMain(root))) {
+            diagnostics.add(Json.object(
+                    "range", range(0, 0, 0, 0),
+                    "severity", SEVERITY_WARNING,
+                    "source", "bantam",
+                    "message", "No Main class with a void main() method"));
+        }
+        return diagnostics;
+    }
+
+    /**
+     * Answers a documentSymbol request on the request thread
+     *
+     * @param id the id of the request
+     * @param uri the URI of the document
+     */
+    private void documentSymbol(Object id, String uri) {
+        Document document = documents.get(uri);
+        if (document == null) {
+            sendError(id, INVALID_PARAMS, uri + " is not open");
+            return;
+        }
+        PendingRequest request = new PendingRequest(id);
+        String text;
+        synchronized (document) {
+            text = document.text.toString();
+            document.requests.add(request);
+        }
+        pendingRequests.put(id, request);
+        requests.execute(() -> {
+            try {
+                if (!request.isAnswered()) {
+                    CompilationUnit unit = units.get(uri, text);
+                    request.respond(symbols(unit.getProgram(), text, new LineIndex(text)));
+                }
+            } catch (RuntimeException | StackOverflowError e) {
+                request.fail(INTERNAL_ERROR, e.toString());
+            }
+            synchronized (document) {
+                document.requests.remove(request);
+            }
+        });
+    }
+
+    /**
+     * Makes the DocumentSymbol objects of the classes of a program, each
+     * holding the symbols of its fields and methods
+     *
+     * @param program the root of the AST, or null if the text did not parse
+     * @param text the text the program was parsed from
+     * @param lineIndex the LineIndex of the text
+     * @return the DocumentSymbol objects
+     */
+    private List<Object> symbols(Program program, String text, LineIndex lineIndex) {
+        List<Object> symbols = new ArrayList<>();
+        if (program == null) {
+            return symbols;
+        }
+        ClassList classList = program.getClassList();
+        for (int i = 0; i < classList.getSize(); i++) {
+            Class_ class_ = (Class_) classList.get(i);
+            List<Object> children = new ArrayList<>();
+            MemberList memberList = class_.getMemberList();
+            for (int j = 0; j < memberList.getSize(); j++) {
+                Member member = (Member) memberList.get(j);
+                if (member instanceof Method) {
+                    Method method = (Method) member;
+                    children.add(symbol(method.getName(), method.getReturnType(),
+                            SYMBOL_METHOD, method.getStartOffset(), method.getEndOffset(),
+                            null, text, lineIndex));
+                }
+                else if (member instanceof Field) {
+                    Field field = (Field) member;
+                    children.add(symbol(field.getName(), field.getType(),
+                            SYMBOL_FIELD, field.getStartOffset(), field.getEndOffset(),
+                            null, text, lineIndex));
+                }
+            }
+            symbols.add(symbol(class_.getName(),
+                    class_.getParent() == null ? null : "extends " + class_.getParent(),
+                    SYMBOL_CLASS, class_.getStartOffset(), class_.getEndOffset(),
+                    children, text, lineIndex));
+        }
+        return symbols;
+    }
+
+    /**
+     * Makes a DocumentSymbol object
+     *
+     * @param name the name of the symbol
+     * @param detail the type of the symbol, or null
+     * @param kind the SymbolKind of the symbol
+     * @param startOffset the offset of the first character of the declaration
+     * @param endOffset the offset just past the declaration
+     * @param children the symbols declared in this one, or null
+     * @param text the text of the document
+     * @param lineIndex the LineIndex of the text
+     * @return the DocumentSymbol object
+     */
+    private Map<String, Object> symbol(String name, String detail, int kind,
+                                       int startOffset, int endOffset, List<Object> children,
+                                       String text, LineIndex lineIndex) {
+        int startLine = lineIndex.getLine(startOffset);
+        int endLine = lineIndex.getLine(Math.max(startOffset, endOffset));
+        Map<String, Object> range = range(
+                startLine, startOffset - lineIndex.getLineStart(startLine),
+                endLine, Math.max(startOffset, endOffset) - lineIndex.getLineStart(endLine));
+        Map<String, Object> symbol = Json.object(
+                "name", name,
+                "kind", kind,
+                "range", range,
+                "selectionRange", range);
+        if (detail != null) {
+            symbol.put("detail", detail);
+        }
+        if (children != null) {
+            symbol.put("children", children);
+        }
+        return symbol;
+    }
+
+    /**
+     * @return a Range object with the given start and end positions
+     */
+    private static Map<String, Object> range(int startLine, int startCharacter,
+                                             int endLine, int endCharacter) {
+        return Json.object(
+                "start", Json.object("line", startLine, "character", startCharacter),
+                "end", Json.object("line", endLine, "character", endCharacter));
+    }
+
+    /**
+     * Sends the diagnostics of a document
+     *
+     * @param uri the URI of the document
+     * @param version the version of the document they were made from, or null
+     * @param diagnostics the Diagnostic objects
+     */
+    private void publishDiagnostics(String uri, Integer version, List<Object> diagnostics) {
+        Map<String, Object> params = Json.object("uri", uri, "diagnostics", diagnostics);
+        if (version != null) {
+            params.put("version", version);
+        }
+        send(Json.object("jsonrpc", "2.0",
+                "method", "textDocument/publishDiagnostics", "params", params));
+    }
+
+    /**
+     * Sends the result of a request
+     *
+     * @param id the id of the request
+     * @param result the result
+     */
+    private void sendResult(Object id, Object result) {
+        send(Json.object("jsonrpc", "2.0", "id", id, "result", result));
+    }
+
+    /**
+     * Sends the error answering a request
+     *
+     * @param id the id of the request, or null if it is not known
+     * @param code the error code
+     * @param message the message of the error
+     */
+    private void sendError(Object id, int code, String message) {
+        send(Json.object("jsonrpc", "2.0", "id", id,
+                "error", Json.object("code", code, "message", message)));
+    }
+
+    /**
+     * Writes a message with its header
+     *
+     * @param message the message
+     */
+    private synchronized void send(Map<String, Object> message) {
+        byte[] body = Json.toJson(message).getBytes(StandardCharsets.UTF_8);
+        try {
+            out.write(("Content-Length: " + body.length + "\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII));
+            out.write(body);
+            out.flush();
+        } catch (IOException e) {
+            System.err.println("bantam: could not send a message: " + e);
+        }
+    }
+
+    /**
+     * Reads the headers and body of the next message
+     *
+     * @return the body, or null at the end of the input
+     * @throws IOException if the input cannot be read or has no
+     *                     Content-Length header
+     */
+    private String readMessage() throws IOException {
+        int contentLength = -1;
+        while (true) {
+            String header = readHeaderLine();
+            if (header == null) {
+                return null;
+            }
+            if (header.isEmpty()) {
+                break;
+            }
+            int colon = header.indexOf(':');
+            if (colon > 0 && header.substring(0, colon).trim()
+                    .equalsIgnoreCase("Content-Length")) {
+                try {
+                    contentLength = Integer.parseInt(header.substring(colon + 1).trim());
+                } catch (NumberFormatException e) {
+                    throw new IOException("Invalid header: " + header);
+                }
+            }
+        }
+        if (contentLength < 0) {
+            throw new IOException("A message has no Content-Length header");
+        }
+        byte[] body = new byte[contentLength];
+        int read = 0;
+        while (read < contentLength) {
+            int count = in.read(body, read, contentLength - read);
+            if (count < 0) {
+                return null;
+            }
+            read += count;
+        }
+        return new String(body, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the next header line without its line break, or null at the
+     *         end of the input
+     */
+    private String readHeaderLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        while (true) {
+            int b = in.read();
+            if (b < 0) {
+                return null;
+            }
+            if (b == '\n') {
+                break;
+            }
+            if (b != '\r') {
+                line.write(b);
+            }
+        }
+        return new String(line.toByteArray(), StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * @return a daemon thread running the given task
+     */
+    private static Thread newDaemonThread(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * A Document is the text of a document open in the editor, with the work
+     * pending on it.  Its fields are guarded by its lock.
+     */
+    private static class Document {
+        private final String uri;
+        private final StringBuilder text;
+        private LineIndex lineIndex;          // null until needed after a change
+        private int version;                  // the editor's version of the text
+        private long generation;              // counts the changes to the text
+        private ScheduledFuture<?> analysis;  // the latest analysis scheduled
+        private final List<PendingRequest> requests = new ArrayList<>();
+
+        Document(String uri, String text, int version) {
+            this.uri = uri;
+            this.text = new StringBuilder(text);
+            this.version = version;
+        }
+
+        /**
+         * Applies one change made by the editor
+         *
+         * @param range the Range object of the replaced text, or null if the
+         *              whole text is replaced
+         * @param newText the text replacing it
+         */
+        void apply(Map<?, ?> range, String newText) {
+            if (range == null) {
+                text.setLength(0);
+                text.append(newText);
+            }
+            else {
+                if (lineIndex == null) {
+                    lineIndex = new LineIndex(text);
+                }
+                int start = offset((Map<?, ?>) range.get("start"));
+                int end = Math.max(start, offset((Map<?, ?>) range.get("end")));
+                text.replace(start, end, newText);
+            }
+            lineIndex = null;
+        }
+
+        /**
+         * @param position a Position object
+         * @return the offset of the position in the text
+         */
+        private int offset(Map<?, ?> position) {
+            return lineIndex.getOffset(text,
+                    ((Number) position.get("line")).intValue(),
+                    ((Number) position.get("character")).intValue());
+        }
+    }
+
+    /**
+     * A PendingRequest is a request being answered on the request thread,
+     * which is answered only once: by its result, or by an error if it is
+     * cancelled or its document changes first
+     */
+    private class PendingRequest {
+        private final Object id;
+        private final AtomicBoolean answered = new AtomicBoolean();
+
+        PendingRequest(Object id) {
+            this.id = id;
+        }
+
+        boolean isAnswered() {
+            return answered.get();
+        }
+
+        void respond(Object result) {
+            if (answered.compareAndSet(false, true)) {
+                pendingRequests.remove(id, this);
+                sendResult(id, result);
+            }
+        }
+
+        void fail(int code, String message) {
+            if (answered.compareAndSet(false, true)) {
+                pendingRequests.remove(id, this);
+                sendError(id, code, message);
+            }
+        }
+    }
+
+    /**
+     * Main method runs a LanguageServer on standard input and output until
+     * the editor sends exit.  The debounce delay can be set with
+     * "--debounce MILLIS".
+     *
+     * @param args the options
+     */
+    public static void main(String[] args) throws IOException {
+        long debounceMillis = DEFAULT_DEBOUNCE_MILLIS;
+        if (args.length == 2 && args[0].equals("--debounce")) {
+            try {
+                debounceMillis = Long.parseLong(args[1]);
+            } catch (NumberFormatException e) {
+                System.err.println("Invalid number: " + args[1]);
+                System.exit(2);
+            }
+        }
+        else if (args.length != 0) {
+            System.err.println("Usage: LanguageServer [--debounce millis]");
+            System.exit(2);
+        }
+        System.exit(new LanguageServer(System.in, System.out, debounceMillis).run());
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * File: bantam.lsp.LineIndex.java
+ * CS361 Project 11
+ * Names: Martin Deutsch and Wyett MacDonald
+ * Date: 2/20/2019
+ * This file contains the LineIndex, which converts between offsets in a text
+ * and the line and character positions used by editors
+ */
+
+package proj11DeutschMacDonald.bantam.lsp;
+
+import java.util.Arrays;
+
+/**
+ * A LineIndex holds the offset at which each line of a text starts, so that
+ * the offsets kept by the Scanner and the AST can be turned into the line
+ * and character positions of the Language Server Protocol and back.  Lines
+ * end with "\n", "\r\n" or "\r", and characters are counted in UTF-16 code
+ * units, as Java counts them, which is what the protocol uses by default.
+ * <p>
+ * A LineIndex does not follow changes to its text; a new one must be made
+ * for each version of the text.
+ *
+ * @author Martin Deutsch
+ * @author Wyett MacDonald
+ */
+public class LineIndex {
+
+    private final int[] lineStarts; // the offset of the first character of each line
+    private final int length;       // the length of the text
+
+    /**
+     * Constructor creating the LineIndex of a text
+     *
+     * @param text the text
+     */
+    public LineIndex(CharSequence text) {
+        int[] starts = new int[16];
+        int lineCount = 1;
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c == '\r' && i + 1 < length && text.charAt(i + 1) == '\n') {
+                i++;
+            }
+            if (c == '\n' || c == '\r') {
+                if (lineCount == starts.length) {
+                    starts = Arrays.copyOf(starts, lineCount * 2);
+                }
+                starts[lineCount++] = i + 1;
+            }
+        }
+        this.lineStarts = Arrays.copyOf(starts, lineCount);
+        this.length = length;
+    }
+
+    /**
+     * @return the number of lines, which is one more than the number of
+     *         line breaks
+     */
+    public int getLineCount() {
+        return lineStarts.length;
+    }
+
+    /**
+     * @param line the line, counting from 0
+     * @return the offset of the first character of the line
+     */
+    public int getLineStart(int line) {
+        return lineStarts[line];
+    }
+
+    /**
+     * @param text the text this index was made from
+     * @param line the line, counting from 0
+     * @return the offset of the line break ending the line, or of the end
+     *         of the text for the last line
+     */
+    public int getLineEnd(CharSequence text, int line) {
+        if (line + 1 == lineStarts.length) {
+            return length;
+        }
+        int end = lineStarts[line + 1] - 1;
+        if (end > lineStarts[line] && text.charAt(end) == '\n'
+                && text.charAt(end - 1) == '\r') {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * @param offset an offset in the text
+     * @return the line the offset is in, counting from 0
+     */
+    public int getLine(int offset) {
+        int line = Arrays.binarySearch(lineStarts, offset);
+        return line >= 0 ? line : -line - 2;
+    }
+
+    /**
+     * Finds the offset of a position, clamping positions past the end of a
+     * line to the end of the line and positions past the last line to the
+     * end of the text, as the protocol asks
+     *
+     * @param text the text this index was made from
+     * @param line the line, counting from 0
+     * @param character the character in the line, counting from 0
+     * @return the offset
+     */
+    public int getOffset(CharSequence text, int line, int character) {
+        if (line < 0) {
+            return 0;
+        }
+        if (line >= lineStarts.length) {
+            return length;
+        }
+        int start = lineStarts[line];
+        return start + Math.max(0, Math.min(character, getLineEnd(text, line) - start));
+    }
+}
@@ -0,0 +1,504 @@
+/*
+ * File: bantam.parser.ASTCache.java
+ * CS361 Project 11
+ * Names: Martin Deutsch and Wyett MacDonald
+ * Date: 2/20/2019
+ * This file contains the ASTCache, which saves the ASTs of parsed files
+ * on disk and loads them again when the files have not changed
+ */
+
+package proj11DeutschMacDonald.bantam.parser;
+
+import proj11DeutschMacDonald.bantam.ast.ASTNode;
+import proj11DeutschMacDonald.bantam.ast.ArenaAST;
+import proj11DeutschMacDonald.bantam.ast.Program;
+import proj11DeutschMacDonald.bantam.lexer.Scanner;
+import proj11DeutschMacDonald.bantam.util.CompilationException;
+import proj11DeutschMacDonald.bantam.util.Error;
+import proj11DeutschMacDonald.bantam.util.ErrorHandler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * An ASTCache parses Bantam Java source and saves each AST without errors in
+ * a directory, as an ArenaAST in the form written by ArenaAST.toBytes().  The
+ * next time the same source is parsed under the same name, the AST is loaded
+ * with one read of the file instead of scanning and parsing it again.
+ * <p>
+ * Entries are named by a SHA-256 hash of the source and its name, so an
+ * edited file simply misses.  The entries live in a subdirectory named after
+ * the compiler version, a hash of ArenaAST.FORMAT_VERSION and of every class
+ * file of the lexer, parser and ast packages, so entries made by a different
+ * build of the compiler are never read; the subdirectories of other versions
+ * are deleted when an ASTCache is created.  Each entry also starts with its
+ * full key, which is checked when it is loaded, and an entry that cannot be
+ * loaded is treated as a miss and replaced.
+ * <p>
+ * Sources with errors are not saved, since their errors would not be
+ * reported again when loading them.  Callers that scan and parse the source
+ * themselves use load() and store() instead of parse().  An ASTCache can be
+ * shared by threads.
+ *
+ * @author Martin Deutsch
+ * @author Wyett MacDonald
+ */
+public class ASTCache {
+
+    private static final String SUFFIX = ".ast";
+
+    // a class of each package whose code decides what AST a source gets
+    private static final Class<?>[] FRONT_END_PACKAGES = {
+            Scanner.class, Parser.class, ASTNode.class
+    };
+
+    private static String compilerVersion; // computed on first use
+
+    private final Path directory;
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+    private boolean errorRecovery;
+
+    /**
+     * Constructor creating an ASTCache in the given directory.  The
+     * directory is created if needed, and entries left there by other
+     * versions of the compiler are deleted.
+     *
+     * @param baseDirectory the directory to keep the cache in
+     */
+    public ASTCache(Path baseDirectory) {
+        String version = getCompilerVersion();
+        this.directory = baseDirectory.resolve(version);
+        try {
+            Files.createDirectories(this.directory);
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(baseDirectory)) {
+                for (Path entry : entries) {
+                    String name = entry.getFileName().toString();
+                    if (Files.isDirectory(entry) && !name.equals(version)
+                            && name.matches("[0-9a-f]{16}")) {
+                        deleteDirectory(entry);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // the cache only saves time, so it misses until the directory works
+        }
+    }
+
+    /**
+     * @return the directory used when no other is given, in the user's home
+     * directory so that other users cannot write entries into it
+     */
+    public static Path getDefaultDirectory() {
+        return Paths.get(System.getProperty("user.home"), ".bantam-ast-cache");
+    }
+
+    /**
+     * Turns error recovery on or off for the sources that are parsed, as in
+     * Parser.setErrorRecovery().  Loaded ASTs never have errors.
+     *
+     * @param errorRecovery true to recover from syntax errors
+     */
+    public void setErrorRecovery(boolean errorRecovery) {
+        this.errorRecovery = errorRecovery;
+    }
+
+    /**
+     * @return the number of ASTs loaded from the cache
+     */
+    public int getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of sources that were not found in the cache
+     */
+    public int getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Loads the AST of the given source text from the cache, or parses it
+     * and saves its AST if it has no errors
+     *
+     * @param source the Bantam Java source text
+     * @param logicalName the name to report errors under
+     * @param errorHandler the ErrorHandler to register errors with
+     * @return the Program node forming the root of the AST
+     */
+    public Program parse(CharSequence source, String logicalName, ErrorHandler errorHandler)
+            throws CompilationException {
+        byte[] key = computeKey(source.toString().getBytes(StandardCharsets.UTF_8), logicalName);
+        Program program = load(key);
+        if (program != null) {
+            return program;
+        }
+        Parser parser = createParser(errorHandler);
+        return save(key, parser.parse(source, logicalName), errorHandler);
+    }
+
+    /**
+     * Loads the AST of the given file from the cache, or parses it and
+     * saves its AST if it has no errors
+     *
+     * @param filename the name of the Bantam Java file
+     * @param errorHandler the ErrorHandler to register errors with
+     * @return the Program node forming the root of the AST
+     */
+    public Program parse(String filename, ErrorHandler errorHandler)
+            throws CompilationException {
+        byte[] contents;
+        try {
+            contents = Files.readAllBytes(Paths.get(filename));
+        } catch (IOException e) {
+            // let the Scanner report it
+            return createParser(errorHandler).parse(filename);
+        }
+        byte[] key = computeKey(contents, filename);
+        Program program = load(key);
+        if (program != null) {
+            return program;
+        }
+        // parse the bytes that were hashed, decoded as the Scanner would
+        Parser parser = createParser(errorHandler);
+        return save(key, parser.parse(new String(contents, Charset.defaultCharset()),
+                filename), errorHandler);
+    }
+
+    /**
+     * Loads the AST of the given source text from the cache, without
+     * parsing it if it is missing
+     *
+     * @param source the Bantam Java source text
+     * @param logicalName the name the source was parsed under
+     * @return the AST, or null if it is not in the cache
+     */
+    public Program load(CharSequence source, String logicalName) {
+        Program program = load(computeKey(
+                source.toString().getBytes(StandardCharsets.UTF_8), logicalName));
+        if (program == null) {
+            misses.incrementAndGet();
+        }
+        return program;
+    }
+
+    /**
+     * Saves the AST of source text parsed elsewhere, which must have been
+     * parsed without errors
+     *
+     * @param source the Bantam Java source text
+     * @param logicalName the name the source was parsed under
+     * @param program the AST of the source
+     */
+    public void store(CharSequence source, String logicalName, Program program) {
+        save(computeKey(source.toString().getBytes(StandardCharsets.UTF_8), logicalName),
+                program, new ErrorHandler());
+    }
+
+    /**
+     * Deletes every entry of the cache
+     */
+    public void clear() {
+        try {
+            deleteDirectory(directory);
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            // entries that could not be deleted will still be found
+        }
+    }
+
+    /**
+     * Creates a Parser with this ASTCache's settings
+     *
+     * @param errorHandler the ErrorHandler for the Parser
+     * @return the new Parser
+     */
+    private Parser createParser(ErrorHandler errorHandler) {
+        misses.incrementAndGet();
+        Parser parser = new Parser(errorHandler);
+        parser.setErrorRecovery(errorRecovery);
+        return parser;
+    }
+
+    /**
+     * Loads the AST saved under the given key
+     *
+     * @param key the key of the source
+     * @return the AST, or null if there is no usable entry
+     */
+    private Program load(byte[] key) {
+        Path path = directory.resolve(toHex(key) + SUFFIX);
+        try {
+            byte[] bytes = Files.readAllBytes(path);
+            if (bytes.length < key.length
+                    || !Arrays.equals(Arrays.copyOf(bytes, key.length), key)) {
+                return null;
+            }
+            Program program = ArenaAST.fromBytes(
+                    Arrays.copyOfRange(bytes, key.length, bytes.length)).toProgram();
+            hits.incrementAndGet();
+            return program;
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | RuntimeException | StackOverflowError e) {
+            // a damaged entry is parsed again and replaced
+            return null;
+        }
+    }
+
+    /**
+     * Saves the given AST under the given key if no errors were found and
+     * the AST can be encoded.  The entry is written to a temporary file first
+     * and then moved into place, so other threads and processes never read a
+     * partial entry.
+     *
+     * @param key the key of the source
+     * @param program the AST of the source
+     * @param errorHandler the ErrorHandler the errors were registered with
+     * @return the AST
+     */
+    private Program save(byte[] key, Program program, ErrorHandler errorHandler) {
+        if (program == null || errorHandler.errorsFound()) {
+            return program;
+        }
+        Path temp = null;
+        try {
+            byte[] arena = ArenaAST.fromProgram(program).toBytes();
+            byte[] bytes = Arrays.copyOf(key, key.length + arena.length);
+            System.arraycopy(arena, 0, bytes, key.length, arena.length);
+            temp = Files.createTempFile(directory, "entry", ".tmp");
+            Files.write(temp, bytes);
+            Files.move(temp, directory.resolve(toHex(key) + SUFFIX),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // the source is parsed again next time
+            try {
+                if (temp != null) {
+                    Files.deleteIfExists(temp);
+                }
+            } catch (IOException ignored) {
+                // left for clear() to delete
+            }
+        } catch (StackOverflowError e) {
+            // a tree too deep to encode is not saved and is parsed again
+        }
+        return program;
+    }
+
+    /**
+     * Computes the key of a source: a hash of the compiler version, the
+     * name of the source and its contents
+     *
+     * @param contents the contents of the source
+     * @param name the name of the source, which is stored in its AST
+     * @return the key
+     */
+    private static byte[] computeKey(byte[] contents, String name) {
+        MessageDigest digest = newDigest();
+        digest.update(getCompilerVersion().getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(name.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(contents);
+        return digest.digest();
+    }
+
+    /**
+     * Returns the version of the compiler, a hash of ArenaAST.FORMAT_VERSION
+     * and of the name and contents of every class file of the front end
+     * packages, found in the directory or jar the classes were loaded from.
+     * If the class files cannot be listed, the version is unique to this run,
+     * so that no entry is shared with a build that may differ.
+     *
+     * @return the version, as 16 hex digits
+     */
+    public static synchronized String getCompilerVersion() {
+        if (compilerVersion == null) {
+            MessageDigest digest = newDigest();
+            digest.update(Integer.toString(ArenaAST.FORMAT_VERSION).getBytes(StandardCharsets.UTF_8));
+            try {
+                for (Class<?> packageClass : FRONT_END_PACKAGES) {
+                    hashPackage(packageClass, digest);
+                }
+            } catch (IOException | RuntimeException e) {
+                digest.update(UUID.randomUUID().toString().getBytes(StandardCharsets.UTF_8));
+            }
+            compilerVersion = toHex(digest.digest()).substring(0, 16);
+        }
+        return compilerVersion;
+    }
+
+    /**
+     * Adds the names and contents of the class files of a package to a
+     * digest, in order of name
+     *
+     * @param packageClass a class of the package
+     * @param digest the digest to update
+     * @throws IOException if the class files cannot be listed or read
+     */
+    private static void hashPackage(Class<?> packageClass, MessageDigest digest)
+            throws IOException {
+        String packagePath = packageClass.getPackage().getName().replace('.', '/') + "/";
+        CodeSource codeSource = packageClass.getProtectionDomain().getCodeSource();
+        if (codeSource == null) {
+            throw new IOException("no code source for " + packageClass.getName());
+        }
+        Path location;
+        try {
+            location = Paths.get(codeSource.getLocation().toURI());
+        } catch (URISyntaxException e) {
+            throw new IOException(e);
+        }
+
+        TreeMap<String, byte[]> classFiles = new TreeMap<>();
+        if (Files.isDirectory(location)) {
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(
+                    location.resolve(packagePath), "*.class")) {
+                for (Path entry : entries) {
+                    classFiles.put(entry.getFileName().toString(), Files.readAllBytes(entry));
+                }
+            }
+        }
+        else {
+            try (JarFile jar = new JarFile(location.toFile())) {
+                Enumeration<JarEntry> entries = jar.entries();
+                while (entries.hasMoreElements()) {
+                    JarEntry entry = entries.nextElement();
+                    String name = entry.getName();
+                    if (name.startsWith(packagePath) && name.endsWith(".class")
+                            && name.indexOf('/', packagePath.length()) < 0) {
+                        classFiles.put(name.substring(packagePath.length()),
+                                readAll(jar.getInputStream(entry)));
+                    }
+                }
+            }
+        }
+        if (classFiles.isEmpty()) {
+            throw new IOException("no class files in " + packagePath);
+        }
+        for (Map.Entry<String, byte[]> classFile : classFiles.entrySet()) {
+            digest.update((packagePath + classFile.getKey()).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(classFile.getValue());
+        }
+    }
+
+    /**
+     * Reads a stream to its end and closes it
+     *
+     * @param in the stream
+     * @return the bytes read
+     * @throws IOException if the stream cannot be read
+     */
+    private static byte[] readAll(InputStream in) throws IOException {
+        try (InputStream stream = in) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                bytes.write(buffer, 0, read);
+            }
+            return bytes.toByteArray();
+        }
+    }
+
+    /**
+     * @return a new SHA-256 MessageDigest
+     */
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param bytes the bytes to convert
+     * @return the bytes as lower case hex digits
+     */
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+            hex.append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Deletes a directory of the cache and the files in it
+     *
+     * @param path the directory
+     */
+    private static void deleteDirectory(Path path) throws IOException {
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(path)) {
+            for (Path entry : entries) {
+                Files.deleteIfExists(entry);
+            }
+        }
+        Files.deleteIfExists(path);
+    }
+
+    /**
+     * Main method parses the given files through the cache in the default
+     * directory, and prints for each whether it was loaded or parsed and
+     * how long that took, or the errors encountered.  With -clear the cache
+     * is emptied first.
+     *
+     * @param args an optional -clear followed by a list of file names
+     */
+    public static void main(String[] args) {
+        int first = args.length > 0 && args[0].equals("-clear") ? 1 : 0;
+        if (args.length == first) {
+            System.out.println("Please enter files to parse");
+            return;
+        }
+
+        ASTCache cache = new ASTCache(getDefaultDirectory());
+        if (first == 1) {
+            cache.clear();
+        }
+        for (int i = first; i < args.length; i++) {
+            ErrorHandler errorHandler = new ErrorHandler();
+            int hitsBefore = cache.getHits();
+            long start = System.nanoTime();
+            try {
+                cache.parse(args[i], errorHandler);
+                System.out.printf("%s: %s in %.1f ms%n", args[i],
+                        cache.getHits() > hitsBefore ? "loaded" : "parsed",
+                        (System.nanoTime() - start) / 1e6);
+            } catch (CompilationException e) {
+                System.out.println(args[i]);
+                for (Error error : errorHandler.getErrorList()) {
+                    System.out.println(error.toString());
+                }
+                if (!errorHandler.errorsFound()) {
+                    System.out.println(e.getMessage());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * File: bantam.parser.BatchParser.java
+ * CS361 Project 11
+ * Names: Martin Deutsch and Wyett MacDonald
+ * Date: 2/20/2019
+ * This file contains the BatchParser, which scans and parses many
+ * files concurrently
+ */
+
+package proj11DeutschMacDonald.bantam.parser;
+
+import proj11DeutschMacDonald.bantam.ast.Program;
+import proj11DeutschMacDonald.bantam.util.CompilationException;
+import proj11DeutschMacDonald.bantam.util.Error;
+import proj11DeutschMacDonald.bantam.util.ErrorHandler;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * BatchParser scans and parses a list of Bantam Java files on a ForkJoinPool.
+ * Every file gets its own Parser and ErrorHandler, so files never share
+ * state; the results are returned in the same order as the file names,
+ * whatever order the files finish in.
+ *
+ * @author Martin Deutsch
+ * @author Wyett MacDonald
+ */
+public class BatchParser {
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Constructor creating a BatchParser using one thread per processor
+     */
+    public BatchParser() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructor creating a BatchParser with the given number of threads
+     *
+     * @param parallelism the number of files to parse at the same time
+     * @throws IllegalArgumentException if parallelism is less than 1
+     */
+    public BatchParser(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Invalid number of threads: " + parallelism);
+        }
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Scans and parses all the given files concurrently
+     *
+     * @param filenames the files to parse
+     * @return the result for each file, in the same order as filenames
+     */
+    public List<Result> parseAll(List<String> filenames) {
+        return parseAll(filenames, null);
+    }
+
+    /**
+     * Scans and parses all the given files concurrently, reading relative
+     * file names from the given directory but reporting the files and their
+     * errors under the names given, as if the directory were the current one
+     *
+     * @param filenames the files to parse
+     * @param directory the directory relative names are in, or null for the
+     *                  current directory
+     * @return the result for each file, in the same order as filenames
+     */
+    public List<Result> parseAll(List<String> filenames, Path directory) {
+        List<ForkJoinTask<Result>> tasks = new ArrayList<>();
+        for (String filename : filenames) {
+            tasks.add(pool.submit(() -> parseFile(filename, directory)));
+        }
+        List<Result> results = new ArrayList<>();
+        for (ForkJoinTask<Result> task : tasks) {
+            results.add(task.join());
+        }
+        return results;
+    }
+
+    /**
+     * Shuts down the threads of this BatchParser
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Scans and parses one file with its own Parser and ErrorHandler
+     *
+     * @param filename the file to parse
+     * @param directory the directory a relative file name is in, or null
+     * @return the result of parsing the file
+     */
+    private static Result parseFile(String filename, Path directory) {
+        ErrorHandler errorHandler = new ErrorHandler();
+        Parser parser = new Parser(errorHandler);
+        try {
+            Program program = directory == null ? parser.parse(filename)
+                    : parser.parse(readFile(directory.resolve(filename), filename), filename);
+            return new Result(filename, program, errorHandler.getErrorList(), null);
+        } catch (CompilationException e) {
+            return new Result(filename, null, errorHandler.getErrorList(), e.getMessage());
+        } catch (RuntimeException e) {
+            // a bug hit by one file must not lose the results of the others
+            return new Result(filename, null, errorHandler.getErrorList(),
+                    "File " + filename + " could not be parsed: " + e);
+        }
+    }
+
+    /**
+     * Reads the text of a file, failing as the Scanner does when it reads
+     * a file itself
+     *
+     * @param path the path of the file
+     * @param filename the name the file is reported under
+     * @return the text of the file
+     */
+    private static String readFile(Path path, String filename) {
+        try {
+            return new String(Files.readAllBytes(path), Charset.defaultCharset());
+        } catch (NoSuchFileException e) {
+            throw new CompilationException("File " + filename + " not found.");
+        } catch (IOException e) {
+            throw new CompilationException("File " + filename + " could not be read.");
+        }
+    }
+
+    /**
+     * Prints, in order, the name of each file followed by whether scanning
+     * and parsing were successful, or the errors encountered if not
+     *
+     * @param results the results returned by parseAll
+     * @param out the writer to print to
+     */
+    public static void printResults(List<Result> results, PrintWriter out) {
+        for (Result result : results) {
+            out.println(result.getFilename());
+            if (result.getFailureMessage() == null) {
+                out.println("Scanning and parsing successful");
+            }
+            else {
+                for (Error error : result.getErrors()) {
+                    out.println(error.toString());
+                }
+                if (result.getErrors().isEmpty()) {
+                    out.println(result.getFailureMessage());
+                }
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Merges the errors of all the results into one list, ordered by
+     * the position of each file in the results and then by line number
+     *
+     * @param results the results returned by parseAll
+     * @return all the errors found
+     */
+    public static List<Error> mergeErrors(List<Result> results) {
+        List<Error> errors = new ArrayList<>();
+        for (Result result : results) {
+            errors.addAll(result.getErrors());
+        }
+        return errors;
+    }
+
+    /**
+     * The outcome of scanning and parsing one file
+     */
+    public static class Result {
+        private final String filename;
+        private final Program program;
+        private final List<Error> errors;
+        private final String failureMessage;
+
+        /**
+         * Constructor for a Result
+         *
+         * @param filename       the file that was parsed
+         * @param program        the root of the AST, or null if parsing failed
+         * @param errors         the errors registered while parsing the file
+         * @param failureMessage the message of the CompilationException that
+         *                       stopped parsing, or null if parsing succeeded
+         */
+        Result(String filename, Program program, List<Error> errors, String failureMessage) {
+            this.filename = filename;
+            this.program = program;
+            this.errors = Collections.unmodifiableList(new ArrayList<>(errors));
+            this.failureMessage = failureMessage;
+        }
+
+        /**
+         * @return the file that was parsed
+         */
+        public String getFilename() {
+            return filename;
+        }
+
+        /**
+         * @return the root of the AST, or null if parsing failed
+         */
+        public Program getProgram() {
+            return program;
+        }
+
+        /**
+         * @return the errors registered while parsing the file, in line order
+         */
+        public List<Error> getErrors() {
+            return errors;
+        }
+
+        /**
+         * @return true if the file was scanned and parsed without errors
+         */
+        public boolean isSuccessful() {
+            return program != null && errors.isEmpty();
+        }
+
+        /**
+         * @return the message of the CompilationException that stopped
+         * parsing, or null if parsing succeeded
+         */
+        public String getFailureMessage() {
+            return failureMessage;
+        }
+    }
+
+    /**
+     * Main method scans and parses the given files concurrently and prints
+     * out, in the order given, if scanning and parsing were successful, or the
+     * errors encountered if not.  The number of threads can be set with
+     * "-j N" before the file names.
+     *
+     * @param args an optional "-j N" followed by a list of file names
+     */
+    public static void main(String[] args) {
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        int first = 0;
+        if (args.length >= 2 && args[0].equals("-j")) {
+            try {
+                parallelism = Integer.parseInt(args[1]);
+            } catch (NumberFormatException e) {
+                System.out.println("Invalid number of threads: " + args[1]);
+                return;
+            }
+            if (parallelism < 1) {
+                System.out.println("Invalid number of threads: " + args[1]);
+                return;
+            }
+            first = 2;
+        }
+        if (args.length == first) {
+            System.out.println("Please enter files to scan");
+            return;
+        }
+
+        BatchParser batchParser = new BatchParser(parallelism);
+        List<Result> results = batchParser.parseAll(
+                Arrays.asList(args).subList(first, args.length));
+        batchParser.shutdown();
+        printResults(results, new PrintWriter(System.out));
+    }
+}
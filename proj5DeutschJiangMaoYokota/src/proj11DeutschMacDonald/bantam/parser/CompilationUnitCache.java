@@ -0,0 +1,349 @@
+/*
+ * File: bantam.parser.CompilationUnitCache.java
+ * CS361 Project 11
+ * Names: Martin Deutsch and Wyett MacDonald
+ * Date: 2/20/2019
+ * This file contains the CompilationUnitCache, which keeps the tokens, AST
+ * and analysis results of recently compiled sources in memory
+ */
+
+package proj11DeutschMacDonald.bantam.parser;
+
+import proj11DeutschMacDonald.bantam.ast.Program;
+import proj11DeutschMacDonald.bantam.lexer.Scanner;
+import proj11DeutschMacDonald.bantam.lexer.TokenBuffer;
+import proj11DeutschMacDonald.bantam.util.CompilationException;
+import proj11DeutschMacDonald.bantam.util.Error;
+import proj11DeutschMacDonald.bantam.util.ErrorHandler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * A CompilationUnitCache holds a CompilationUnit for each recently compiled
+ * source, so that several actions on an unchanged source scan and parse it
+ * only once.  Units are found by the path of the source, and a unit is only
+ * reused if its text is the same as the text asked for; otherwise it is
+ * replaced by a new unit for the new text.
+ * <p>
+ * A CompilationUnit computes its tokens, AST and analysis results the first
+ * time they are asked for.  The cache keeps an estimate of the memory held
+ * by its units and drops the least recently used units when the estimate
+ * goes over its limit, but always keeps the unit used last.  An ASTCache can
+ * be given to load the ASTs of sources parsed in earlier sessions.
+ * <p>
+ * Both classes can be used by several threads.
+ *
+ * @author Martin Deutsch
+ * @author Wyett MacDonald
+ */
+public class CompilationUnitCache {
+
+    // rough sizes used to estimate the memory held by a unit
+    private static final int BYTES_PER_CHAR = 2;   // the text
+    private static final int BYTES_PER_TOKEN = 17; // the arrays of a TokenBuffer
+    private static final int AST_BYTES_PER_CHAR = 8; // the AST, measured on large files
+
+    private final long maxBytes;
+    private final ASTCache astCache;
+    private final LinkedHashMap<String, CompilationUnit> units =
+            new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+    private int hits;
+    private int misses;
+
+    /**
+     * Constructor creating an empty CompilationUnitCache
+     *
+     * @param maxBytes the memory the units may hold, as estimated
+     * @param astCache the ASTCache to load and save ASTs with, or null
+     */
+    public CompilationUnitCache(long maxBytes, ASTCache astCache) {
+        this.maxBytes = maxBytes;
+        this.astCache = astCache;
+    }
+
+    /**
+     * Returns the unit for the given text, creating a new one if the source
+     * was not compiled before or its text has changed since
+     *
+     * @param path the path of the source, or the name it is reported under
+     * @param source the text of the source
+     * @return the CompilationUnit
+     */
+    public synchronized CompilationUnit get(String path, String source) {
+        CompilationUnit unit = units.get(path);
+        if (unit != null && unit.source.equals(source)) {
+            hits++;
+            return unit;
+        }
+        misses++;
+        if (unit != null) {
+            totalBytes -= unit.estimatedBytes;
+        }
+        unit = new CompilationUnit(this, path, source);
+        units.put(path, unit);
+        totalBytes += unit.estimatedBytes;
+        evict();
+        return unit;
+    }
+
+    /**
+     * Drops every unit
+     */
+    public synchronized void clear() {
+        units.clear();
+        totalBytes = 0;
+    }
+
+    /**
+     * @return the number of units in the cache
+     */
+    public synchronized int size() {
+        return units.size();
+    }
+
+    /**
+     * @return the estimated memory held by the units, in bytes
+     */
+    public synchronized long getEstimatedBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * @return the number of times get() returned a cached unit
+     */
+    public synchronized int getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of times get() created a new unit
+     */
+    public synchronized int getMisses() {
+        return misses;
+    }
+
+    /**
+     * Updates the estimated size of a unit that has computed something new
+     *
+     * @param unit the unit
+     * @param estimatedBytes its new estimated size
+     */
+    private synchronized void resize(CompilationUnit unit, long estimatedBytes) {
+        if (units.get(unit.path) == unit) {
+            totalBytes += estimatedBytes - unit.estimatedBytes;
+        }
+        unit.estimatedBytes = estimatedBytes;
+        evict();
+    }
+
+    /**
+     * Drops the least recently used units until the estimated size is
+     * within the limit, keeping at least the unit used last
+     */
+    private void evict() {
+        Iterator<CompilationUnit> iterator = units.values().iterator();
+        while (totalBytes > maxBytes && units.size() > 1) {
+            CompilationUnit eldest = iterator.next();
+            totalBytes -= eldest.estimatedBytes;
+            iterator.remove();
+        }
+    }
+
+    /**
+     * A CompilationUnit holds one version of the text of a source and what
+     * has been computed from it so far
+     */
+    public static class CompilationUnit {
+        private final CompilationUnitCache cache;
+        private final String path;
+        private final String source;
+        private long estimatedBytes;    // guarded by the cache
+        private TokenBuffer tokens;     // null until scanned
+        private List<Error> scanErrors;
+        private boolean parsed;
+        private Program program;        // null if parsing failed
+        private List<Error> errors;     // the scan and parse errors
+        private final Map<String, Object> results = new HashMap<>();
+
+        /**
+         * Constructor creating a unit with nothing computed yet
+         *
+         * @param cache the cache the unit belongs to
+         * @param path the path of the source
+         * @param source the text of the source
+         */
+        private CompilationUnit(CompilationUnitCache cache, String path, String source) {
+            this.cache = cache;
+            this.path = path;
+            this.source = source;
+            this.estimatedBytes = (long) source.length() * BYTES_PER_CHAR;
+        }
+
+        /**
+         * @return the path of the source
+         */
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * @return the text of the source
+         */
+        public String getSource() {
+            return source;
+        }
+
+        /**
+         * Returns the tokens of the source, scanning it the first time
+         *
+         * @return the tokens
+         */
+        public synchronized TokenBuffer getTokens() {
+            if (tokens == null) {
+                ErrorHandler errorHandler = new ErrorHandler();
+                tokens = new Scanner(source, path, errorHandler).scanAll();
+                scanErrors = Collections.unmodifiableList(
+                        new ArrayList<>(errorHandler.getErrorList()));
+                updateSize();
+            }
+            return tokens;
+        }
+
+        /**
+         * @return the lexical errors found when scanning the source
+         */
+        public synchronized List<Error> getScanErrors() {
+            getTokens();
+            return scanErrors;
+        }
+
+        /**
+         * Returns the AST of the source, parsing it the first time with error
+         * recovery.  If the source has errors, the AST is the one built by
+         * error recovery, or null if there is none.
+         *
+         * @return the root of the AST, or null
+         */
+        public synchronized Program getProgram() {
+            if (!parsed) {
+                parse();
+            }
+            return program;
+        }
+
+        /**
+         * @return the lexical and syntactic errors of the source, in order
+         *         of line number
+         */
+        public synchronized List<Error> getErrors() {
+            if (!parsed) {
+                parse();
+            }
+            return errors;
+        }
+
+        /**
+         * Returns the result of an analysis of the AST, running it the first
+         * time it is asked for.  The analysis must not change the AST, and
+         * its result must not be changed by the callers.
+         *
+         * @param name the name the result is kept under
+         * @param analysis computes the result from the root of the AST
+         * @return the result
+         */
+        @SuppressWarnings("unchecked")
+        public synchronized <T> T getResult(String name, Function<Program, T> analysis) {
+            if (!results.containsKey(name)) {
+                results.put(name, analysis.apply(getProgram()));
+            }
+            return (T) results.get(name);
+        }
+
+        /**
+         * Loads the AST from the ASTCache, or scans and parses the source and
+         * saves the AST there if it has no errors.  If parsing throws, as a
+         * StackOverflowError can, the unit is left unparsed.
+         */
+        private void parse() {
+            ASTCache astCache = cache.astCache;
+            if (tokens == null && astCache != null) {
+                program = astCache.load(source, path);
+                if (program != null) {
+                    errors = Collections.emptyList();
+                    parsed = true;
+                    updateSize();
+                    return;
+                }
+            }
+
+            ErrorHandler errorHandler = new ErrorHandler();
+            Parser parser = new Parser(errorHandler);
+            parser.setErrorRecovery(true);
+            try {
+                program = parser.parse(getTokens());
+            } catch (CompilationException e) {
+                // the errors have been registered
+            }
+            // as when the Parser runs the Scanner, keep the first errors of
+            // the file, up to the limit of an ErrorHandler
+            ErrorHandler allErrors = new ErrorHandler();
+            for (Error error : mergeByLine(scanErrors, errorHandler.getErrorList())) {
+                allErrors.register(error.getKind(), error.getFilename(),
+                        error.getLineNum(), error.getMessage());
+            }
+            errors = allErrors.getErrorList();
+            parsed = true;
+            if (program != null && errors.isEmpty() && astCache != null) {
+                astCache.store(source, path, program);
+            }
+            updateSize();
+        }
+
+        /**
+         * Merges two lists of errors that are each in order of line number,
+         * keeping the first list's errors first on the same line
+         *
+         * @param first the first list
+         * @param second the second list
+         * @return the merged list
+         */
+        private static List<Error> mergeByLine(List<Error> first, List<Error> second) {
+            List<Error> merged = new ArrayList<>(first.size() + second.size());
+            int i = 0;
+            int j = 0;
+            while (i < first.size() && j < second.size()) {
+                if (second.get(j).getLineNum() < first.get(i).getLineNum()) {
+                    merged.add(second.get(j++));
+                }
+                else {
+                    merged.add(first.get(i++));
+                }
+            }
+            merged.addAll(first.subList(i, first.size()));
+            merged.addAll(second.subList(j, second.size()));
+            return merged;
+        }
+
+        /**
+         * Tells the cache how much memory this unit now holds
+         */
+        private void updateSize() {
+            long bytes = (long) source.length() * BYTES_PER_CHAR;
+            if (tokens != null) {
+                bytes += (long) tokens.size() * BYTES_PER_TOKEN;
+            }
+            if (program != null) {
+                bytes += (long) source.length() * AST_BYTES_PER_CHAR;
+            }
+            cache.resize(this, bytes);
+        }
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * File: bantam.parser.CompileClient.java
+ * CS361 Project 11
+ * Names: Martin Deutsch and Wyett MacDonald
+ * Date: 2/20/2019
+ * This file contains the CompileClient, which has a running CompileServer
+ * scan and parse files
+ */
+
+package proj11DeutschMacDonald.bantam.parser;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A CompileClient sends files to the CompileServer named in a port file and
+ * prints its answer, which is the same output as BatchParser.main() for the
+ * files.  It is meant to replace running the Parser or the BatchParser in a
+ * new JVM for each batch, such as in a build script.  The time the request
+ * took, as seen by the client and by the server, is printed to standard
+ * error, so standard output is the same as without a server.
+ * <p>
+ * If no server is running, the client parses the files itself, which is as
+ * slow as running the BatchParser.
+ *
+ * @author Martin Deutsch
+ * @author Wyett MacDonald
+ */
+public class CompileClient {
+
+    // how long to wait for a connection to the server, in milliseconds
+    private static final int CONNECT_TIMEOUT = 1000;
+
+    private final int port;
+    private final String token;
+
+    /**
+     * Constructor creating a client of the server named in the port file
+     *
+     * @param portFile the port file written by the server
+     * @throws IOException if the port file cannot be read
+     */
+    public CompileClient(Path portFile) throws IOException {
+        String[] fields = new String(Files.readAllBytes(portFile),
+                StandardCharsets.UTF_8).trim().split(" ");
+        if (fields.length != 2) {
+            throw new IOException("Malformed port file " + portFile);
+        }
+        try {
+            this.port = Integer.parseInt(fields[0]);
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed port file " + portFile);
+        }
+        this.token = fields[1];
+    }
+
+    /**
+     * Has the server scan and parse files
+     *
+     * @param filenames the files, relative to the current directory or absolute
+     * @param out the writer to print the server's output to
+     * @return the first line of the answer, "result F N M", as described
+     *         in CompileServer
+     * @throws IOException if the server cannot be reached or fails
+     */
+    public String parse(List<String> filenames, PrintWriter out) throws IOException {
+        try (Socket socket = connect();
+             BufferedReader in = new BufferedReader(new InputStreamReader(
+                     socket.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter request = new PrintWriter(new OutputStreamWriter(
+                     socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            request.println(token);
+            request.println("parse");
+            request.println(Paths.get("").toAbsolutePath());
+            for (String filename : filenames) {
+                request.println(filename);
+            }
+            request.println();
+            request.flush();
+
+            String header = in.readLine();
+            String[] fields = header == null ? new String[0] : header.split(" ");
+            if (fields.length != 4 || !fields[0].equals("result")) {
+                throw new IOException("Bad answer from the compile server: " + header);
+            }
+            // print nothing until the whole answer is in, so that a failed
+            // request can be parsed again without printing anything twice
+            int lineCount = Integer.parseInt(fields[3]);
+            List<String> lines = new ArrayList<>(lineCount);
+            for (int i = 0; i < lineCount; i++) {
+                String line = in.readLine();
+                if (line == null) {
+                    throw new IOException("The compile server stopped answering");
+                }
+                lines.add(line);
+            }
+            for (String line : lines) {
+                out.println(line);
+            }
+            out.flush();
+            return header;
+        }
+    }
+
+    /**
+     * Asks the server to shut down
+     *
+     * @throws IOException if the server cannot be reached
+     */
+    public void shutdown() throws IOException {
+        try (Socket socket = connect();
+             BufferedReader in = new BufferedReader(new InputStreamReader(
+                     socket.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter request = new PrintWriter(new OutputStreamWriter(
+                     socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            request.println(token);
+            request.println("shutdown");
+            request.flush();
+            in.readLine();
+        }
+    }
+
+    /**
+     * @return a new connection to the server
+     */
+    private Socket connect() throws IOException {
+        Socket socket = new Socket();
+        socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port),
+                CONNECT_TIMEOUT);
+        return socket;
+    }
+
+    /**
+     * Main method has the server scan and parse the given files and prints
+     * its output, or parses the files itself if no server is running.  It
+     * exits with status 1 if any file failed.  "-f FILE" before the file
+     * names gives the port file, and "--shutdown" stops the server.
+     *
+     * @param args an optional "-f FILE" followed by a list of file names,
+     *             or by "--shutdown"
+     */
+    public static void main(String[] args) {
+        Path portFile = CompileServer.getDefaultPortFile();
+        int first = 0;
+        if (args.length >= 2 && args[0].equals("-f")) {
+            portFile = Paths.get(args[1]);
+            first = 2;
+        }
+        if (args.length == first) {
+            System.out.println("Please enter files to scan");
+            return;
+        }
+        List<String> filenames = Arrays.asList(args).subList(first, args.length);
+        PrintWriter out = new PrintWriter(System.out);
+
+        long start = System.nanoTime();
+        try {
+            CompileClient client = new CompileClient(portFile);
+            if (filenames.get(0).equals("--shutdown")) {
+                client.shutdown();
+                return;
+            }
+            String[] header = client.parse(filenames, out).split(" ");
+            System.err.printf("bantam: %d files in %.1f ms (server %.1f ms)%n",
+                    filenames.size(), (System.nanoTime() - start) / 1e6,
+                    Long.parseLong(header[2]) / 1000.0);
+            if (!header[1].equals("0")) {
+                System.exit(1);
+            }
+        } catch (IOException e) {
+            if (filenames.get(0).equals("--shutdown")) {
+                System.err.println("bantam: no compile server running");
+                return;
+            }
+            System.err.println("bantam: no compile server (" + e
+                    + "), parsing in this process");
+            BatchParser batchParser = new BatchParser();
+            List<BatchParser.Result> results = batchParser.parseAll(filenames);
+            batchParser.shutdown();
+            BatchParser.printResults(results, out);
+            System.err.printf("bantam: %d files in %.1f ms%n",
+                    filenames.size(), (System.nanoTime() - start) / 1e6);
+            for (BatchParser.Result result : results) {
+                if (result.getFailureMessage() != null) {
+                    System.exit(1);
+                }
+            }
+        }
+    }
+}
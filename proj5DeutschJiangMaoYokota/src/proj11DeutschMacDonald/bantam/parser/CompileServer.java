@@ -0,0 +1,287 @@
+/*
+ * File: bantam.parser.CompileServer.java
+ * CS361 Project 11
+ * Names: Martin Deutsch and Wyett MacDonald
+ * Date: 2/20/2019
+ * This file contains the CompileServer, a long-running process that scans
+ * and parses files for CompileClients
+ */
+
+package proj11DeutschMacDonald.bantam.parser;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A CompileServer stays running so that the Scanner and Parser are loaded and
+ * compiled by the JIT once, rather than once for every batch of files.  It
+ * listens on a loopback socket and parses the files of each request with a
+ * BatchParser, answering with the same text that BatchParser.main() prints
+ * for the files.  Several clients can be served at once.
+ * <p>
+ * When it starts, the server writes its port and a random token to its port
+ * file, which only its user can read, and a client must send the token before
+ * anything else.  The requests and answers are lines of UTF-8 text:
+ * <pre>
+ *   token
+ *   parse                      shutdown
+ *   working directory
+ *   file name
+ *   ...
+ *   (empty line)
+ * </pre>
+ * A parse request is answered by a line "result F N M", where F is the
+ * number of files that failed, N the time the server spent in microseconds
+ * and M the number of lines of output that follow.  A shutdown request is
+ * answered by "bye", and a bad request by a line starting with "error".
+ *
+ * @author Martin Deutsch
+ * @author Wyett MacDonald
+ */
+public class CompileServer {
+
+    // how long to wait for the rest of a request, in milliseconds
+    private static final int READ_TIMEOUT = 30000;
+
+    private final BatchParser batchParser;
+    private final ExecutorService connections;
+    private final String token;
+    private ServerSocket serverSocket;
+    private Path portFile;
+
+    /**
+     * Constructor creating a CompileServer that parses the given number of
+     * files at the same time
+     *
+     * @param parallelism the number of threads of the BatchParser
+     * @throws IllegalArgumentException if parallelism is less than 1
+     */
+    public CompileServer(int parallelism) {
+        this.batchParser = new BatchParser(parallelism);
+        this.connections = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "compile-server-connection");
+            thread.setDaemon(true);
+            return thread;
+        });
+        byte[] bytes = new byte[16];
+        new SecureRandom().nextBytes(bytes);
+        StringBuilder token = new StringBuilder();
+        for (byte b : bytes) {
+            token.append(String.format("%02x", b));
+        }
+        this.token = token.toString();
+    }
+
+    /**
+     * @return the port file used when none is given, in the temporary
+     *         directory and named after the user
+     */
+    public static Path getDefaultPortFile() {
+        return Paths.get(System.getProperty("java.io.tmpdir"),
+                "bantam-compile-server-" + System.getProperty("user.name") + ".port");
+    }
+
+    /**
+     * Listens on the given port and writes the port file
+     *
+     * @param port the port, or 0 for any free port
+     * @param portFile the file to write the port and token to
+     * @return the port listened on
+     * @throws IOException if the socket or the port file cannot be made
+     */
+    public int start(int port, Path portFile) throws IOException {
+        serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        this.portFile = portFile;
+        writePortFile(serverSocket.getLocalPort());
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Serves clients until a client asks the server to shut down
+     */
+    public void serve() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                connections.execute(() -> handle(socket));
+            } catch (IOException e) {
+                // the socket was closed by a shutdown request
+            }
+        }
+        batchParser.shutdown();
+        connections.shutdown();
+    }
+
+    /**
+     * Stops accepting clients and deletes the port file
+     */
+    public synchronized void shutdown() {
+        try {
+            serverSocket.close();
+            Files.deleteIfExists(portFile);
+        } catch (IOException e) {
+            // the server is stopping anyway
+        }
+    }
+
+    /**
+     * Writes the port and token to the port file, readable only by the
+     * user where the file system allows it, and replaces the file at once
+     *
+     * @param port the port
+     */
+    private void writePortFile(int port) throws IOException {
+        Path parent = portFile.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temporary = Files.createTempFile(parent, "bantam-compile-server", ".tmp");
+        try {
+            Files.setPosixFilePermissions(temporary,
+                    PosixFilePermissions.fromString("rw-------"));
+        } catch (UnsupportedOperationException e) {
+            // not a POSIX file system; the file keeps its default permissions
+        }
+        Files.write(temporary, (port + " " + token + "\n").getBytes(StandardCharsets.UTF_8));
+        Files.move(temporary, portFile, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Answers one request
+     *
+     * @param socket the connection to the client
+     */
+    private void handle(Socket socket) {
+        try (Socket connection = socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(
+                     connection.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(new OutputStreamWriter(
+                     connection.getOutputStream(), StandardCharsets.UTF_8))) {
+            connection.setSoTimeout(READ_TIMEOUT);
+            String given = in.readLine();
+            if (given == null || !MessageDigest.isEqual(
+                    token.getBytes(StandardCharsets.UTF_8),
+                    given.getBytes(StandardCharsets.UTF_8))) {
+                out.println("error bad token");
+                return;
+            }
+            String command = in.readLine();
+            if ("shutdown".equals(command)) {
+                out.println("bye");
+                out.flush();
+                shutdown();
+            }
+            else if ("parse".equals(command)) {
+                parse(in, out);
+            }
+            else {
+                out.println("error unknown command " + command);
+            }
+        } catch (IOException e) {
+            // the client went away; nothing to answer
+        }
+    }
+
+    /**
+     * Answers a parse request
+     *
+     * @param in the rest of the request
+     * @param out the writer to answer with
+     */
+    private void parse(BufferedReader in, PrintWriter out) throws IOException {
+        String directory = in.readLine();
+        List<String> filenames = new ArrayList<>();
+        for (String line = in.readLine(); line != null && !line.isEmpty(); line = in.readLine()) {
+            filenames.add(line);
+        }
+        if (directory == null) {
+            out.println("error incomplete request");
+            return;
+        }
+
+        long start = System.nanoTime();
+        List<BatchParser.Result> results = batchParser.parseAll(filenames, Paths.get(directory));
+        StringWriter output = new StringWriter();
+        BatchParser.printResults(results, new PrintWriter(output));
+        long micros = (System.nanoTime() - start) / 1000;
+
+        int failed = 0;
+        for (BatchParser.Result result : results) {
+            if (result.getFailureMessage() != null) {
+                failed++;
+            }
+        }
+        String[] lines = output.toString().split("\\R", -1);
+        int lineCount = lines.length - 1; // the output ends with a line separator
+        out.println("result " + failed + " " + micros + " " + lineCount);
+        for (int i = 0; i < lineCount; i++) {
+            out.println(lines[i]);
+        }
+        System.out.printf("parsed %d files in %.1f ms%n", filenames.size(), micros / 1000.0);
+    }
+
+    /**
+     * Main method starts a server and serves clients until one asks it to
+     * shut down.  The number of threads can be set with "-j N", the port
+     * with "-p PORT" and the port file with "-f FILE".
+     *
+     * @param args the options
+     */
+    public static void main(String[] args) throws IOException {
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        int port = 0;
+        Path portFile = getDefaultPortFile();
+        if (args.length % 2 != 0) {
+            System.out.println("Usage: CompileServer [-j threads] [-p port] [-f portfile]");
+            return;
+        }
+        for (int i = 0; i < args.length; i += 2) {
+            try {
+                if (args[i].equals("-j")) {
+                    parallelism = Integer.parseInt(args[i + 1]);
+                    if (parallelism < 1) {
+                        System.out.println("Invalid number of threads: " + args[i + 1]);
+                        return;
+                    }
+                }
+                else if (args[i].equals("-p")) {
+                    port = Integer.parseInt(args[i + 1]);
+                }
+                else if (args[i].equals("-f")) {
+                    portFile = Paths.get(args[i + 1]);
+                }
+                else {
+                    System.out.println("Unknown option: " + args[i]);
+                    return;
+                }
+            } catch (NumberFormatException e) {
+                System.out.println("Invalid number: " + args[i + 1]);
+                return;
+            }
+        }
+
+        CompileServer server = new CompileServer(parallelism);
+        int boundPort = server.start(port, portFile);
+        System.out.println("Bantam compile server listening on port " + boundPort
+                + ", port file " + portFile);
+        server.serve();
+    }
+}
@@ -0,0 +1,328 @@
+/*
+ * File: bantam.parser.ParallelParser.java
+ * CS361 Project 11
+ * Names: Martin Deutsch and Wyett MacDonald
+ * Date: 2/20/2019
+ * This file contains the ParallelParser, which parses the classes of
+ * one file concurrently
+ */
+
+package proj11DeutschMacDonald.bantam.parser;
+
+import static proj11DeutschMacDonald.bantam.lexer.Token.Kind.*;
+
+import proj11DeutschMacDonald.bantam.ast.ASTNode;
+import proj11DeutschMacDonald.bantam.ast.ClassList;
+import proj11DeutschMacDonald.bantam.ast.Program;
+import proj11DeutschMacDonald.bantam.lexer.IdentifierTable;
+import proj11DeutschMacDonald.bantam.lexer.Scanner;
+import proj11DeutschMacDonald.bantam.lexer.Token;
+import proj11DeutschMacDonald.bantam.lexer.TokenBuffer;
+import proj11DeutschMacDonald.bantam.util.CompilationException;
+import proj11DeutschMacDonald.bantam.util.Error;
+import proj11DeutschMacDonald.bantam.util.ErrorHandler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * ParallelParser parses one large file on a ForkJoinPool.  The token stream
+ * is split before each top-level class keyword, and groups of consecutive
+ * classes are parsed at the same time, each by its own Parser and
+ * ErrorHandler.  The classes are put back together in source order and the
+ * errors are registered with the caller's ErrorHandler, so the result is the
+ * same as parsing the file with one Parser.
+ * <p>
+ * The split is only used when it is clearly right: the file must start with
+ * a class, and every class keyword must appear outside of all braces, with
+ * the braces balanced.  Otherwise a syntax error could change where a class
+ * ends, so the file is parsed sequentially instead.
+ *
+ * @author Martin Deutsch
+ * @author Wyett MacDonald
+ */
+public class ParallelParser {
+
+    // the number of groups of classes to make for each thread
+    private static final int GROUPS_PER_THREAD = 4;
+
+    private final ForkJoinPool pool;
+    private final int parallelism;
+    private boolean errorRecovery;
+    private boolean lazyMethodBodies;
+
+    /**
+     * Constructor creating a ParallelParser using one thread per processor
+     */
+    public ParallelParser() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructor creating a ParallelParser with the given number of threads
+     *
+     * @param parallelism the number of groups of classes to parse at the same time
+     * @throws IllegalArgumentException if parallelism is less than 1
+     */
+    public ParallelParser(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Invalid number of threads: " + parallelism);
+        }
+        this.pool = new ForkJoinPool(parallelism);
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Turns error recovery on or off, as in Parser.setErrorRecovery()
+     *
+     * @param errorRecovery true to recover from syntax errors
+     */
+    public void setErrorRecovery(boolean errorRecovery) {
+        this.errorRecovery = errorRecovery;
+    }
+
+    /**
+     * Turns lazy method bodies on or off, as in Parser.setLazyMethodBodies()
+     *
+     * @param lazyMethodBodies true to parse method bodies on first use
+     */
+    public void setLazyMethodBodies(boolean lazyMethodBodies) {
+        this.lazyMethodBodies = lazyMethodBodies;
+    }
+
+    /**
+     * Shuts down the threads of this ParallelParser
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Scans the given file and parses its classes concurrently
+     *
+     * @param filename the name of the Bantam Java file to be parsed
+     * @param errorHandler the ErrorHandler to register errors with
+     * @return the Program node forming the root of the AST
+     */
+    public Program parse(String filename, ErrorHandler errorHandler)
+            throws CompilationException {
+        return parse(new Scanner(filename, errorHandler).scanAll(), errorHandler);
+    }
+
+    /**
+     * Parses the classes in the given tokens concurrently, or sequentially
+     * if the tokens cannot be split safely
+     *
+     * @param tokens the TokenBuffer filled by Scanner.scanAll()
+     * @param errorHandler the ErrorHandler to register parse errors with
+     * @return the Program node forming the root of the AST
+     */
+    public Program parse(TokenBuffer tokens, ErrorHandler errorHandler)
+            throws CompilationException {
+        List<Integer> groups = findGroups(tokens);
+        if (groups == null || groups.size() < 3) {
+            return createParser(errorHandler).parse(tokens);
+        }
+
+        // intern every name now; each thread then only adds its own names,
+        // such as array types, to a private table
+        tokens.internSpellings();
+
+        List<ForkJoinTask<Group>> tasks = new ArrayList<>();
+        for (int i = 0; i + 1 < groups.size(); i++) {
+            int start = groups.get(i);
+            int end = groups.get(i + 1);
+            TokenBuffer groupTokens = tokens.withIdentifierTable(
+                    new IdentifierTable(tokens.getIdentifierTable()));
+            tasks.add(pool.submit(() ->
+                    parseGroup(groupTokens, start, end, errorHandler)));
+        }
+
+        int position = tokens.getLine(groups.get(0));
+        ClassList classList = new ClassList(position);
+        for (int i = 0; i < tasks.size(); i++) {
+            Group group = tasks.get(i).join();
+            copyErrors(group.errorHandler, errorHandler);
+            if (group.failureMessage != null) {
+                // parsing stops at the first error, so later groups are dropped
+                for (int j = i + 1; j < tasks.size(); j++) {
+                    tasks.get(j).cancel(false);
+                }
+                throw new CompilationException(group.failureMessage);
+            }
+            for (ASTNode aClass : group.classes) {
+                classList.addElement(aClass);
+            }
+        }
+        classList.trimToSize();
+
+        // like a single Parser, span the file from its first class to its last token
+        int last = tokens.size() - 2;
+        while (last > 0 && tokens.getKind(last) == COMMENT) {
+            last--;
+        }
+        int start = tokens.getStart(groups.get(0));
+        int end = tokens.getStart(last) + tokens.getLength(last);
+        classList.setSpan(start, end);
+        Program program = new Program(position, classList);
+        program.setSpan(start, end);
+        return program;
+    }
+
+    /**
+     * Parses one group of classes with its own Parser and ErrorHandler
+     *
+     * @param tokens the tokens of the file
+     * @param start the index of the first token of the group
+     * @param end the index just after the last token of the group
+     * @param errorHandler the caller's ErrorHandler, for errors found in
+     *                     method bodies skipped in lazy mode
+     * @return the classes and errors of the group
+     */
+    private Group parseGroup(TokenBuffer tokens, int start, int end,
+                             ErrorHandler errorHandler) {
+        Group group = new Group();
+        group.errorHandler = new ErrorHandler();
+        try {
+            Parser parser = createParser(group.errorHandler);
+            parser.setBodyErrorHandler(errorHandler);
+            group.classes = parser.parseClasses(tokens, start, end);
+        } catch (CompilationException e) {
+            group.failureMessage = e.getMessage();
+        }
+        return group;
+    }
+
+    /**
+     * Creates a Parser with this ParallelParser's settings
+     *
+     * @param errorHandler the ErrorHandler for the Parser
+     * @return the new Parser
+     */
+    private Parser createParser(ErrorHandler errorHandler) {
+        Parser parser = new Parser(errorHandler);
+        parser.setErrorRecovery(errorRecovery);
+        parser.setLazyMethodBodies(lazyMethodBodies);
+        return parser;
+    }
+
+    /**
+     * Registers the errors of one group with the caller's ErrorHandler
+     *
+     * @param from the ErrorHandler of the group
+     * @param to the caller's ErrorHandler
+     */
+    private static void copyErrors(ErrorHandler from, ErrorHandler to) {
+        for (Error error : from.getErrorList()) {
+            to.register(error.getKind(), error.getFilename(),
+                    error.getLineNum(), error.getMessage());
+        }
+    }
+
+    /**
+     * The outcome of parsing one group of classes
+     */
+    private static class Group {
+        ClassList classes;      // the classes, or null if parsing failed
+        ErrorHandler errorHandler; // the errors registered while parsing
+        String failureMessage;  // the message of the CompilationException, or null
+    }
+
+    /**
+     * Splits the tokens before top-level class keywords into groups of
+     * roughly equal size
+     *
+     * @param tokens the tokens of the file
+     * @return the index of the first token of each group, followed by the
+     *         index of the EOF token, or null if the split is ambiguous
+     */
+    private List<Integer> findGroups(TokenBuffer tokens) {
+        int eof = tokens.size() - 1;
+        int first = 0;
+        while (tokens.getKind(first) == COMMENT) {
+            first++;
+        }
+        if (tokens.getKind(first) != CLASS) {
+            return null;
+        }
+
+        int groupSize = Math.max(1, eof / (parallelism * GROUPS_PER_THREAD));
+        List<Integer> groups = new ArrayList<>();
+        groups.add(first);
+        int depth = 0;
+        for (int i = first; i < eof; i++) {
+            Token.Kind kind = tokens.getKind(i);
+            if (kind == LCURLY) {
+                depth++;
+            }
+            else if (kind == RCURLY) {
+                if (--depth < 0) {
+                    return null;
+                }
+            }
+            else if (kind == CLASS) {
+                if (depth != 0) {
+                    return null;
+                }
+                if (i - groups.get(groups.size() - 1) >= groupSize) {
+                    groups.add(i);
+                }
+            }
+        }
+        if (depth != 0) {
+            return null;
+        }
+        groups.add(eof);
+        return groups;
+    }
+
+    /**
+     * Main method parses the given files one at a time, splitting each into
+     * classes that are parsed concurrently, and prints out if scanning and
+     * parsing were successful, or the errors encountered if not.  The number
+     * of threads can be set with "-j N" before the file names.
+     *
+     * @param args an optional "-j N" followed by a list of file names
+     */
+    public static void main(String[] args) {
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        int first = 0;
+        if (args.length >= 2 && args[0].equals("-j")) {
+            try {
+                parallelism = Integer.parseInt(args[1]);
+            } catch (NumberFormatException e) {
+                System.out.println("Invalid number of threads: " + args[1]);
+                return;
+            }
+            if (parallelism < 1) {
+                System.out.println("Invalid number of threads: " + args[1]);
+                return;
+            }
+            first = 2;
+        }
+        if (args.length == first) {
+            System.out.println("Please enter files to scan");
+            return;
+        }
+
+        ParallelParser parser = new ParallelParser(parallelism);
+        for (int i = first; i < args.length; i++) {
+            System.out.println(args[i]);
+            ErrorHandler errorHandler = new ErrorHandler();
+            try {
+                parser.parse(args[i], errorHandler);
+                System.out.println("Scanning and parsing successful");
+            } catch (CompilationException e) {
+                for (Error error : errorHandler.getErrorList()) {
+                    System.out.println(error.toString());
+                }
+                if (!errorHandler.errorsFound()) {
+                    System.out.println(e.getMessage());
+                }
+            }
+        }
+        parser.shutdown();
+    }
+}
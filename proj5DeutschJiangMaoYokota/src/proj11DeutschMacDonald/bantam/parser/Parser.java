@@ -36,6 +36,14 @@ import proj11DeutschMacDonald.bantam.lexer.*;
 import proj11DeutschMacDonald.bantam.util.*;
 import proj11DeutschMacDonald.bantam.util.Error;
 
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
 /**
  * This class constructs an AST from a legal Bantam Java program.  If the
  * program is illegal, then one or more error messages are displayed.
@@ -46,13 +54,151 @@ import proj11DeutschMacDonald.bantam.util.Error;
 public class Parser {
     // instance variables
     private Scanner scanner;
-    private Token currentToken; // the lookahead token
+    private Token currentToken; // the lookahead token when reading from the scanner
+    private TokenBuffer tokens; // the tokens when reading from a TokenBuffer
+    private int tokenIndex;     // the index of the lookahead token in tokens
+    private int lastTokenIndex; // the index of the token read as EOF
+    private Token.Kind currentKind; // the kind of the lookahead token
+    private int currentPosition;    // the line number of the lookahead token
+    private int currentOffset;      // the offset of the lookahead token
+    private int currentEndOffset;   // the offset just past the lookahead token
+    private int previousEndOffset;  // the offset just past the last token parsed
     private ErrorHandler errorHandler;
     private String fileName;
+    private IdentifierTable identifiers = new IdentifierTable(); // names shared by all parsed files
+    private boolean errorRecovery; // whether to keep parsing after a syntax error
+    private boolean reachedEOF;    // whether the end of file error has been reported
+    private int nestingDepth;      // the stack frames of the statements and expressions being parsed
+    private boolean lazyMethodBodies; // whether to skip method bodies until they are used
+    private ErrorHandler bodyErrorHandler; // registers the errors of skipped method bodies
+    private boolean pipelined;      // whether to scan on a separate thread
+    private TokenPipeline pipeline; // the tokens when scanning on a separate thread
+
+    // the stack size of the threads the parsing methods run on, so that
+    // how deeply input may be nested does not depend on the caller's stack
+    private static final long PARSER_STACK_SIZE = 256L << 20;
+
+    // the threads parsing runs on, kept for a while between parses
+    private static final ExecutorService parserThreads =
+            Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new ParserThread(runnable);
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    // the deepest nesting of statements and expressions that is parsed,
+    // counted in stack frames of the parsing methods; a frame takes at most
+    // about 250 bytes, so this leaves half of PARSER_STACK_SIZE spare, and
+    // deeper input is a parse error rather than a StackOverflowError
+    private static final int MAX_NESTING_FRAMES = 500000;
+
+    // the frames added by each level of nesting: a statement is at most
+    // parseStatement, parseStatementKind, parseBlock and
+    // parseBlockStatements, and an expression is at most parseExpression,
+    // parseAssignment, parseBinaryExpr, parseNewCastOrUnary,
+    // parseUnaryPrefix, parseUnaryPostfix and parsePrimary, plus one frame
+    // for each right operand of a binary operator and for the arguments of
+    // a call, which are counted where they are parsed
+    private static final int STATEMENT_FRAMES = 4;
+    private static final int EXPRESSION_FRAMES = 7;
+
+    // the binary operators, used to index binaryPrecedence
+    private static final int OR_OP = 0;
+    private static final int AND_OP = 1;
+    private static final int EQ_OP = 2;
+    private static final int NE_OP = 3;
+    private static final int LT_OP = 4;
+    private static final int GT_OP = 5;
+    private static final int LEQ_OP = 6;
+    private static final int GEQ_OP = 7;
+    private static final int INSTANCEOF_OP = 8;
+    private static final int PLUS_OP = 9;
+    private static final int MINUS_OP = 10;
+    private static final int TIMES_OP = 11;
+    private static final int DIVIDE_OP = 12;
+    private static final int MODULUS_OP = 13;
+    private static final int NO_OP = 14;
+
+    // the precedence of the binary operators, from loosest to tightest
+    private static final int OR_PRECEDENCE = 1;
+    private static final int AND_PRECEDENCE = 2;
+    private static final int EQUALITY_PRECEDENCE = 3;
+    private static final int RELATIONAL_PRECEDENCE = 4;
+    private static final int ADD_PRECEDENCE = 5;
+    private static final int MULT_PRECEDENCE = 6;
+    private static final int[] binaryPrecedence = {
+            OR_PRECEDENCE, AND_PRECEDENCE,
+            EQUALITY_PRECEDENCE, EQUALITY_PRECEDENCE,
+            RELATIONAL_PRECEDENCE, RELATIONAL_PRECEDENCE, RELATIONAL_PRECEDENCE,
+            RELATIONAL_PRECEDENCE, RELATIONAL_PRECEDENCE,
+            ADD_PRECEDENCE, ADD_PRECEDENCE,
+            MULT_PRECEDENCE, MULT_PRECEDENCE, MULT_PRECEDENCE,
+            0};
 
     // constructor
     public Parser(ErrorHandler errorHandler) {
         this.errorHandler = errorHandler;
+        this.bodyErrorHandler = errorHandler;
+    }
+
+
+    /**
+     * Turns error recovery on or off.  Without recovery, parsing stops with a
+     * CompilationException at the first syntax error.  With recovery, each
+     * error is registered and the parser skips ahead to the next ';', '}',
+     * member or class and carries on, so every syntax error is found in one
+     * pass.  parse() then returns a Program containing all the classes, members
+     * and statements that parsed correctly; check the ErrorHandler to see
+     * whether any errors were found.
+     *
+     * @param errorRecovery true to recover from syntax errors
+     */
+    public void setErrorRecovery(boolean errorRecovery) {
+        this.errorRecovery = errorRecovery;
+    }
+
+
+    /**
+     * Turns lazy method bodies on or off.  In lazy mode the parser only
+     * matches the braces of each method body and records where its tokens
+     * are; the statements are parsed the first time Method.getStmtList() is
+     * called.  Consumers that only look at classes and member signatures
+     * then never pay for parsing the bodies.  Syntax errors in a body are
+     * registered when it is parsed, and without error recovery getStmtList()
+     * throws the CompilationException.  Lazy mode needs the whole token
+     * stream, so parse(String) and parse(CharSequence) scan the source into
+     * a TokenBuffer first.
+     *
+     * @param lazyMethodBodies true to parse method bodies on first use
+     */
+    public void setLazyMethodBodies(boolean lazyMethodBodies) {
+        this.lazyMethodBodies = lazyMethodBodies;
+    }
+
+
+    /**
+     * Turns pipelined scanning on or off.  When pipelined, parse(String) and
+     * parse(CharSequence) read and scan the source on a separate thread that
+     * stays ahead of the parser, handing over tokens through a TokenPipeline,
+     * so reading, scanning and parsing overlap on a multi-core machine.  The
+     * AST and the errors are the same as without pipelining.  Lazy mode
+     * scans the whole file first, so it is not pipelined.
+     *
+     * @param pipelined true to scan on a separate thread
+     */
+    public void setPipelined(boolean pipelined) {
+        this.pipelined = pipelined;
+    }
+
+
+    /**
+     * Sets the ErrorHandler for the errors found when a skipped method body
+     * is parsed, if it is not the one given to the constructor
+     *
+     * @param bodyErrorHandler the ErrorHandler for errors in skipped bodies
+     */
+    void setBodyErrorHandler(ErrorHandler bodyErrorHandler) {
+        this.bodyErrorHandler = bodyErrorHandler;
     }
 
 
@@ -64,8 +210,134 @@ public class Parser {
      */
     public Program parse(String filename) throws CompilationException {
         this.fileName = filename;
+        if (pipelined && !lazyMethodBodies) {
+            return parsePipelined(new TokenPipeline(filename, this.errorHandler));
+        }
         this.scanner = new Scanner(filename, this.errorHandler);
-        advance();
+        this.scanner.setIdentifierTable(this.identifiers);
+        if (lazyMethodBodies) {
+            return parse(this.scanner.scanAll());
+        }
+        this.tokens = null;
+        return parseFile();
+    }
+
+
+    /**
+     * parse the given source text and return the root node of the AST.
+     * Nothing is read from disk, so this can parse an unsaved editor buffer.
+     *
+     * @param source      the Bantam Java source text to be parsed
+     * @param logicalName the name to report errors under
+     * @return The Program node forming the root of the AST generated by the parser
+     */
+    public Program parse(CharSequence source, String logicalName)
+            throws CompilationException {
+        this.fileName = logicalName;
+        if (pipelined && !lazyMethodBodies) {
+            return parsePipelined(
+                    new TokenPipeline(source, logicalName, this.errorHandler));
+        }
+        this.scanner = new Scanner(source, logicalName, this.errorHandler);
+        this.scanner.setIdentifierTable(this.identifiers);
+        if (lazyMethodBodies) {
+            return parse(this.scanner.scanAll());
+        }
+        this.tokens = null;
+        return parseFile();
+    }
+
+
+    /**
+     * parse the tokens handed over by the given TokenPipeline, stopping its
+     * scanner thread when parsing ends
+     *
+     * @param pipeline the TokenPipeline to read tokens from
+     * @return The Program node forming the root of the AST generated by the parser
+     */
+    private Program parsePipelined(TokenPipeline pipeline) {
+        this.scanner = null;
+        this.tokens = null;
+        this.pipeline = pipeline;
+        pipeline.start();
+        try {
+            return parseFile();
+        } finally {
+            pipeline.close();
+            this.pipeline = null;
+        }
+    }
+
+
+    /**
+     * parse the tokens in the given TokenBuffer and return the root node of the AST.
+     * No Token objects are created; spellings are only read for identifiers
+     * and constants.
+     *
+     * @param tokens the TokenBuffer filled by Scanner.scanAll()
+     * @return The Program node forming the root of the AST generated by the parser
+     */
+    public Program parse(TokenBuffer tokens) throws CompilationException {
+        this.fileName = tokens.getFilename();
+        this.scanner = null;
+        this.currentToken = null;
+        this.tokens = tokens;
+        this.tokenIndex = -1;
+        this.lastTokenIndex = tokens.size() - 1;
+        this.identifiers = tokens.getIdentifierTable();
+        return parseFile();
+    }
+
+
+    /**
+     * parse the classes in part of a TokenBuffer, as if the token at the end
+     * of the range were the end of the file.  ParallelParser uses this to
+     * parse the classes of one file on several threads.
+     *
+     * @param tokens the TokenBuffer filled by Scanner.scanAll()
+     * @param start the index of the first token of the range
+     * @param end the index just after the last token of the range
+     * @return the classes in the range
+     */
+    ClassList parseClasses(TokenBuffer tokens, int start, int end)
+            throws CompilationException {
+        this.fileName = tokens.getFilename();
+        this.scanner = null;
+        this.currentToken = null;
+        this.tokens = tokens;
+        this.tokenIndex = start - 1;
+        this.lastTokenIndex = end;
+        this.identifiers = tokens.getIdentifierTable();
+        this.reachedEOF = false;
+        this.nestingDepth = 0;
+        return onParserThread(() -> {
+            nextToken();
+            return parseProgram().getClassList();
+        });
+    }
+
+
+    /**
+     * Reads the first token and parses the whole program on a parser thread
+     */
+    private Program parseFile() {
+        return onParserThread(this::parseFileHere);
+    }
+
+
+    /**
+     * Reads the first token and parses the whole program
+     */
+    private Program parseFileHere() {
+        reachedEOF = false;
+        nestingDepth = 0;
+        try {
+            advance();
+        } catch (SyntaxError e) {
+            // the file is empty
+            return span(new Program(currentPosition,
+                    span(new ClassList(currentPosition), currentOffset)), currentOffset);
+        }
         return parseProgram();
     }
 
@@ -74,14 +346,22 @@ public class Parser {
      * <Program> ::= <Class> | <Class> <Program>
      */
     private Program parseProgram() {
-        int position = currentToken.position;
+        int position = currentPosition;
+        int start = currentOffset;
         ClassList classList = new ClassList(position);
 
-        while (currentToken.kind != EOF) {
-            Class_ aClass = parseClass();
-            classList.addElement(aClass);
+        while (currentKind != EOF) {
+            int classStart = currentOffset;
+            try {
+                Class_ aClass = parseClass();
+                classList.addElement(aClass);
+            } catch (SyntaxError e) {
+                synchronizeClass(classStart);
+            }
         }
-        return new Program(position, classList);
+        classList.trimToSize();
+        span(classList, start);
+        return span(new Program(position, classList), start);
     }
 
 
@@ -91,31 +371,45 @@ public class Parser {
      * <MemberList> ::= EMPTY | <Member> <MemberList>
      */
     private Class_ parseClass() {
-        int position = currentToken.position;
+        int position = currentPosition;
+        int start = currentOffset;
         checkTokenAndAdvance(position, CLASS, "class");
         String name = parseIdentifier();
 
         // get parent if exists
         String parent = null;
-        if (currentToken.kind == EXTENDS) {
+        if (currentKind == EXTENDS) {
             advance();
             parent = parseIdentifier();
         }
 
         // get member list
         MemberList memberList = new MemberList(position);
+        int bodyStart = currentOffset;
         checkTokenAndAdvance(position, LCURLY, "{");
-        while (currentToken.kind != RCURLY) {
-            Member aMember = parseMember();
-            memberList.addElement(aMember);
+        while (currentKind != RCURLY) {
+            try {
+                Member aMember = parseMember();
+                memberList.addElement(aMember);
+            } catch (SyntaxError e) {
+                if (!synchronize(true)) {
+                    // this class is missing its '}'
+                    if (currentKind == CLASS) {
+                        registerRecoveredError("'}' expected", currentPosition);
+                    }
+                    memberList.trimToSize();
+                    span(memberList, bodyStart);
+                    return span(new Class_(position, fileName, name, parent, memberList),
+                            start);
+                }
+            }
         }
 
         // don't use advance() here because we can hit EOF
-        currentToken = scanner.scan();
-        while (currentToken.kind == COMMENT) {
-            currentToken = scanner.scan();
-        }
-        return new Class_(position, fileName, name, parent, memberList);
+        nextToken();
+        memberList.trimToSize();
+        span(memberList, bodyStart);
+        return span(new Class_(position, fileName, name, parent, memberList), start);
     }
 
 
@@ -126,29 +420,37 @@ public class Parser {
      * <InitialValue> ::= EMPTY | = <Expression>
      */
     private Member parseMember() {
-        int position = currentToken.position;
+        int position = currentPosition;
+        int start = currentOffset;
 
         String type = parseType();
         String name = parseIdentifier();
 
         // handle method
-        if (currentToken.kind == LPAREN) {
+        if (currentKind == LPAREN) {
             advance();
             FormalList formalList = parseParameters();
             checkTokenAndAdvance(position, RPAREN, ")");
+            if (lazyMethodBodies && tokens != null && currentKind == LCURLY) {
+                Supplier<StmtList> bodyParser = skipMethodBody();
+                if (bodyParser != null) {
+                    return span(new Method(position, type, name, formalList, bodyParser),
+                            start);
+                }
+            }
             StmtList stmtList = ((BlockStmt) parseBlock()).getStmtList();
-            return new Method(position, type, name, formalList, stmtList);
+            return span(new Method(position, type, name, formalList, stmtList), start);
         }
 
         // handle field
         Expr init = null;
-        if (currentToken.kind == ASSIGN) {
+        if (currentKind == ASSIGN) {
             advance();
             init = parseExpression();
         }
         checkTokenAndAdvance(position, SEMICOLON, ";");
 
-        return new Field(position, type, name, init);
+        return span(new Field(position, type, name, init), start);
     }
 
     //-----------------------------------
@@ -158,9 +460,24 @@ public class Parser {
      *              | <ExpressionStmt> | <ForStmt> | <BlockStmt> | <IfStmt>
      */
     private Stmt parseStatement() {
+        enterNesting("Statement", currentPosition, STATEMENT_FRAMES);
+        try {
+            return parseStatementKind();
+        } finally {
+            nestingDepth -= STATEMENT_FRAMES;
+        }
+    }
+
+
+    /**
+     * Parses a statement of the kind given by the current token
+     *
+     * @return the statement
+     */
+    private Stmt parseStatementKind() {
         Stmt stmt;
 
-        switch (currentToken.kind) {
+        switch (currentKind) {
             case IF:
                 stmt = parseIf();
                 break;
@@ -193,14 +510,15 @@ public class Parser {
      * <WhileStmt> ::= WHILE ( <Expression> ) <Stmt>
      */
     private Stmt parseWhile() {
-        int position = currentToken.position;
+        int position = currentPosition;
+        int start = currentOffset;
         advance();
 
         checkTokenAndAdvance(position, LPAREN, "(");
         Expr expr = parseExpression();
         checkTokenAndAdvance(position, RPAREN, ")");
         Stmt stmt = parseStatement();
-        return new WhileStmt(position, expr, stmt);
+        return span(new WhileStmt(position, expr, stmt), start);
     }
 
 
@@ -208,16 +526,17 @@ public class Parser {
      * <ReturnStmt> ::= RETURN <Expression> ; | RETURN ;
      */
     private Stmt parseReturn() {
-        int position = currentToken.position;
+        int position = currentPosition;
+        int start = currentOffset;
         advance();
 
         Expr expr = null;
-        if (currentToken.kind != SEMICOLON) {
+        if (currentKind != SEMICOLON) {
             expr = parseExpression();
         }
         checkTokenAndAdvance(position, SEMICOLON, ";");
 
-        return new ReturnStmt(position, expr);
+        return span(new ReturnStmt(position, expr), start);
     }
 
 
@@ -225,10 +544,11 @@ public class Parser {
      * <BreakStmt> ::= BREAK ;
      */
     private Stmt parseBreak() {
-        int position = currentToken.position;
+        int position = currentPosition;
+        int start = currentOffset;
         advance();
         checkTokenAndAdvance(position, SEMICOLON, ";");
-        return new BreakStmt(position);
+        return span(new BreakStmt(position), start);
     }
 
 
@@ -236,10 +556,11 @@ public class Parser {
      * <ExpressionStmt> ::= <Expression> ;
      */
     private ExprStmt parseExpressionStmt() {
-        int position = currentToken.position;
+        int position = currentPosition;
+        int start = currentOffset;
         Expr expr = parseExpression();
         checkTokenAndAdvance(position, SEMICOLON, ";");
-        return new ExprStmt(position, expr);
+        return span(new ExprStmt(position, expr), start);
     }
 
 
@@ -248,7 +569,8 @@ public class Parser {
      * every local variable must be initialized
      */
     private Stmt parseDeclStmt() {
-        int position = currentToken.position;
+        int position = currentPosition;
+        int start = currentOffset;
         advance();
 
         String name = parseIdentifier();
@@ -257,7 +579,7 @@ public class Parser {
         Expr initExpr = parseExpression();
 
         checkTokenAndAdvance(position, SEMICOLON, ";");
-        return new DeclStmt(position, name, initExpr);
+        return span(new DeclStmt(position, name, initExpr), start);
     }
 
 
@@ -268,31 +590,33 @@ public class Parser {
      * <Increment> ::= EMPTY | <Expression>
      */
     private Stmt parseFor() {
-        int position = currentToken.position;
+        int position = currentPosition;
+        int start = currentOffset;
         advance();
 
         checkTokenAndAdvance(position, LPAREN, "(");
 
-        Expr start = null;
-        if (currentToken.kind != SEMICOLON) {
-            start = parseExpression();
+        Expr init = null;
+        if (currentKind != SEMICOLON) {
+            init = parseExpression();
         }
         checkTokenAndAdvance(position, SEMICOLON, ";");
 
         Expr terminate = null;
-        if (currentToken.kind != SEMICOLON) {
+        if (currentKind != SEMICOLON) {
             terminate = parseExpression();
         }
         checkTokenAndAdvance(position, SEMICOLON, ";");
 
         Expr increment = null;
-        if (currentToken.kind != RPAREN) {
+        if (currentKind != RPAREN) {
             increment = parseExpression();
         }
         checkTokenAndAdvance(position, RPAREN, ")");
 
         Stmt stmt = parseStatement();
-        return new ForStmt(position, start, terminate, increment, stmt);
+        return span(new ForStmt(position, init, terminate, increment, stmt),
+                start);
     }
 
 
@@ -301,17 +625,169 @@ public class Parser {
      * <Body> ::= EMPTY | <Stmt> <Body>
      */
     private Stmt parseBlock() {
-        int position = currentToken.position;
+        int position = currentPosition;
+        int start = currentOffset;
+        StmtList stmtList = parseBlockStatements();
+        advance();
+        return span(new BlockStmt(position, stmtList), start);
+    }
+
+
+    /**
+     * Parses the '{' and the statements of a block, leaving the
+     * closing '}' as the current token
+     *
+     * @return the statements in the block
+     */
+    private StmtList parseBlockStatements() {
+        int position = currentPosition;
+        int start = currentOffset;
         checkTokenAndAdvance(position, LCURLY, "{");
 
         StmtList stmtList = new StmtList(position);
 
-        while (currentToken.kind != RCURLY) {
-            Stmt aStmt = parseStatement();
-            stmtList.addElement(aStmt);
+        while (currentKind != RCURLY) {
+            try {
+                Stmt aStmt = parseStatement();
+                stmtList.addElement(aStmt);
+            } catch (SyntaxError e) {
+                if (!synchronize(false)) {
+                    throw e;
+                }
+            }
         }
+        stmtList.trimToSize();
+        // the list spans the braces, and the '}' is still the current token
+        stmtList.setSpan(start, currentEndOffset);
+        return stmtList;
+    }
+
+
+    /**
+     * Skips the method body starting at the current '{' by matching braces,
+     * and returns a Supplier that parses it later.  If the body does not end
+     * before the next class, or nothing but the end of the file follows it,
+     * nothing is skipped, so that the errors are the same as when parsing it
+     * right away.
+     *
+     * @return the Supplier that parses the body, or null if it was not skipped
+     */
+    private Supplier<StmtList> skipMethodBody() {
+        int start = tokenIndex;
+        int depth = 0;
+        int end = start;
+        do {
+            Token.Kind kind = tokens.getKind(end);
+            if (kind == LCURLY) {
+                depth++;
+            }
+            else if (kind == RCURLY) {
+                depth--;
+            }
+            else if (kind == CLASS || kind == EOF) {
+                return null;
+            }
+            end++;
+        } while (depth > 0);
+
+        // a body followed by the end of the file is parsed now, so its
+        // errors are reported before the end of file error
+        int next = end;
+        while (next < lastTokenIndex && tokens.getKind(next) == COMMENT) {
+            next++;
+        }
+        if (next == lastTokenIndex) {
+            return null;
+        }
+
+        // continue after the '}'
+        tokenIndex = end - 1;
+        currentEndOffset = tokens.getStart(tokenIndex) + tokens.getLength(tokenIndex);
         advance();
-        return new BlockStmt(position, stmtList);
+
+        TokenBuffer tokens = this.tokens;
+        ErrorHandler errorHandler = this.bodyErrorHandler;
+        boolean errorRecovery = this.errorRecovery;
+        return () -> {
+            // the TokenBuffer's identifier table is not thread-safe
+            synchronized (tokens) {
+                Parser parser = new Parser(errorHandler);
+                parser.setErrorRecovery(errorRecovery);
+                return parser.parseSkippedBody(tokens, start);
+            }
+        };
+    }
+
+
+    /**
+     * Parses a method body skipped in lazy mode
+     *
+     * @param tokens the tokens of the file
+     * @param start the index of the '{' starting the body
+     * @return the statements in the body
+     */
+    private StmtList parseSkippedBody(TokenBuffer tokens, int start) {
+        this.fileName = tokens.getFilename();
+        this.tokens = tokens;
+        this.identifiers = tokens.getIdentifierTable();
+        this.tokenIndex = start;
+        this.lastTokenIndex = tokens.size() - 1;
+        this.currentKind = tokens.getKind(start);
+        this.currentPosition = tokens.getLine(start);
+        this.currentOffset = tokens.getStart(start);
+        this.currentEndOffset = currentOffset + tokens.getLength(start);
+        return onParserThread(this::parseBlockStatements);
+    }
+
+
+    /**
+     * Runs a parsing method on a parser thread, which has a stack large
+     * enough for MAX_NESTING_FRAMES, and waits for it.  On a parser thread
+     * it is run right away.
+     *
+     * @param parse the parsing method
+     * @return what the parsing method returns
+     * @throws CompilationException if it throws one, or if the calling
+     *                              thread is interrupted while waiting
+     */
+    private static <T> T onParserThread(Callable<T> parse) {
+        try {
+            if (Thread.currentThread() instanceof ParserThread) {
+                return parse.call();
+            }
+            Future<T> result = parserThreads.submit(parse);
+            try {
+                return result.get();
+            } catch (InterruptedException e) {
+                result.cancel(true);
+                Thread.currentThread().interrupt();
+                throw new CompilationException("Parsing was interrupted");
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof java.lang.Error) {
+                throw (java.lang.Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            // the parsing methods throw no checked exceptions
+            throw new IllegalStateException(e);
+        }
+    }
+
+
+    /**
+     * The threads parsing runs on
+     */
+    private static class ParserThread extends Thread {
+        ParserThread(Runnable runnable) {
+            super(null, runnable, "bantam-parser", PARSER_STACK_SIZE);
+        }
     }
 
 
@@ -319,7 +795,8 @@ public class Parser {
      * <IfStmt> ::= IF ( <Expr> ) <Stmt> | IF ( <Expr> ) <Stmt> ELSE <Stmt>
      */
     private Stmt parseIf() {
-        int position = currentToken.position;
+        int position = currentPosition;
+        int start = currentOffset;
         advance();
 
         checkTokenAndAdvance(position, LPAREN, "(");
@@ -329,11 +806,11 @@ public class Parser {
         Stmt thenStmt = parseStatement();
 
         Stmt elseStmt = null;
-        if (currentToken.kind == ELSE) {
+        if (currentKind == ELSE) {
             advance();
             elseStmt = parseStatement();
         }
-        return new IfStmt(position, predExpr, thenStmt, elseStmt);
+        return span(new IfStmt(position, predExpr, thenStmt, elseStmt), start);
     }
 
 
@@ -346,10 +823,28 @@ public class Parser {
      * <OptionalAssignment> ::= EMPTY | = <Expression>
      */
     private Expr parseExpression() {
-        int position = currentToken.position;
+        int position = currentPosition;
+        int start = currentOffset;
+
+        enterNesting("Expression", position, EXPRESSION_FRAMES);
+        try {
+            return parseAssignment(position, start);
+        } finally {
+            nestingDepth -= EXPRESSION_FRAMES;
+        }
+    }
+
 
-        Expr left = parseOrExpr();
-        if (currentToken.kind == ASSIGN) {
+    /**
+     * Parses an expression and an optional assignment to it
+     *
+     * @param position the line number of the start of the expression
+     * @param start the offset of the start of the expression
+     * @return the expression or assignment
+     */
+    private Expr parseAssignment(int position, int start) {
+        Expr left = parseBinaryExpr(OR_PRECEDENCE);
+        if (currentKind == ASSIGN) {
             advance();
             Expr right = parseExpression();
 
@@ -363,7 +858,8 @@ public class Parser {
                     }
                     leftRef = ((VarExpr) leftVar.getRef()).getName();
                 }
-                left = new AssignExpr(position, leftRef, leftVar.getName(), right);
+                left = span(new AssignExpr(position, leftRef, leftVar.getName(), right),
+                        start);
             }
 
             // assign member of an array
@@ -375,8 +871,8 @@ public class Parser {
                     }
                     leftRef = ((VarExpr) leftVar.getRef()).getName();
                 }
-                left = new ArrayAssignExpr(position, leftRef, leftVar.getName(),
-                        leftVar.getIndex(), right);
+                left = span(new ArrayAssignExpr(position, leftRef, leftVar.getName(),
+                        leftVar.getIndex(), right), start);
             }
 
             else {
@@ -388,158 +884,141 @@ public class Parser {
 
 
     /*
-     * <LogicalOR> ::= <logicalAND> <LogicalORRest>
-     * <LogicalORRest> ::= EMPTY |  || <LogicalAND> <LogicalORRest>
-     */
-    private Expr parseOrExpr() {
-        int position = currentToken.position;
-
-        Expr left = parseAndExpr();
-        while (currentToken.spelling.equals("||")) {
-            advance();
-            Expr right = parseAndExpr();
-            left = new BinaryLogicOrExpr(position, left, right);
-        }
-        return left;
-    }
-
-
-    /*
-     * <LogicalAND> ::= <ComparisonExpr> <LogicalANDRest>
-     * <LogicalANDRest> ::= EMPTY |  && <ComparisonExpr> <LogicalANDRest>
-     */
-    private Expr parseAndExpr() {
-        int position = currentToken.position;
-
-        Expr left = parseEqualityExpr();
-        while (currentToken.spelling.equals("&&")) {
-            advance();
-            Expr right = parseEqualityExpr();
-            left = new BinaryLogicAndExpr(position, left, right);
-        }
-        return left;
-    }
-
-
-    /*
-     * <ComparisonExpr> ::= <RelationalExpr> <equalOrNotEqual> <RelationalExpr> |
-     *                     <RelationalExpr>
-     * <equalOrNotEqual> ::=  == | !=
+     * <BinaryExpr> ::= <NewCastOrUnary> <MoreBinary>
+     * <MoreBinary> ::= EMPTY | <BinaryOp> <BinaryExpr> <MoreBinary>
+     * <BinaryOp>   ::= || | && | == | != | < | > | <= | >= | INSTANCEOF |
+     *                  + | - | * | / | %
+     *
+     * Binary operators are parsed by precedence climbing: the loop keeps
+     * taking operators that bind at least as tightly as minPrecedence, and
+     * each right operand is parsed with only the operators that bind more
+     * tightly.  Equality and relational operators do not associate, so after
+     * one of them only looser operators may follow.  The trees are the same
+     * as those of one method per precedence level, but a bare operand costs
+     * a single call instead of one call per level.
      */
-    private Expr parseEqualityExpr() {
-        int position = currentToken.position;
-
-        Expr left = parseRelationalExpr();
+    private Expr parseBinaryExpr(int minPrecedence) {
+        int position = currentPosition;
+        int start = currentOffset;
 
-        if (currentToken.spelling.equals("==")) {
-            advance();
-            Expr right = parseRelationalExpr();
-            left = new BinaryCompEqExpr(position, left, right);
-        } else if (currentToken.spelling.equals("!=")) {
+        Expr left = parseNewCastOrUnary();
+        int maxPrecedence = MULT_PRECEDENCE;
+        int op = getBinaryOperator();
+        int precedence = binaryPrecedence[op];
+        while (precedence >= minPrecedence && precedence <= maxPrecedence) {
             advance();
-            Expr right = parseRelationalExpr();
-            left = new BinaryCompNeExpr(position, left, right);
-        }
-        return left;
-    }
-
-
-    /*
-     * <RelationalExpr> ::=<AddExpr> | <AddExpr> <ComparisonOp> <AddExpr>
-     * <ComparisonOp> ::=  < | > | <= | >= | INSTANCEOF
-     */
-    private Expr parseRelationalExpr() {
-        int position = currentToken.position;
+            Expr right;
+            enterNesting("Expression", currentPosition, 1);
+            try {
+                right = parseBinaryExpr(precedence + 1);
+            } finally {
+                nestingDepth--;
+            }
+            left = span(createBinaryExpr(position, op, left, right), start);
 
-        Expr left = parseAddExpr();
-        if (currentToken.kind == COMPARE &&
-                (currentToken.spelling.contains("<") || currentToken.spelling.contains(">"))
-                || currentToken.kind == INSTANCEOF) {
-            String op = parseOperator();
-            Expr right = parseAddExpr();
-            switch (op) {
-                case "<":
-                    left = new BinaryCompLtExpr(position, left, right);
-                    break;
-                case ">":
-                    left = new BinaryCompGtExpr(position, left, right);
-                    break;
-                case "<=":
-                    left = new BinaryCompLeqExpr(position, left, right);
-                    break;
-                case ">=":
-                    left = new BinaryCompGeqExpr(position, left, right);
-                    break;
-                default:
-                    if (right instanceof VarExpr) {
-                        left = new InstanceofExpr(position, left, ((VarExpr) right).getName());
-                    }
-                    else if (right instanceof ArrayExpr) {
-                        left = new InstanceofExpr(position, left,
-                                ((ArrayExpr) right).getName() + "[]");
-                    }
-                    else {
-                        registerError("<identifier> expected", position);
-                    }
+            if (precedence == EQUALITY_PRECEDENCE
+                    || precedence == RELATIONAL_PRECEDENCE) {
+                maxPrecedence = precedence - 1;
+            }
+            else {
+                maxPrecedence = precedence;
             }
+            op = getBinaryOperator();
+            precedence = binaryPrecedence[op];
         }
         return left;
     }
 
 
-    /*
-     * <AddExpr>::= <MultExpr> <MoreMultExpr>
-     * <MoreMultExpr> ::= EMPTY | + <MultExpr> <MoreMultExpr> | - <MultExpr> <MoreMultExpr>
+    /**
+     * Finds which binary operator the current token is, without creating
+     * its spelling
+     *
+     * @return the operator, or NO_OP if the token is not a binary operator
      */
-    private Expr parseAddExpr() {
-        int position = currentToken.position;
-
-        Expr left = parseMultExpr();
-
-        while (currentToken.kind == PLUSMINUS) {
-            String op = parseOperator();
-            Expr right = parseMultExpr();
-            switch (op) {
-                case "+":
-                    left = new BinaryArithPlusExpr(position, left, right);
-                    break;
-                case "-":
-                    left = new BinaryArithMinusExpr(position, left, right);
-                    break;
-            }
+    private int getBinaryOperator() {
+        switch (currentKind) {
+            case BINARYLOGIC:
+                return currentChar(0) == '|' ? OR_OP : AND_OP;
+            case COMPARE:
+                switch (currentChar(0)) {
+                    case '=':
+                        return EQ_OP;
+                    case '!':
+                        return NE_OP;
+                    case '<':
+                        return currentLength() == 1 ? LT_OP : LEQ_OP;
+                    default:
+                        return currentLength() == 1 ? GT_OP : GEQ_OP;
+                }
+            case INSTANCEOF:
+                return INSTANCEOF_OP;
+            case PLUSMINUS:
+                return currentChar(0) == '+' ? PLUS_OP : MINUS_OP;
+            case MULDIV:
+                switch (currentChar(0)) {
+                    case '*':
+                        return TIMES_OP;
+                    case '/':
+                        return DIVIDE_OP;
+                    default:
+                        return MODULUS_OP;
+                }
+            default:
+                return NO_OP;
         }
-        return left;
     }
 
 
-    /*
-     * <MultiExpr> ::= <NewCastOrUnary> <MoreNCU>
-     * <MoreNCU> ::= * <NewCastOrUnary> <MoreNCU> |
-     *               / <NewCastOrUnary> <MoreNCU> |
-     *               % <NewCastOrUnary> <MoreNCU> |
-     *               EMPTY
+    /**
+     * Creates the node for a binary operator
+     *
+     * @param position the line number of the start of the left operand
+     * @param op the operator
+     * @param left the left operand
+     * @param right the right operand
+     * @return the new node
      */
-    private Expr parseMultExpr() {
-        int position = currentToken.position;
-
-        Expr left = parseNewCastOrUnary();
-
-        while (currentToken.kind == MULDIV) {
-            String op = parseOperator();
-            Expr right = parseNewCastOrUnary();
-            switch (op) {
-                case "*":
-                    left = new BinaryArithTimesExpr(position, left, right);
-                    break;
-                case "/":
-                    left = new BinaryArithDivideExpr(position, left, right);
-                    break;
-                case "%":
-                    left = new BinaryArithModulusExpr(position, left, right);
-                    break;
-            }
+    private Expr createBinaryExpr(int position, int op, Expr left, Expr right) {
+        switch (op) {
+            case OR_OP:
+                return new BinaryLogicOrExpr(position, left, right);
+            case AND_OP:
+                return new BinaryLogicAndExpr(position, left, right);
+            case EQ_OP:
+                return new BinaryCompEqExpr(position, left, right);
+            case NE_OP:
+                return new BinaryCompNeExpr(position, left, right);
+            case LT_OP:
+                return new BinaryCompLtExpr(position, left, right);
+            case GT_OP:
+                return new BinaryCompGtExpr(position, left, right);
+            case LEQ_OP:
+                return new BinaryCompLeqExpr(position, left, right);
+            case GEQ_OP:
+                return new BinaryCompGeqExpr(position, left, right);
+            case PLUS_OP:
+                return new BinaryArithPlusExpr(position, left, right);
+            case MINUS_OP:
+                return new BinaryArithMinusExpr(position, left, right);
+            case TIMES_OP:
+                return new BinaryArithTimesExpr(position, left, right);
+            case DIVIDE_OP:
+                return new BinaryArithDivideExpr(position, left, right);
+            case MODULUS_OP:
+                return new BinaryArithModulusExpr(position, left, right);
+            default:
+                // instanceof
+                if (right instanceof VarExpr) {
+                    return new InstanceofExpr(position, left, ((VarExpr) right).getName());
+                }
+                else if (right instanceof ArrayExpr) {
+                    return new InstanceofExpr(position, left,
+                            identifiers.intern(((ArrayExpr) right).getName() + "[]"));
+                }
+                registerError("<identifier> expected", position);
+                return left;
         }
-        return left;
     }
 
 
@@ -549,7 +1028,7 @@ public class Parser {
     private Expr parseNewCastOrUnary() {
         Expr expr;
 
-        switch (currentToken.kind) {
+        switch (currentKind) {
             case NEW:
                 expr = parseNew();
                 break;
@@ -568,22 +1047,23 @@ public class Parser {
      * <NewExpression> ::= NEW <Identifier> ( ) | NEW <Identifier> [ <Expression> ]
      */
     private Expr parseNew() {
-        int position = currentToken.position;
+        int position = currentPosition;
+        int start = currentOffset;
         Expr newExpr = null;
 
         checkTokenAndAdvance(position, NEW, "new");
 
         String identifier = parseIdentifier();
 
-        if (currentToken.kind == LPAREN) {
+        if (currentKind == LPAREN) {
             advance();
             checkTokenAndAdvance(position, RPAREN, ")");
-            newExpr = new NewExpr(position, identifier);
-        } else if (currentToken.kind == LBRACKET) {
+            newExpr = span(new NewExpr(position, identifier), start);
+        } else if (currentKind == LBRACKET) {
             advance();
             Expr size = parseExpression();
             checkTokenAndAdvance(position, RBRACKET, "]");
-            newExpr = new NewArrayExpr(position, identifier, size);
+            newExpr = span(new NewArrayExpr(position, identifier, size), start);
         } else {
             registerError("'(' or '[' expected", position);
             advance();
@@ -597,7 +1077,8 @@ public class Parser {
      * <CastExpression> ::= CAST ( <Type> , <Expression> )
      */
     private Expr parseCast() {
-        int position = currentToken.position;
+        int position = currentPosition;
+        int start = currentOffset;
 
         checkTokenAndAdvance(position, CAST, "cast");
         checkTokenAndAdvance(position, LPAREN, "(");
@@ -609,7 +1090,7 @@ public class Parser {
         Expr expr = parseExpression();
 
         checkTokenAndAdvance(position, RPAREN, ")");
-        return new CastExpr(position, type, expr);
+        return span(new CastExpr(position, type, expr), start);
     }
 
 
@@ -618,26 +1099,57 @@ public class Parser {
      * <PrefixOp> ::= - | ! | ++ | --
      */
     private Expr parseUnaryPrefix() {
-        int position = currentToken.position;
-
-        if (!currentToken.spelling.equals("-") &&
-                !currentToken.spelling.equals("!") &&
-                !currentToken.spelling.equals("++") &&
-                !currentToken.spelling.equals("--")) {
+        if (!isPrefixOperator()) {
             return parseUnaryPostfix();
         }
 
-        String op = parseOperator();
-        switch (op) {
-            case "-":
-                return new UnaryNegExpr(position, parseUnaryPrefix());
-            case "!":
-                return new UnaryNotExpr(position, parseUnaryPrefix());
-            case "++":
-                return new UnaryIncrExpr(position, parseUnaryPrefix(), false);
-            default:
-                return new UnaryDecrExpr(position, parseUnaryPrefix(), false);
+        // collect the operators first so long chains of them do not recurse
+        int count = 0;
+        int[] positions = new int[4];
+        int[] starts = new int[4];
+        Token.Kind[] ops = new Token.Kind[4];
+        while (isPrefixOperator()) {
+            if (count == ops.length) {
+                positions = Arrays.copyOf(positions, count * 2);
+                starts = Arrays.copyOf(starts, count * 2);
+                ops = Arrays.copyOf(ops, count * 2);
+            }
+            positions[count] = currentPosition;
+            starts[count] = currentOffset;
+            ops[count] = currentKind;
+            count++;
+            advance();
         }
+
+        Expr expr = parseUnaryPostfix();
+        for (int i = count - 1; i >= 0; i--) {
+            switch (ops[i]) {
+                case PLUSMINUS:
+                    expr = new UnaryNegExpr(positions[i], expr);
+                    break;
+                case UNARYNOT:
+                    expr = new UnaryNotExpr(positions[i], expr);
+                    break;
+                case UNARYINCR:
+                    expr = new UnaryIncrExpr(positions[i], expr, false);
+                    break;
+                default:
+                    expr = new UnaryDecrExpr(positions[i], expr, false);
+                    break;
+            }
+            span(expr, starts[i]);
+        }
+        return expr;
+    }
+
+
+    /**
+     * @return whether the current token is -, !, ++ or --
+     */
+    private boolean isPrefixOperator() {
+        return currentKind == UNARYNOT || currentKind == UNARYINCR
+                || currentKind == UNARYDECR
+                || (currentKind == PLUSMINUS && currentChar(0) == '-');
     }
 
 
@@ -646,16 +1158,17 @@ public class Parser {
      * <PostfixOp> ::= ++ | -- | EMPTY
      */
     private Expr parseUnaryPostfix() {
-        int position = currentToken.position;
+        int position = currentPosition;
+        int start = currentOffset;
 
         Expr expr = parsePrimary();
-        if (currentToken.kind == UNARYINCR || currentToken.kind == UNARYDECR) {
+        if (currentKind == UNARYINCR || currentKind == UNARYDECR) {
             String op = parseOperator();
             if (op.equals("++")) {
-                return new UnaryIncrExpr(position, expr, true);
+                return span(new UnaryIncrExpr(position, expr, true), start);
             }
             if (op.equals("--")) {
-                return new UnaryDecrExpr(position, expr, true);
+                return span(new UnaryDecrExpr(position, expr, true), start);
             }
         }
         return expr;
@@ -673,68 +1186,69 @@ public class Parser {
      *              | EMPTY
      */
     private Expr parsePrimary() {
-        int position = currentToken.position;
+        int position = currentPosition;
+        int start = currentOffset;
 
         Expr expr;
         // parse constants without suffixes
-        if (currentToken.kind == INTCONST) {
+        if (currentKind == INTCONST) {
             expr = parseIntConst();
         }
-        else if (currentToken.kind == BOOLEAN) {
+        else if (currentKind == BOOLEAN) {
             expr = parseBoolean();
         }
         else {
             // there is possibly a suffix
-            if (currentToken.kind == STRCONST) {
+            if (currentKind == STRCONST) {
                 expr = parseStringConst();
             }
-            else if (currentToken.kind == LPAREN) {
+            else if (currentKind == LPAREN) {
                 advance();
                 expr = parseExpression();
                 checkTokenAndAdvance(position, RPAREN, ")");
             }
             else {
                 String name = parseIdentifier();
-                expr = new VarExpr(position, null, name);
+                expr = span(new VarExpr(position, null, name), start);
             }
             // parse suffixes
-            while (currentToken.kind == DOT || currentToken.kind == LBRACKET
-                    || currentToken.kind == LPAREN) {
-                if (currentToken.kind == DOT) {
+            while (currentKind == DOT || currentKind == LBRACKET
+                    || currentKind == LPAREN) {
+                if (currentKind == DOT) {
                     advance();
                     String name = parseIdentifier();
-                    expr = new VarExpr(position, expr, name);
+                    expr = span(new VarExpr(position, expr, name), start);
                 }
-                else if (currentToken.kind == LBRACKET) {
+                else if (currentKind == LBRACKET) {
                     advance();
-                    Expr index = new VarExpr(position, null, null);
-                    if (currentToken.kind != RBRACKET) {
+                    Expr index = span(new VarExpr(position, null, null), currentOffset);
+                    if (currentKind != RBRACKET) {
                         index = parseExpression();
                     }
                     checkTokenAndAdvance(position, RBRACKET, "]");
 
                     if (expr instanceof VarExpr) {
                         VarExpr prefix = (VarExpr) expr;
-                        expr = new ArrayExpr(position, prefix.getRef(),
-                                prefix.getName(), index);
+                        expr = span(new ArrayExpr(position, prefix.getRef(),
+                                prefix.getName(), index), start);
                     }
                     else {
-                        expr = new ArrayExpr(position, expr, null, index);
+                        expr = span(new ArrayExpr(position, expr, null, index), start);
                     }
                 }
                 else {
                     advance();
-                    ExprList exprList = new ExprList(position);
-                    if (currentToken.kind != RPAREN) {
+                    ExprList exprList = span(new ExprList(position), currentOffset);
+                    if (currentKind != RPAREN) {
                         exprList = parseArguments();
                     }
                     checkTokenAndAdvance(position, RPAREN, ")");
                     if (expr instanceof VarExpr) {
                         VarExpr prefix = (VarExpr) expr;
-                        expr = new DispatchExpr(position, prefix.getRef(),
-                                prefix.getName(), exprList);
+                        expr = span(new DispatchExpr(position, prefix.getRef(),
+                                prefix.getName(), exprList), start);
                     } else {
-                        expr = new DispatchExpr(position, expr, null, exprList);
+                        expr = span(new DispatchExpr(position, expr, null, exprList), start);
                     }
                 }
             }
@@ -748,22 +1262,29 @@ public class Parser {
      * <MoreArgs>  ::= EMPTY | , <Expression> <MoreArgs>
      */
     private ExprList parseArguments() {
-        int position = currentToken.position;
+        int position = currentPosition;
+        int start = currentOffset;
         ExprList exprList = new ExprList(position);
 
-        // if argument list is not empty, get first expression
-        if (currentToken.kind != RPAREN) {
-            Expr expr = parseExpression();
-            exprList.addElement(expr);
-        }
+        enterNesting("Expression", position, 1);
+        try {
+            // if argument list is not empty, get first expression
+            if (currentKind != RPAREN) {
+                Expr expr = parseExpression();
+                exprList.addElement(expr);
+            }
 
-        // get successive expressions
-        while (currentToken.kind == COMMA) {
-            advance();
-            Expr expr = parseExpression();
-            exprList.addElement(expr);
+            // get successive expressions
+            while (currentKind == COMMA) {
+                advance();
+                Expr expr = parseExpression();
+                exprList.addElement(expr);
+            }
+        } finally {
+            nestingDepth--;
         }
-        return exprList;
+        exprList.trimToSize();
+        return span(exprList, start);
     }
 
 
@@ -772,23 +1293,25 @@ public class Parser {
      * <MoreFormals> ::= EMPTY | , <Formal> <MoreFormals
      */
     private FormalList parseParameters() {
-        int position = currentToken.position;
+        int position = currentPosition;
+        int start = currentOffset;
 
         FormalList formalList = new FormalList(position);
 
         // if parameter list is not empty, get first expression
-        if (currentToken.kind != RPAREN) {
+        if (currentKind != RPAREN) {
             Formal formal = parseFormal();
             formalList.addElement(formal);
         }
 
         // get successive expressions
-        while (currentToken.kind == COMMA) {
+        while (currentKind == COMMA) {
             advance();
             Formal formal = parseFormal();
             formalList.addElement(formal);
         }
-        return formalList;
+        formalList.trimToSize();
+        return span(formalList, start);
     }
 
 
@@ -796,12 +1319,13 @@ public class Parser {
      * <Formal> ::= <Type> <Identifier>
      */
     private Formal parseFormal() {
-        int position = currentToken.position;
+        int position = currentPosition;
+        int start = currentOffset;
 
         String type = parseType();
         String identifier = parseIdentifier();
 
-        return new Formal(position, type, identifier);
+        return span(new Formal(position, type, identifier), start);
     }
 
 
@@ -810,13 +1334,13 @@ public class Parser {
      * <Brackets> ::= EMPTY | [ ]
      */
     private String parseType() {
-        int position = currentToken.position;
+        int position = currentPosition;
 
         String identifier = parseIdentifier();
-        if (currentToken.kind == LBRACKET) {
+        if (currentKind == LBRACKET) {
             advance();
             checkTokenAndAdvance(position, RBRACKET, "]");
-            identifier += "[]";
+            identifier = identifiers.intern(identifier + "[]");
         }
         return identifier;
     }
@@ -826,48 +1350,54 @@ public class Parser {
     //Terminals
 
     private String parseOperator() {
-        String spelling = currentToken.spelling;
+        String spelling = currentSpelling();
         advance();
         return spelling;
     }
 
 
     private String parseIdentifier() {
-        int position = currentToken.position;
-        if (currentToken.kind != IDENTIFIER && currentToken.kind != VAR) {
+        int position = currentPosition;
+        if (currentKind != IDENTIFIER && currentKind != VAR) {
             registerError("<identifier> expected", position);
         }
-        String spelling = currentToken.spelling;
+        String spelling = currentSpelling();
         advance();
         return spelling;
     }
 
 
     private ConstStringExpr parseStringConst() {
-        int position = currentToken.position;
-        String spelling = currentToken.spelling;
+        int position = currentPosition;
+        int start = currentOffset;
+        String spelling = currentSpelling();
         advance();
-        return new ConstStringExpr(position, spelling);
+        return span(new ConstStringExpr(position, spelling), start);
     }
 
 
     private ConstIntExpr parseIntConst() {
-        int position = currentToken.position;
-        String spelling = currentToken.spelling;
+        int position = currentPosition;
+        int start = currentOffset;
+        String spelling = currentSpelling();
+        int value = tokens != null ? tokens.getIntValue(tokenIndex) : currentToken.intValue;
         advance();
-        return new ConstIntExpr(position, spelling);
+        return span(new ConstIntExpr(position, spelling, value), start);
     }
 
 
     private ConstBooleanExpr parseBoolean() {
-        int position = currentToken.position;
-        String spelling = currentToken.spelling;
+        int position = currentPosition;
+        int start = currentOffset;
+        String spelling = currentSpelling();
         advance();
-        return new ConstBooleanExpr(position, spelling);
+        return span(new ConstBooleanExpr(position, spelling), start);
     }
 
     /**
-     * Throw a CompilationException with the given error message and position
+     * Throw a CompilationException with the given error message and position.
+     * In error recovery mode, a SyntaxError is thrown instead so the parser
+     * can skip to a synchronizing token.
      *
      * @param errorMessage String describing the error
      * @param position     the line number where the error occurs
@@ -877,36 +1407,233 @@ public class Parser {
             throws CompilationException {
         errorHandler.register(Error.Kind.PARSE_ERROR, fileName,
                 position, errorMessage);
+        if (errorRecovery) {
+            throw new SyntaxError(errorMessage);
+        }
         throw new CompilationException(errorMessage);
     }
 
 
+    /**
+     * Records that one more statement or expression is being parsed
+     *
+     * @param construct what is being parsed, for the error message
+     * @param position  the line number where it starts
+     * @param frames    the stack frames it adds until the next check
+     * @throws CompilationException if the nesting is too deep
+     */
+    private void enterNesting(String construct, int position, int frames) {
+        if (nestingDepth + frames > MAX_NESTING_FRAMES) {
+            registerError(construct + " nested too deeply", position);
+        }
+        nestingDepth += frames;
+    }
+
+
+    /**
+     * Register an error found while recovering, without throwing
+     *
+     * @param errorMessage String describing the error
+     * @param position     the line number where the error occurs
+     */
+    private void registerRecoveredError(String errorMessage, int position) {
+        errorHandler.register(Error.Kind.PARSE_ERROR, fileName,
+                position, errorMessage);
+    }
+
+
+    /**
+     * Skips tokens after a syntax error inside a class, until the parser can
+     * carry on with the next statement or member.  A ';' is skipped and ends
+     * the recovery.  A '}' ends the recovery without being skipped, unless it
+     * closes a block that was opened while skipping, in which case the whole
+     * block is skipped.  Recovery also ends at the start of a class, or, when
+     * recovering a statement, at a keyword that starts a statement.
+     *
+     * @param inMember true if recovering a member, false if recovering a statement
+     * @return false if a class keyword or the end of the file was reached,
+     *         true otherwise
+     */
+    private boolean synchronize(boolean inMember) {
+        int depth = 0;
+        boolean skipped = false;
+        while (true) {
+            switch (currentKind) {
+                case EOF:
+                    reportEOF();
+                    return false;
+                case CLASS:
+                    return false;
+                case SEMICOLON:
+                    if (depth == 0) {
+                        nextToken();
+                        return true;
+                    }
+                    break;
+                case LCURLY:
+                    depth++;
+                    break;
+                case RCURLY:
+                    if (depth == 0) {
+                        return true;
+                    }
+                    depth--;
+                    if (depth == 0) {
+                        nextToken();
+                        return true;
+                    }
+                    break;
+                case IF: case WHILE: case FOR: case RETURN: case BREAK: case VAR:
+                    if (depth == 0 && skipped && !inMember) {
+                        return true;
+                    }
+                    break;
+                default:
+                    break;
+            }
+            nextToken();
+            skipped = true;
+        }
+    }
+
+
+    /**
+     * Skips tokens after a syntax error outside of a class member,
+     * until the next class keyword or the end of the file.  A class
+     * keyword reached while parsing the class header starts the next
+     * class, so it is kept unless it is the one the failed class
+     * started with.
+     *
+     * @param classStart the offset of the first token of the failed class
+     */
+    private void synchronizeClass(int classStart) {
+        if (currentKind != EOF && (currentKind != CLASS || currentOffset == classStart)) {
+            nextToken();
+        }
+        while (currentKind != CLASS && currentKind != EOF) {
+            nextToken();
+        }
+    }
+
+
+    /**
+     * The exception thrown at a syntax error in error recovery mode.  It is
+     * caught where the parser can synchronize, so it has no stack trace.
+     */
+    private static class SyntaxError extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        SyntaxError(String message) {
+            super(message, null, false, false);
+        }
+    }
+
+
     /**
      * Go to the next significant token
      * Throw error if reach EOF
      */
     private void advance() {
-        currentToken = scanner.scan();
+        nextToken();
 
-        // cycle through comments
-        while (currentToken.kind == COMMENT) {
-            currentToken = scanner.scan();
+        // if EOF, throw error
+        if (currentKind == EOF) {
+            reportEOF();
+            if (errorRecovery) {
+                throw new SyntaxError("Reached end of file while parsing");
+            }
+            throw new CompilationException("Reached end of file while parsing");
         }
+    }
 
-        // if EOF, throw error
-        if (currentToken.kind == EOF) {
-            registerError("Reached end of file while parsing",
-                    currentToken.position);
+
+    /**
+     * Register the error for reaching the end of the file in the middle of
+     * a class.  While recovering, the error is registered only once.
+     */
+    private void reportEOF() {
+        if (!reachedEOF) {
+            reachedEOF = errorRecovery;
+            registerRecoveredError("Reached end of file while parsing",
+                    currentPosition);
+        }
+    }
+
+    /**
+     * Go to the next token that is not a comment, from the scanner
+     * or from the TokenBuffer
+     */
+    private void nextToken() {
+        previousEndOffset = currentEndOffset;
+        if (tokens != null) {
+            // the last token is always EOF, which is never skipped
+            while (tokenIndex < lastTokenIndex) {
+                tokenIndex++;
+                if (tokens.getKind(tokenIndex) != COMMENT) {
+                    break;
+                }
+            }
+            currentKind = tokenIndex == lastTokenIndex ? EOF : tokens.getKind(tokenIndex);
+            currentPosition = tokens.getLine(tokenIndex);
+            currentOffset = tokens.getStart(tokenIndex);
+            currentEndOffset = currentOffset + tokens.getLength(tokenIndex);
+        }
+        else {
+            do {
+                currentToken = pipeline != null ? pipeline.next() : scanner.scan();
+            } while (currentToken.kind == COMMENT);
+            currentKind = currentToken.kind;
+            currentPosition = currentToken.position;
+            currentOffset = currentToken.offset;
+            currentEndOffset = currentToken.endOffset;
         }
     }
 
+    /**
+     * Sets the span of a node to run from the given offset to the end of
+     * the last token parsed, or to be empty if no token has been parsed
+     * since the offset
+     *
+     * @param node the node just created
+     * @param start the offset of the node's first token
+     * @return the node
+     */
+    private <T extends ASTNode> T span(T node, int start) {
+        node.setSpan(start, Math.max(start, previousEndOffset));
+        return node;
+    }
+
+    /**
+     * @return the spelling of the lookahead token
+     */
+    private String currentSpelling() {
+        return tokens != null ? tokens.getSpelling(tokenIndex) : currentToken.spelling;
+    }
+
+    /**
+     * @param offset the position of a character in the lookahead token
+     * @return the character of the lookahead token at that position
+     */
+    private char currentChar(int offset) {
+        return tokens != null ? tokens.getChar(tokenIndex, offset)
+                : currentToken.spelling.charAt(offset);
+    }
+
+    /**
+     * @return the number of characters in the lookahead token
+     */
+    private int currentLength() {
+        return tokens != null ? tokens.getLength(tokenIndex)
+                : currentToken.spelling.length();
+    }
+
     /**
      * Checks if the current token is of the given kind
      * If it is not, registers an error
      * Advances regardless
      */
     private void checkTokenAndAdvance(int position, Token.Kind kind, String expected) {
-        if (currentToken.kind != kind) {
+        if (currentKind != kind) {
             registerError("'" + expected + "' expected", position);
         }
         advance();
@@ -0,0 +1,123 @@
+/*
+ * File: bantam.parser.ParserBenchmark.java
+ * CS361 Project 11
+ * Names: Martin Deutsch and Wyett MacDonald
+ * Date: 2/20/2019
+ * This file contains a driver that measures how fast the Parser builds
+ * ASTs for a set of Bantam Java files
+ */
+
+package proj11DeutschMacDonald.bantam.parser;
+
+import proj11DeutschMacDonald.bantam.lexer.Scanner;
+import proj11DeutschMacDonald.bantam.lexer.TokenBuffer;
+import proj11DeutschMacDonald.bantam.util.CompilationException;
+import proj11DeutschMacDonald.bantam.util.ErrorHandler;
+
+/**
+ * ParserBenchmark scans the given files once and then parses their tokens
+ * repeatedly, reporting the number of tokens parsed per second.  Scanning is
+ * not timed, so the numbers measure the Parser alone.  The first rounds are
+ * used to warm up the JIT and are not reported.  With -lazy, method bodies
+ * are skipped, which measures the cost of an outline-only parse.  With
+ * -stream, each round reads, scans and parses the files on one thread, and
+ * with -pipelined the scanning runs on a second thread through a
+ * TokenPipeline, so the two can be compared.
+ *
+ * @author Martin Deutsch
+ * @author Wyett MacDonald
+ */
+public class ParserBenchmark {
+
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int TIMED_ROUNDS = 5;
+
+    /**
+     * Parses the tokens of every file once
+     *
+     * @param files the scanned files
+     * @param lazy whether to skip the method bodies
+     */
+    private static void parseAll(TokenBuffer[] files, boolean lazy) {
+        for (TokenBuffer tokens : files) {
+            Parser parser = new Parser(new ErrorHandler());
+            parser.setLazyMethodBodies(lazy);
+            parser.parse(tokens);
+        }
+    }
+
+    /**
+     * Reads, scans and parses every file once
+     *
+     * @param filenames the files to parse
+     * @param pipelined whether to scan on a separate thread
+     */
+    private static void parseAll(String[] filenames, boolean pipelined) {
+        for (String filename : filenames) {
+            Parser parser = new Parser(new ErrorHandler());
+            parser.setPipelined(pipelined);
+            parser.parse(filename);
+        }
+    }
+
+    /**
+     * Main method parses the given files and prints the parsing throughput
+     *
+     * @param args a list of file names, optionally preceded by -lazy,
+     *             -stream or -pipelined
+     */
+    public static void main(String[] args) {
+        String mode = args.length > 0 && args[0].startsWith("-") ? args[0] : "";
+        int firstFile = mode.isEmpty() ? 0 : 1;
+        boolean lazy = mode.equals("-lazy");
+        boolean fromFiles = mode.equals("-stream") || mode.equals("-pipelined");
+        boolean pipelined = mode.equals("-pipelined");
+        if (!mode.isEmpty() && !lazy && !fromFiles) {
+            System.out.println("Unknown option: " + mode);
+            return;
+        }
+        if (args.length == firstFile) {
+            System.out.println("Please enter files to parse");
+            return;
+        }
+
+        try {
+            String[] filenames = new String[args.length - firstFile];
+            TokenBuffer[] files = new TokenBuffer[filenames.length];
+            long tokens = 0;
+            for (int i = 0; i < files.length; i++) {
+                filenames[i] = args[firstFile + i];
+                files[i] = new Scanner(filenames[i], new ErrorHandler()).scanAll();
+                tokens += files[i].size();
+            }
+            if (fromFiles) {
+                files = null;
+            }
+
+            for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                if (fromFiles) {
+                    parseAll(filenames, pipelined);
+                }
+                else {
+                    parseAll(files, lazy);
+                }
+            }
+            long bestTime = Long.MAX_VALUE;
+            for (int i = 0; i < TIMED_ROUNDS; i++) {
+                long start = System.nanoTime();
+                if (fromFiles) {
+                    parseAll(filenames, pipelined);
+                }
+                else {
+                    parseAll(files, lazy);
+                }
+                bestTime = Math.min(bestTime, System.nanoTime() - start);
+            }
+            System.out.printf("%d tokens in %.1f ms (%.0f tokens/sec)%n", tokens,
+                    bestTime / 1e6, tokens / (bestTime / 1e9));
+        }
+        catch (CompilationException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+}
@@ -9,16 +9,24 @@
 
 package proj11DeutschMacDonald.bantam.semant;
 import proj11DeutschMacDonald.bantam.ast.*;
+import proj11DeutschMacDonald.bantam.visitor.CompositeVisitor;
+import proj11DeutschMacDonald.bantam.visitor.MergeableVisitor;
+import proj11DeutschMacDonald.bantam.visitor.Pass;
 import proj11DeutschMacDonald.bantam.visitor.Visitor;
 
+import java.util.List;
+
 /**
  * MainMainVisitor searches an AST for a Main class
- * containing a main method
+ * containing a main method.  It can also run as a Pass
+ * of a CompositeVisitor, finishing once Main.main is found,
+ * or on a ParallelVisitor, checking each class on its own.
  *
  * @author Martin Deutsch
  * @author Wyett MacDonald
  */
-public class MainMainVisitor extends Visitor {
+public class MainMainVisitor extends Visitor implements Pass<Boolean>,
+        MergeableVisitor<Boolean, Boolean> {
 
     private boolean mainMainFound = false;
 
@@ -44,8 +52,8 @@ public class MainMainVisitor extends Visitor {
      * @return result of the visit
      */
     public Object visit(ClassList node) {
-        for (ASTNode aNode : node) {
-            aNode.accept(this);
+        for (int i = 0; i < node.getSize(); i++) {
+            node.get(i).accept(this);
             if (mainMainFound) {
                 break;
             }
@@ -75,7 +83,8 @@ public class MainMainVisitor extends Visitor {
      * @return result of the visit
      */
     public Object visit(MemberList node) {
-        for (ASTNode child : node) {
+        for (int i = 0; i < node.getSize(); i++) {
+            ASTNode child = node.get(i);
             if (child instanceof Method) {
                 child.accept(this);
             }
@@ -95,10 +104,84 @@ public class MainMainVisitor extends Visitor {
      * @return result of the visit
      */
     public Object visit(Method node) {
-        if (node.getName().equals("main") && node.getReturnType().equals("void")
-                && node.getFormalList().getSize() == 0) {
+        if (isMainMethod(node)) {
             this.mainMainFound = true;
         }
         return null;
     }
+
+    /**
+     * Enter a node as a Pass, descending only into the Main class
+     * and not into any member
+     *
+     * @param node the node
+     * @return true to visit the children of the node
+     */
+    public boolean enter(ASTNode node) {
+        if (node instanceof Class_) {
+            return ((Class_) node).getName().equals("Main");
+        }
+        if (node instanceof Method && isMainMethod((Method) node)) {
+            this.mainMainFound = true;
+        }
+        return !(node instanceof Member);
+    }
+
+    /**
+     * Exit a node as a Pass
+     *
+     * @param node the node
+     */
+    public void exit(ASTNode node) {
+    }
+
+    /**
+     * @return true once Main.main is found
+     */
+    public boolean isFinished() {
+        return mainMainFound;
+    }
+
+    /**
+     * @return true if Main.main was found
+     */
+    public Boolean getResult() {
+        return mainMainFound;
+    }
+
+    /**
+     * Check one class for Main.main with a new visitor, run as a Pass
+     * so that the class is walked without recursion
+     *
+     * @param node the class node
+     * @return true if the class is Main with a valid main method
+     */
+    public Boolean visitClass(Class_ node) {
+        MainMainVisitor visitor = new MainMainVisitor();
+        CompositeVisitor composite = new CompositeVisitor();
+        composite.add(visitor);
+        composite.run(node);
+        return visitor.mainMainFound;
+    }
+
+    /**
+     * Combine the checks of all the classes
+     *
+     * @param partials the result of each class
+     * @return true if some class is Main with a valid main method
+     */
+    public Boolean merge(List<Boolean> partials) {
+        return partials.contains(true);
+    }
+
+    /**
+     * Check if a method is main with void return type and no parameters
+     *
+     * @param node the method node
+     * @return true if it is
+     */
+    private boolean isMainMethod(Method node) {
+        return node.getName().equals("main") && node.getReturnType().equals("void")
+                && node.getFormalList().getSize() == 0;
+    }
 }
\ No newline at end of file
@@ -9,20 +9,26 @@
 
 package proj11DeutschMacDonald.bantam.semant;
 import proj11DeutschMacDonald.bantam.ast.*;
+import proj11DeutschMacDonald.bantam.visitor.CompositeVisitor;
+import proj11DeutschMacDonald.bantam.visitor.MergeableVisitor;
+import proj11DeutschMacDonald.bantam.visitor.Pass;
 import proj11DeutschMacDonald.bantam.visitor.Visitor;
 
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 /**
  * NumLocalVarsVisitor searches an AST for local variables
- * and stores them in a hashmap
+ * and stores them in a hashmap.  It can also run as a Pass
+ * of a CompositeVisitor, or on a ParallelVisitor, where each
+ * class gives the counts of its own methods.
  *
  * @author Martin Deutsch
  * @author Wyett MacDonald
  */
-public class NumLocalVarsVisitor extends Visitor {
+public class NumLocalVarsVisitor extends Visitor implements Pass<Map<String, Integer>>,
+        MergeableVisitor<Map<String, Integer>, Map<String, Integer>> {
 
     private Map<String, Integer> localVarsMap = new HashMap<>();
     private int num_vars;
@@ -72,10 +78,7 @@ public class NumLocalVarsVisitor extends Visitor {
      * @return result of visit
      */
     public Object visit(FormalList node) {
-        for (Iterator it = node.iterator(); it.hasNext(); ) {
-            it.next();
-            num_vars++;
-        }
+        num_vars += node.getSize();
         return null;
     }
 
@@ -86,14 +89,102 @@ public class NumLocalVarsVisitor extends Visitor {
      * @return result of visit
      */
     public Object visit(StmtList node) {
-        for (Iterator it = node.iterator(); it.hasNext(); ) {
-            if (it.next() instanceof DeclStmt) {
+        countDeclarations(node);
+        return null;
+    }
+
+    /**
+     * Enter a node as a Pass, recording the same counts as the visit
+     * methods and not descending below the formals and method bodies
+     *
+     * @param node the node
+     * @return true to visit the children of the node
+     */
+    public boolean enter(ASTNode node) {
+        if (node instanceof Class_) {
+            class_name = ((Class_) node).getName();
+        }
+        else if (node instanceof Method) {
+            method_name = ((Method) node).getName();
+        }
+        else if (node instanceof FormalList) {
+            num_vars += ((FormalList) node).getSize();
+            return false;
+        }
+        else if (node instanceof StmtList) {
+            countDeclarations((StmtList) node);
+            return false;
+        }
+        return !(node instanceof Field);
+    }
+
+    /**
+     * Exit a node as a Pass
+     *
+     * @param node the node
+     */
+    public void exit(ASTNode node) {
+    }
+
+    /**
+     * @return false, since every method must be counted
+     */
+    public boolean isFinished() {
+        return false;
+    }
+
+    /**
+     * @return the hashmap mapping class.method names to numbers of local variables
+     */
+    public Map<String, Integer> getResult() {
+        return localVarsMap;
+    }
+
+    /**
+     * Count the local variables of the methods of one class with a new
+     * visitor, run as a Pass so that the class is walked without recursion
+     *
+     * @param node the class node
+     * @return the hashmap mapping class.method names of the class to
+     *         numbers of local variables
+     */
+    public Map<String, Integer> visitClass(Class_ node) {
+        NumLocalVarsVisitor visitor = new NumLocalVarsVisitor();
+        CompositeVisitor composite = new CompositeVisitor();
+        composite.add(visitor);
+        composite.run(node);
+        return visitor.localVarsMap;
+    }
+
+    /**
+     * Combine the counts of all the classes, later classes replacing
+     * the counts of earlier classes with the same name
+     *
+     * @param partials the counts of each class
+     * @return the hashmap mapping class.method names to numbers of local variables
+     */
+    public Map<String, Integer> merge(List<Map<String, Integer>> partials) {
+        Map<String, Integer> merged = new HashMap<>();
+        for (Map<String, Integer> classVars : partials) {
+            merged.putAll(classVars);
+        }
+        return merged;
+    }
+
+    /**
+     * Count the declarations in a method body and store the total
+     * for the current method
+     *
+     * @param node the statement list node of the method body
+     */
+    private void countDeclarations(StmtList node) {
+        for (int i = 0; i < node.getSize(); i++) {
+            if (node.get(i) instanceof DeclStmt) {
                 num_vars++;
             }
         }
         String key_input = class_name + "." + method_name;
         localVarsMap.put(key_input, num_vars);
         num_vars = 0;
-        return null;
     }
 }
\ No newline at end of file
@@ -0,0 +1,353 @@
+/*
+ * File: bantam.semant.SemanticAnalyzer.java
+ * CS361 Project 11
+ * Names: Martin Deutsch and Wyett MacDonald
+ * Date: 2/20/2019
+ * This file contains the SemanticAnalyzer, which builds the class hierarchy
+ * of a program with the field and method tables of each class
+ */
+
+package proj11DeutschMacDonald.bantam.semant;
+
+import proj11DeutschMacDonald.bantam.ast.ClassList;
+import proj11DeutschMacDonald.bantam.ast.Class_;
+import proj11DeutschMacDonald.bantam.ast.Formal;
+import proj11DeutschMacDonald.bantam.ast.FormalList;
+import proj11DeutschMacDonald.bantam.ast.MemberList;
+import proj11DeutschMacDonald.bantam.ast.Method;
+import proj11DeutschMacDonald.bantam.ast.Program;
+import proj11DeutschMacDonald.bantam.ast.StmtList;
+import proj11DeutschMacDonald.bantam.util.ClassTreeNode;
+import proj11DeutschMacDonald.bantam.util.Error;
+import proj11DeutschMacDonald.bantam.util.ErrorHandler;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The SemanticAnalyzer builds the class hierarchy of a program: a tree of
+ * ClassTreeNodes rooted at Object, holding the built-in classes Object,
+ * String, TextIO and Sys and the classes of the program.  A class with no
+ * parent extends Object.  It reports classes defined twice, parents that are
+ * not defined or cannot be extended, and inheritance cycles, attaching such
+ * classes to Object so that the rest of the analysis can go on, and then
+ * builds the field and method tables of every class, parents first.
+ * <p>
+ * Once the hierarchy is built, the questions later checks ask are answered
+ * without walking the hierarchy or the ClassList: a class is found by name
+ * in a map, the method a dispatch calls is found in the vtable of the class
+ * of its reference, and a type conforms to another if its preorder number
+ * is within the range of the other's descendants, which is what an
+ * instanceof or cast check needs.
+ *
+ * @author Martin Deutsch
+ * @author Wyett MacDonald
+ */
+public class SemanticAnalyzer {
+
+    // the built-in classes: name, parent, whether it can be extended, and
+    // the methods, each as its return type, name and parameter types
+    private static final String[][] BUILT_IN_CLASSES = {
+            {"Object", null, "true",
+                    "Object clone", "boolean equals Object", "String toString"},
+            {"String", "Object", "false",
+                    "int length", "boolean equals Object", "String toString",
+                    "String substring int int", "String concat String"},
+            {"TextIO", "Object", "false",
+                    "void readStdin", "void readFile String", "void writeStdout",
+                    "void writeStderr", "void writeFile String", "String getString",
+                    "int getInt", "TextIO putString String", "TextIO putInt int"},
+            {"Sys", "Object", "false",
+                    "void exit int", "int time", "int random"}
+    };
+
+    private final ErrorHandler errorHandler;
+    private final Map<String, ClassTreeNode> classMap = new HashMap<>();
+    private ClassTreeNode root;
+
+    /**
+     * Constructor creating a SemanticAnalyzer
+     *
+     * @param errorHandler the ErrorHandler to register semantic errors with
+     */
+    public SemanticAnalyzer(ErrorHandler errorHandler) {
+        this.errorHandler = errorHandler;
+    }
+
+    /**
+     * Builds the class hierarchy of a program and the tables of its
+     * classes.  The hierarchy is built even if errors are found, so the
+     * caller should check the ErrorHandler.
+     *
+     * @param program the Program node at the root of the AST
+     * @return the node of Object, at the root of the hierarchy
+     */
+    public ClassTreeNode analyze(Program program) {
+        classMap.clear();
+        addBuiltInClasses();
+        List<ClassTreeNode> classes = addClasses(program.getClassList());
+        for (ClassTreeNode node : classes) {
+            setParent(node);
+        }
+        breakCycles(classes, new HashSet<>(numberClasses()));
+        for (ClassTreeNode node : numberClasses()) {
+            node.buildTables(errorHandler);
+        }
+        return root;
+    }
+
+    /**
+     * @return the node of Object, or null before analyze() is called
+     */
+    public ClassTreeNode getRoot() {
+        return root;
+    }
+
+    /**
+     * @return every class by name
+     */
+    public Map<String, ClassTreeNode> getClassMap() {
+        return Collections.unmodifiableMap(classMap);
+    }
+
+    /**
+     * Finds a class by name
+     *
+     * @param name the name of the class
+     * @return the class, or null if there is none
+     */
+    public ClassTreeNode lookupClass(String name) {
+        return classMap.get(name);
+    }
+
+    /**
+     * Finds the class whose methods an object of a type has, which is
+     * Object for an array type
+     *
+     * @param type the name of the type
+     * @return the class, or null for a primitive or undefined type
+     */
+    public ClassTreeNode lookupType(String type) {
+        if (type.endsWith("[]")) {
+            return root;
+        }
+        return classMap.get(type);
+    }
+
+    /**
+     * Finds the method called by dispatching the named method on an object
+     * of the given type
+     *
+     * @param type the type of the reference expression
+     * @param methodName the name of the method
+     * @return the method, or null if the type has no such method
+     */
+    public Method resolveDispatch(String type, String methodName) {
+        ClassTreeNode node = lookupType(type);
+        return node == null ? null : node.lookupMethod(methodName);
+    }
+
+    /**
+     * Checks whether a value of one type can be used where another type is
+     * expected without a downcast.  A class conforms to its ancestors, null
+     * to every class and array type, and every array type to Object.  An
+     * array of a class conforms to an array of an ancestor of the class, and
+     * any other type only to itself.
+     *
+     * @param type the type of the value
+     * @param target the expected type
+     * @return true if the type conforms to the target
+     */
+    public boolean isSubtype(String type, String target) {
+        if (type.equals(target)) {
+            return true;
+        }
+        if (type.equals("null")) {
+            return target.endsWith("[]") || classMap.containsKey(target);
+        }
+        if (type.endsWith("[]")) {
+            if (target.equals("Object")) {
+                return true;
+            }
+            if (!target.endsWith("[]")) {
+                return false;
+            }
+            type = type.substring(0, type.length() - 2);
+            target = target.substring(0, target.length() - 2);
+        }
+        ClassTreeNode node = classMap.get(type);
+        ClassTreeNode targetNode = classMap.get(target);
+        return node != null && targetNode != null && node.isSubclassOf(targetNode);
+    }
+
+    /**
+     * @return true if the Main class has a main method, declared or
+     *         inherited, with void return type and no parameters
+     */
+    public boolean hasMainMain() {
+        ClassTreeNode main = classMap.get("Main");
+        Method method = main == null || main.isBuiltIn() ? null : main.lookupMethod("main");
+        return method != null && method.getReturnType().equals("void")
+                && method.getFormalList().getSize() == 0;
+    }
+
+    /**
+     * Adds the built-in classes to the class map, making their declarations
+     */
+    private void addBuiltInClasses() {
+        for (String[] builtIn : BUILT_IN_CLASSES) {
+            MemberList memberList = new MemberList(-1);
+            for (int i = 3; i < builtIn.length; i++) {
+                String[] signature = builtIn[i].split(" ");
+                FormalList formalList = new FormalList(-1);
+                for (int j = 2; j < signature.length; j++) {
+                    formalList.addElement(new Formal(-1, signature[j], "arg" + (j - 1)));
+                }
+                memberList.addElement(new Method(-1, signature[0], signature[1],
+                        formalList, new StmtList(-1)));
+            }
+            Class_ astNode = new Class_(-1, null, builtIn[0], builtIn[1], memberList);
+            ClassTreeNode node = new ClassTreeNode(astNode, true,
+                    Boolean.parseBoolean(builtIn[2]), classMap);
+            if (builtIn[1] == null) {
+                root = node;
+            }
+            else {
+                node.setParent(classMap.get(builtIn[1]));
+            }
+            classMap.put(builtIn[0], node);
+        }
+    }
+
+    /**
+     * Adds the classes of the program to the class map, reporting classes
+     * defined twice
+     *
+     * @param classList the classes of the program
+     * @return the nodes of the classes added, in the order of the program
+     */
+    private List<ClassTreeNode> addClasses(ClassList classList) {
+        List<ClassTreeNode> classes = new ArrayList<>(classList.getSize());
+        for (int i = 0; i < classList.getSize(); i++) {
+            Class_ class_ = (Class_) classList.get(i);
+            ClassTreeNode existing = classMap.get(class_.getName());
+            if (existing != null) {
+                error(class_, existing.isBuiltIn()
+                        ? "Built-in class " + class_.getName() + " cannot be redefined"
+                        : "Class " + class_.getName() + " is already defined");
+                continue;
+            }
+            ClassTreeNode node = new ClassTreeNode(class_, false, true, classMap);
+            classMap.put(class_.getName(), node);
+            classes.add(node);
+        }
+        return classes;
+    }
+
+    /**
+     * Attaches a class of the program to its parent, or to Object if its
+     * parent is not defined or cannot be extended
+     *
+     * @param node the class
+     */
+    private void setParent(ClassTreeNode node) {
+        Class_ class_ = node.getASTNode();
+        String parentName = class_.getParent() == null ? "Object" : class_.getParent();
+        ClassTreeNode parent = classMap.get(parentName);
+        if (parent == null) {
+            error(class_, "Class " + class_.getName() + " extends class "
+                    + parentName + ", which is not defined");
+            parent = root;
+        }
+        else if (!parent.isExtendable()) {
+            error(class_, "Class " + class_.getName()
+                    + " cannot extend built-in class " + parentName);
+            parent = root;
+        }
+        node.setParent(parent);
+    }
+
+    /**
+     * Reports the classes that are their own ancestors and attaches them to
+     * Object.  A class not reached from Object is in a cycle or descends
+     * from a class in one, so following its parents leads to the cycle.
+     *
+     * @param classes the classes of the program
+     * @param reached the classes reached from Object
+     */
+    private void breakCycles(List<ClassTreeNode> classes, Set<ClassTreeNode> reached) {
+        for (ClassTreeNode node : classes) {
+            List<ClassTreeNode> path = new ArrayList<>();
+            Set<ClassTreeNode> onPath = new HashSet<>();
+            ClassTreeNode current = node;
+            while (!reached.contains(current) && onPath.add(current)) {
+                path.add(current);
+                current = current.getParent();
+            }
+            if (!reached.contains(current)) {
+                List<ClassTreeNode> cycle = new ArrayList<>(
+                        path.subList(path.indexOf(current), path.size()));
+                for (ClassTreeNode member : cycle) {
+                    error(member.getASTNode(), "Class " + member.getName()
+                            + " is in an inheritance cycle");
+                }
+                for (ClassTreeNode member : cycle) {
+                    member.setParent(root);
+                }
+            }
+            reached.addAll(path);
+        }
+    }
+
+    /**
+     * Numbers the classes reached from Object in preorder, giving each the
+     * number of its last descendant
+     *
+     * @return the classes reached, in preorder
+     */
+    private List<ClassTreeNode> numberClasses() {
+        List<ClassTreeNode> preorder = new ArrayList<>(classMap.size());
+        Deque<ClassTreeNode> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            ClassTreeNode node = stack.pop();
+            preorder.add(node);
+            List<ClassTreeNode> children = node.getChildren();
+            for (int i = children.size() - 1; i >= 0; i--) {
+                stack.push(children.get(i));
+            }
+        }
+
+        // the descendants of a class follow it in preorder, so the last one
+        // is found from the number of descendants
+        Map<ClassTreeNode, Integer> descendants = new HashMap<>();
+        for (int i = preorder.size() - 1; i >= 0; i--) {
+            ClassTreeNode node = preorder.get(i);
+            int count = 0;
+            for (ClassTreeNode child : node.getChildren()) {
+                count += 1 + descendants.get(child);
+            }
+            descendants.put(node, count);
+            node.setNumbering(i, i + count);
+        }
+        return preorder;
+    }
+
+    /**
+     * Registers a semantic error at a class
+     *
+     * @param class_ the class
+     * @param message the message of the error
+     */
+    private void error(Class_ class_, String message) {
+        errorHandler.register(Error.Kind.SEMANT_ERROR, class_.getFilename(),
+                class_.getLineNum(), message);
+    }
+}
@@ -9,21 +9,31 @@
 
 package proj11DeutschMacDonald.bantam.semant;
 import proj11DeutschMacDonald.bantam.ast.*;
+import proj11DeutschMacDonald.bantam.visitor.CompositeVisitor;
+import proj11DeutschMacDonald.bantam.visitor.MergeableVisitor;
+import proj11DeutschMacDonald.bantam.visitor.Pass;
 import proj11DeutschMacDonald.bantam.visitor.Visitor;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
  * StringConstantsVisitor searches an AST for string constants
- * and stores them in a hashmap
+ * and stores them in a hashmap.  It can also run as a Pass
+ * of a CompositeVisitor, or on a ParallelVisitor, where each
+ * class gives the list of its constants in order and the lists
+ * are numbered in class order when they are merged.
  *
  * @author Martin Deutsch
  * @author Wyett MacDonald
  */
-public class StringConstantsVisitor extends Visitor {
+public class StringConstantsVisitor extends Visitor implements Pass<Map<String, String>>,
+        MergeableVisitor<List<String>, Map<String, String>> {
 
     private Map<String, String> stringConstantsMap = new HashMap<>();
+    private List<String> constants = new ArrayList<>();
     private int num_consts = 0;
 
     /**
@@ -56,9 +66,95 @@ public class StringConstantsVisitor extends Visitor {
      * @return result of visit
      */
     public Object visit(ConstStringExpr node) {
+        addConstant(node);
+        return null;
+    }
+
+    /**
+     * Enter a node as a Pass, skipping method parameters like visit(Method)
+     *
+     * @param node the node
+     * @return true to visit the children of the node
+     */
+    public boolean enter(ASTNode node) {
+        if (node instanceof ConstStringExpr) {
+            addConstant((ConstStringExpr) node);
+        }
+        return !(node instanceof FormalList);
+    }
+
+    /**
+     * Exit a node as a Pass
+     *
+     * @param node the node
+     */
+    public void exit(ASTNode node) {
+    }
+
+    /**
+     * @return false, since every string constant must be found
+     */
+    public boolean isFinished() {
+        return false;
+    }
+
+    /**
+     * @return the hashmap mapping string constants to unique names
+     */
+    public Map<String, String> getResult() {
+        return stringConstantsMap;
+    }
+
+    /**
+     * Find the string constants of one class with a new visitor,
+     * run as a Pass so that the class is walked without recursion
+     *
+     * @param node the class node
+     * @return the string constants of the class, in the order found
+     */
+    public List<String> visitClass(Class_ node) {
+        StringConstantsVisitor visitor = new StringConstantsVisitor();
+        CompositeVisitor composite = new CompositeVisitor();
+        composite.add(visitor);
+        composite.run(node);
+        return visitor.constants;
+    }
+
+    /**
+     * Name the string constants of all the classes in class order,
+     * giving the same names as visiting the classes in turn
+     *
+     * @param partials the string constants of each class
+     * @return the hashmap mapping string constants to unique names
+     */
+    public Map<String, String> merge(List<List<String>> partials) {
+        StringConstantsVisitor visitor = new StringConstantsVisitor();
+        for (List<String> classConstants : partials) {
+            for (String constant : classConstants) {
+                visitor.addConstant(constant);
+            }
+        }
+        return visitor.stringConstantsMap;
+    }
+
+    /**
+     * Give a string constant the next unique name
+     *
+     * @param node the string constant expression node
+     */
+    private void addConstant(ConstStringExpr node) {
+        addConstant(node.getConstant());
+    }
+
+    /**
+     * Give a string constant the next unique name
+     *
+     * @param constant the value of the string constant
+     */
+    private void addConstant(String constant) {
         String const_name = "StringConst_" + num_consts;
-        stringConstantsMap.put(node.getConstant(), const_name);
+        stringConstantsMap.put(constant, const_name);
+        constants.add(constant);
         num_consts++;
-        return null;
     }
 }
\ No newline at end of file
@@ -0,0 +1,360 @@
+/*
+ * File: bantam.util.ClassTreeNode.java
+ * CS361 Project 11
+ * Names: Martin Deutsch and Wyett MacDonald
+ * Date: 2/20/2019
+ * This file contains the ClassTreeNode, a node of the class hierarchy with
+ * the fields and methods of its class
+ */
+
+package proj11DeutschMacDonald.bantam.util;
+
+import proj11DeutschMacDonald.bantam.ast.ASTNode;
+import proj11DeutschMacDonald.bantam.ast.Class_;
+import proj11DeutschMacDonald.bantam.ast.Field;
+import proj11DeutschMacDonald.bantam.ast.Formal;
+import proj11DeutschMacDonald.bantam.ast.FormalList;
+import proj11DeutschMacDonald.bantam.ast.Member;
+import proj11DeutschMacDonald.bantam.ast.MemberList;
+import proj11DeutschMacDonald.bantam.ast.Method;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A ClassTreeNode is one class of the class hierarchy built by the
+ * SemanticAnalyzer.  Besides its parent and children, it holds the tables
+ * of its fields and methods:
+ * <ul>
+ * <li>each field declared in the class has a slot following the slots of
+ *     the fields of its ancestors, as in the layout of an object of the
+ *     class, and a field is found by looking in the class and then in its
+ *     ancestors, as in nested scopes;</li>
+ * <li>the methods, inherited ones included, are flattened into the vtable
+ *     of the class, an overriding method taking the slot of the method it
+ *     overrides, so a method has the same slot in every subclass.</li>
+ * </ul>
+ * Finding the method a dispatch calls is one hash lookup for its slot and
+ * an array access.  Fields are not flattened, because a deep hierarchy
+ * would copy the fields of every ancestor into every class.
+ * <p>
+ * The classes are also numbered in preorder, each node knowing the number
+ * of its last descendant, so whether a class is a subclass of another is
+ * two comparisons rather than a walk up the hierarchy.
+ *
+ * @author Martin Deutsch
+ * @author Wyett MacDonald
+ */
+public class ClassTreeNode {
+
+    private final Class_ astNode;
+    private final boolean builtIn;
+    private final boolean extendable;
+    private final Map<String, ClassTreeNode> classMap; // every class, by name
+    private ClassTreeNode parent;
+    private final List<ClassTreeNode> children = new ArrayList<>();
+    private int number = -1;         // the position of the class in preorder
+    private int lastDescendant = -1; // the number of its last descendant
+
+    private Map<String, Integer> fieldSlots = Collections.emptyMap(); // the
+                                     // fields declared in the class
+    private Field[] fields = new Field[0];
+    private int firstFieldSlot;      // the number of fields of the ancestors
+    private Map<String, Integer> methodSlots = Collections.emptyMap();
+    private Method[] vtable = new Method[0];
+    private ClassTreeNode[] vtableOwners = new ClassTreeNode[0]; // the class
+                                     // declaring the method in each slot
+
+    /**
+     * Constructor creating a ClassTreeNode with no parent or children
+     *
+     * @param astNode the declaration of the class
+     * @param builtIn whether the class is built into the language
+     * @param extendable whether other classes may extend the class
+     * @param classMap the map of every class by name, shared by all nodes
+     */
+    public ClassTreeNode(Class_ astNode, boolean builtIn, boolean extendable,
+                         Map<String, ClassTreeNode> classMap) {
+        this.astNode = astNode;
+        this.builtIn = builtIn;
+        this.extendable = extendable;
+        this.classMap = classMap;
+    }
+
+    /**
+     * @return the name of the class
+     */
+    public String getName() {
+        return astNode.getName();
+    }
+
+    /**
+     * @return the declaration of the class
+     */
+    public Class_ getASTNode() {
+        return astNode;
+    }
+
+    /**
+     * @return true if the class is built into the language
+     */
+    public boolean isBuiltIn() {
+        return builtIn;
+    }
+
+    /**
+     * @return true if other classes may extend the class
+     */
+    public boolean isExtendable() {
+        return extendable;
+    }
+
+    /**
+     * @return the parent class, or null for Object
+     */
+    public ClassTreeNode getParent() {
+        return parent;
+    }
+
+    /**
+     * Makes the given class the parent of this one, removing this class
+     * from the children of its old parent
+     *
+     * @param parent the new parent
+     */
+    public void setParent(ClassTreeNode parent) {
+        if (this.parent != null) {
+            this.parent.children.remove(this);
+        }
+        this.parent = parent;
+        parent.children.add(this);
+    }
+
+    /**
+     * @return the classes extending this one directly
+     */
+    public List<ClassTreeNode> getChildren() {
+        return Collections.unmodifiableList(children);
+    }
+
+    /**
+     * Finds a class of the program by name
+     *
+     * @param name the name of the class
+     * @return the class, or null if there is none
+     */
+    public ClassTreeNode lookupClass(String name) {
+        return classMap.get(name);
+    }
+
+    /**
+     * Sets the preorder numbers of the class and of its last descendant
+     *
+     * @param number the position of the class in preorder
+     * @param lastDescendant the position of its last descendant, which is
+     *                       the class itself if it has no children
+     */
+    public void setNumbering(int number, int lastDescendant) {
+        this.number = number;
+        this.lastDescendant = lastDescendant;
+    }
+
+    /**
+     * Checks whether this class is the given class or a descendant of it
+     *
+     * @param ancestor the other class
+     * @return true if this class is the other class or extends it
+     */
+    public boolean isSubclassOf(ClassTreeNode ancestor) {
+        return ancestor.number <= number && number <= ancestor.lastDescendant;
+    }
+
+    /**
+     * Builds the field and method tables of the class from those of its
+     * parent, which must have been built, and reports fields or methods
+     * declared twice and methods overriding a method with a different
+     * signature
+     *
+     * @param errorHandler the ErrorHandler to register errors with
+     */
+    public void buildTables(ErrorHandler errorHandler) {
+        int firstFieldSlot = parent == null ? 0 : parent.getFieldCount();
+        Map<String, Integer> fieldSlots = new HashMap<>();
+        List<Field> fields = new ArrayList<>();
+        Map<String, Integer> methodSlots = new HashMap<>(
+                parent == null ? Collections.emptyMap() : parent.methodSlots);
+        List<Method> vtable = new ArrayList<>(
+                parent == null ? Collections.emptyList() : Arrays.asList(parent.vtable));
+        List<ClassTreeNode> vtableOwners = new ArrayList<>(
+                parent == null ? Collections.emptyList() : Arrays.asList(parent.vtableOwners));
+
+        MemberList memberList = astNode.getMemberList();
+        for (int i = 0; i < memberList.getSize(); i++) {
+            Member member = (Member) memberList.get(i);
+            if (member instanceof Field) {
+                Field field = (Field) member;
+                if (fieldSlots.containsKey(field.getName())) {
+                    error(errorHandler, field, "Field " + field.getName()
+                            + " is already defined in class " + getName());
+                    continue;
+                }
+                fieldSlots.put(field.getName(), firstFieldSlot + fields.size());
+                fields.add(field);
+            }
+            else {
+                Method method = (Method) member;
+                Integer slot = methodSlots.get(method.getName());
+                if (slot == null) {
+                    methodSlots.put(method.getName(), vtable.size());
+                    vtable.add(method);
+                    vtableOwners.add(this);
+                }
+                else if (vtableOwners.get(slot) == this) {
+                    error(errorHandler, method, "Method " + method.getName()
+                            + " is already defined in class " + getName());
+                }
+                else {
+                    Method overridden = vtable.get(slot);
+                    if (!sameSignature(method, overridden)) {
+                        error(errorHandler, method, "Method " + method.getName()
+                                + " overrides the method of class "
+                                + vtableOwners.get(slot).getName()
+                                + " with a different signature");
+                    }
+                    vtable.set(slot, method);
+                    vtableOwners.set(slot, this);
+                }
+            }
+        }
+
+        this.fieldSlots = fieldSlots;
+        this.fields = fields.toArray(new Field[0]);
+        this.firstFieldSlot = firstFieldSlot;
+        this.methodSlots = methodSlots;
+        this.vtable = vtable.toArray(new Method[0]);
+        this.vtableOwners = vtableOwners.toArray(new ClassTreeNode[0]);
+    }
+
+    /**
+     * @return the number of fields of an object of the class, inherited
+     *         ones included
+     */
+    public int getFieldCount() {
+        return firstFieldSlot + fields.length;
+    }
+
+    /**
+     * @param name the name of a field
+     * @return the slot of the field of that name declared nearest to this
+     *         class, or -1 if there is none
+     */
+    public int getFieldSlot(String name) {
+        for (ClassTreeNode node = this; node != null; node = node.parent) {
+            Integer slot = node.fieldSlots.get(name);
+            if (slot != null) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param name the name of a field
+     * @return the field of that name declared nearest to this class, or
+     *         null if there is none
+     */
+    public Field lookupField(String name) {
+        for (ClassTreeNode node = this; node != null; node = node.parent) {
+            Integer slot = node.fieldSlots.get(name);
+            if (slot != null) {
+                return node.fields[slot - node.firstFieldSlot];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the number of slots of the vtable of the class
+     */
+    public int getVtableSize() {
+        return vtable.length;
+    }
+
+    /**
+     * @param name the name of a method
+     * @return the slot of the method in the vtable, which is the same in
+     *         every subclass, or -1 if the class has no such method
+     */
+    public int getMethodSlot(String name) {
+        Integer slot = methodSlots.get(name);
+        return slot == null ? -1 : slot;
+    }
+
+    /**
+     * @param slot the slot of a method
+     * @return the method a dispatch on an object of this class calls
+     */
+    public Method getMethod(int slot) {
+        return vtable[slot];
+    }
+
+    /**
+     * @param slot the slot of a method
+     * @return the class declaring the method in the slot
+     */
+    public ClassTreeNode getMethodOwner(int slot) {
+        return vtableOwners[slot];
+    }
+
+    /**
+     * @param name the name of a method
+     * @return the method of that name a dispatch on an object of this class
+     *         calls, or null if the class has no such method
+     */
+    public Method lookupMethod(String name) {
+        int slot = getMethodSlot(name);
+        return slot < 0 ? null : vtable[slot];
+    }
+
+    /**
+     * Checks whether two methods have the same return type and parameter
+     * types
+     *
+     * @param method the overriding method
+     * @param overridden the overridden method
+     * @return true if the signatures are the same
+     */
+    private static boolean sameSignature(Method method, Method overridden) {
+        if (!method.getReturnType().equals(overridden.getReturnType())) {
+            return false;
+        }
+        FormalList formals = method.getFormalList();
+        FormalList overriddenFormals = overridden.getFormalList();
+        if (formals.getSize() != overriddenFormals.getSize()) {
+            return false;
+        }
+        for (int i = 0; i < formals.getSize(); i++) {
+            if (!((Formal) formals.get(i)).getType().equals(
+                    ((Formal) overriddenFormals.get(i)).getType())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Registers a semantic error at a member of the class
+     *
+     * @param errorHandler the ErrorHandler
+     * @param node the member
+     * @param message the message of the error
+     */
+    private void error(ErrorHandler errorHandler, ASTNode node, String message) {
+        errorHandler.register(Error.Kind.SEMANT_ERROR, astNode.getFilename(),
+                node.getLineNum(), message);
+    }
+}
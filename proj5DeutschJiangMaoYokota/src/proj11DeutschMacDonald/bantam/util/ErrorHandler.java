@@ -30,16 +30,89 @@ package proj11DeutschMacDonald.bantam.util;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * The <tt>ErrorHandler</tt> class performs error handling.
+ * <p>
+ * Errors are kept in order by filename first and then line number.
+ * Filenames are kept in the order that they are seen, and errors
+ * without a filename come first, the latest first.  Each file has
+ * its own map from line numbers to errors, so registering an error
+ * takes logarithmic time, and at most a fixed number of errors is
+ * kept for each file.
+ * <p>
+ * An ErrorHandler can be used by several threads at once, such as
+ * the threads parsing method bodies lazily.  Listeners are told of
+ * each error kept as soon as it is registered.
  */
 public class ErrorHandler {
     /**
-     * The list of errors
+     * The number of errors kept for each file unless another is given
      */
-    private List<Error> errorList = new ArrayList<>();
+    public static final int DEFAULT_MAX_ERRORS_PER_FILE = 100;
+
+    /**
+     * A Listener is told of the errors registered with an ErrorHandler.
+     * It is called by the thread that registered the error, so it may be
+     * called by several threads at once.
+     */
+    public interface Listener {
+        /**
+         * Called when an error is registered and kept
+         *
+         * @param error the error
+         */
+        void errorRegistered(Error error);
+    }
+
+    /**
+     * The number of errors kept for each file
+     */
+    private final int maxErrorsPerFile;
+    /**
+     * The errors without a filename, in the order registered
+     */
+    private final List<Error> unlocatedErrors = new ArrayList<>();
+    /**
+     * The errors of each file, by filename in the order first seen
+     */
+    private final Map<String, FileErrors> fileErrors = new LinkedHashMap<>();
+    /**
+     * The listeners told of each error
+     */
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    /**
+     * The number of errors kept
+     */
+    private int errorCount;
+    /**
+     * The list of errors, or null if it must be built again
+     */
+    private List<Error> errorList;
+
+    /**
+     * Constructor creating an ErrorHandler keeping the default number
+     * of errors for each file
+     */
+    public ErrorHandler() {
+        this(DEFAULT_MAX_ERRORS_PER_FILE);
+    }
+
+    /**
+     * Constructor creating an ErrorHandler keeping the given number of
+     * errors for each file
+     *
+     * @param maxErrorsPerFile the number of errors kept for each file;
+     *                         later errors of the file are dropped
+     */
+    public ErrorHandler(int maxErrorsPerFile) {
+        this.maxErrorsPerFile = maxErrorsPerFile;
+    }
 
     /**
      * Register an error - auxiliarly method used by the other (public) register methods
@@ -48,9 +121,11 @@ public class ErrorHandler {
      */
     private void register(Error error) {
         // insert a new error into the error list
-        // but keep at most 100 errors.
-        if (errorList.size() < 100) {
-            insert(error);
+        // but keep at most maxErrorsPerFile errors of each file.
+        if (insert(error)) {
+            for (Listener listener : listeners) {
+                listener.errorRegistered(error);
+            }
         }
     }
 
@@ -80,59 +155,139 @@ public class ErrorHandler {
         register((new Error(kind, null, -1, errorMessage)));
     }
 
+    /**
+     * Add a listener to be told of the errors registered from now on
+     *
+     * @param listener the listener
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Remove a listener
+     *
+     * @param listener the listener
+     */
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
     /**
      * return true if any errors were reported.
      */
-    public boolean errorsFound() {
-        return errorList.size() > 0;
+    public synchronized boolean errorsFound() {
+        return errorCount > 0;
+    }
+
+    /**
+     * @return the number of errors each file may have
+     */
+    public int getMaxErrorsPerFile() {
+        return maxErrorsPerFile;
     }
 
     /**
-     * Insert an error onto the error list
+     * Insert an error into the errors of its file, unless the file
+     * has as many errors as it may have
      *
      * @param e error object to insert
+     * @return true if the error was kept
      */
-    private void insert(Error e) {
-        // the algorithm below will insert errors in order by filename first and
-        // then line number.  filenames are kept in the order that they are seen
-        // (i.e., an error is registered with that filename).  line numbers are
-        // ordered numerically.
-
-        int i = 0;
-
-        if (e.getFilename() != null) {
-            // find the section of the list with the same filename (goes to the end
-            // if a section is not found)
-            for (i = 0; i < errorList.size(); i++) {
-                if (errorList.get(i).getFilename() != null) {
-                    if (e.getFilename().equals(errorList.get(i).getFilename())) {
-                        break;
-                    }
-                }
+    private synchronized boolean insert(Error e) {
+        if (e.getFilename() == null) {
+            if (unlocatedErrors.size() == maxErrorsPerFile) {
+                return false;
             }
-
-            // find the correct spot in the section for this error's line number
-            for (; i < errorList.size(); i++) {
-                if (!e.getFilename().equals(errorList.get(i).getFilename()) ||
-                        e.getLineNum() < (errorList.get(i)).getLineNum()) {
-                    break;
-                }
+            unlocatedErrors.add(e);
+        }
+        else {
+            FileErrors errors = fileErrors.get(e.getFilename());
+            if (errors == null) {
+                errors = new FileErrors();
+                fileErrors.put(e.getFilename(), errors);
             }
+            if (errors.size == maxErrorsPerFile) {
+                return false;
+            }
+            errors.add(e);
         }
-
-        // add the error to the list
-        errorList.add(i, e);
+        errorCount++;
+        errorList = null;
+        return true;
     }
 
     /**
      * @return an unmodifiable copy of the list of registered errors
      */
-    public List<Error> getErrorList() {
-        return Collections.unmodifiableList(errorList);
+    public synchronized List<Error> getErrorList() {
+        if (errorList == null) {
+            List<Error> errors = new ArrayList<>(errorCount);
+            for (int i = unlocatedErrors.size() - 1; i >= 0; i--) {
+                errors.add(unlocatedErrors.get(i));
+            }
+            for (FileErrors file : fileErrors.values()) {
+                file.addTo(errors);
+            }
+            errorList = Collections.unmodifiableList(errors);
+        }
+        return errorList;
+    }
+
+    /**
+     * @param filename the name of a file
+     * @return an unmodifiable copy of the list of errors registered
+     *         for the file, in order of line number
+     */
+    public synchronized List<Error> getErrorList(String filename) {
+        FileErrors file = fileErrors.get(filename);
+        if (file == null) {
+            return Collections.emptyList();
+        }
+        List<Error> errors = new ArrayList<>(file.size);
+        file.addTo(errors);
+        return Collections.unmodifiableList(errors);
     }
 
-    public void clear() {
-        errorList.clear();
+    public synchronized void clear() {
+        unlocatedErrors.clear();
+        fileErrors.clear();
+        errorCount = 0;
+        errorList = null;
     }
 
-}
\ No newline at end of file
+    /**
+     * The errors of one file, by line number and then in the order
+     * registered
+     */
+    private static class FileErrors {
+        private final TreeMap<Integer, List<Error>> byLine = new TreeMap<>();
+        private int size;
+
+        /**
+         * Add an error after the errors on the same line
+         *
+         * @param e the error
+         */
+        private void add(Error e) {
+            List<Error> lineErrors = byLine.get(e.getLineNum());
+            if (lineErrors == null) {
+                lineErrors = new ArrayList<>(1);
+                byLine.put(e.getLineNum(), lineErrors);
+            }
+            lineErrors.add(e);
+            size++;
+        }
+
+        /**
+         * Add the errors to a list in order
+         *
+         * @param errors the list
+         */
+        private void addTo(List<Error> errors) {
+            for (List<Error> lineErrors : byLine.values()) {
+                errors.addAll(lineErrors);
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * File: bantam.visitor.CompositeVisitor.java
+ * CS361 Project 11
+ * Names: Martin Deutsch and Wyett MacDonald
+ * Date: 2/20/2019
+ * This file contains the CompositeVisitor, which runs several passes over
+ * the AST in a single walk
+ */
+
+package proj11DeutschMacDonald.bantam.visitor;
+
+import proj11DeutschMacDonald.bantam.ast.ASTNode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A CompositeVisitor walks the AST once and hands every node to each of
+ * its passes in turn, in the order the passes were added.  Each pass gets
+ * the same callbacks, in the same order, as if it walked the tree alone:
+ * when a pass skips the children of a node, the CompositeVisitor remembers
+ * the depth of that node and gives the pass nothing below it, and a
+ * finished pass gets nothing at all.  A subtree is only walked if some pass
+ * still wants it, and the walk ends early once every pass is finished.
+ * The walk is done by PrePostVisitor.walk(), so passes can be run on trees
+ * too deep to visit recursively.
+ *
+ * @author Martin Deutsch
+ * @author Wyett MacDonald
+ */
+public class CompositeVisitor extends PrePostVisitor {
+
+    private final List<Pass<?>> passes = new ArrayList<>();
+    private Pass<?>[] running;  // the passes of the current walk
+    private int[] skipDepths;   // the depth of the node whose children each pass
+                                // skips, or 0 if it skips nothing
+    private boolean[] finished; // whether each pass is finished
+    private int depth;          // the depth of the current node, the root being 1
+    private int activePasses;   // the passes not finished
+
+    /**
+     * Adds a pass to be run by the next call to run()
+     *
+     * @param pass the pass
+     * @return the pass, for getting its result after the walk
+     */
+    public <P extends Pass<?>> P add(P pass) {
+        passes.add(pass);
+        return pass;
+    }
+
+    /**
+     * Runs all the passes over the tree with the given root in one walk
+     *
+     * @param root the root of the tree, usually a Program
+     * @return the results of the passes, in the order they were added
+     */
+    public List<Object> run(ASTNode root) {
+        running = passes.toArray(new Pass<?>[0]);
+        skipDepths = new int[running.length];
+        finished = new boolean[running.length];
+        depth = 0;
+        activePasses = running.length;
+        for (int i = 0; i < running.length; i++) {
+            checkFinished(i);
+        }
+        if (activePasses > 0) {
+            walk(root);
+        }
+
+        List<Object> results = new ArrayList<>(passes.size());
+        for (Pass<?> pass : passes) {
+            results.add(pass.getResult());
+        }
+        return results;
+    }
+
+    /**
+     * Enters the node in every pass that is not skipping it
+     *
+     * @return true if some pass wants the children of the node
+     */
+    protected boolean preVisit(ASTNode node) {
+        depth++;
+        boolean visitChildren = false;
+        for (int i = 0; i < running.length; i++) {
+            if (skipDepths[i] == 0 && !finished[i]) {
+                if (running[i].enter(node)) {
+                    visitChildren = true;
+                }
+                else {
+                    skipDepths[i] = depth;
+                }
+                checkFinished(i);
+            }
+        }
+        return visitChildren && activePasses > 0;
+    }
+
+    /**
+     * Exits the node in every pass that entered it
+     */
+    protected void postVisit(ASTNode node) {
+        for (int i = 0; i < running.length; i++) {
+            if (skipDepths[i] == depth) {
+                skipDepths[i] = 0;
+            }
+            if (skipDepths[i] == 0 && !finished[i]) {
+                running[i].exit(node);
+                checkFinished(i);
+            }
+        }
+        depth--;
+    }
+
+    /**
+     * Marks a pass finished if it says so
+     *
+     * @param i the position of the pass
+     */
+    private void checkFinished(int i) {
+        if (!finished[i] && running[i].isFinished()) {
+            finished[i] = true;
+            activePasses--;
+        }
+    }
+}
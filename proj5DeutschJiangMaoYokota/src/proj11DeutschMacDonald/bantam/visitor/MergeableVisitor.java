@@ -0,0 +1,47 @@
+/*
+ * File: bantam.visitor.MergeableVisitor.java
+ * CS361 Project 11
+ * Names: Martin Deutsch and Wyett MacDonald
+ * Date: 2/20/2019
+ * This file contains the MergeableVisitor interface, for analyses that can
+ * visit the classes of a program separately and merge the results
+ */
+
+package proj11DeutschMacDonald.bantam.visitor;
+
+import proj11DeutschMacDonald.bantam.ast.Class_;
+
+import java.util.List;
+
+/**
+ * A MergeableVisitor is an analysis that a ParallelVisitor can run on
+ * several classes of a program at the same time.  It visits each class on
+ * its own, keeping everything it finds in a partial result for that class
+ * rather than in its own fields, and then merges the partial results.  The
+ * partial results are merged in the order of the classes in the program, so
+ * the result can be the same as visiting the classes one after another.
+ *
+ * @param <P> the type of the partial result of one class
+ * @param <R> the type of the result of the whole program
+ * @author Martin Deutsch
+ * @author Wyett MacDonald
+ */
+public interface MergeableVisitor<P, R> {
+
+    /**
+     * Visits one class.  It may be called for several classes at the same
+     * time, so it must not change the fields of this visitor.
+     *
+     * @param node the class node
+     * @return the partial result of the class
+     */
+    P visitClass(Class_ node);
+
+    /**
+     * Merges the partial results of all the classes
+     *
+     * @param partials the partial results, in the order of the classes
+     * @return the result of the program
+     */
+    R merge(List<P> partials);
+}
@@ -0,0 +1,143 @@
+/*
+ * File: bantam.visitor.ParallelVisitor.java
+ * CS361 Project 11
+ * Names: Martin Deutsch and Wyett MacDonald
+ * Date: 2/20/2019
+ * This file contains the ParallelVisitor, which visits the classes of a
+ * program concurrently
+ */
+
+package proj11DeutschMacDonald.bantam.visitor;
+
+import proj11DeutschMacDonald.bantam.ast.ClassList;
+import proj11DeutschMacDonald.bantam.ast.Class_;
+import proj11DeutschMacDonald.bantam.ast.Program;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * ParallelVisitor runs a MergeableVisitor over the classes of a program on a
+ * ForkJoinPool.  The class list is split in halves until each piece is small
+ * enough, the classes of each piece are visited one after another, and the
+ * partial result of each class is stored at the position of the class.  The
+ * partial results are then merged in that order on the calling thread, so the
+ * result does not depend on which thread visited which class.
+ * <p>
+ * Method bodies that have not been parsed yet are parsed by the thread that
+ * visits them, which is safe because each body is parsed only once.
+ *
+ * @author Martin Deutsch
+ * @author Wyett MacDonald
+ */
+public class ParallelVisitor {
+
+    // the number of pieces to split the classes into for each thread
+    private static final int PIECES_PER_THREAD = 4;
+
+    private final ForkJoinPool pool;
+    private final int parallelism;
+
+    /**
+     * Constructor creating a ParallelVisitor using one thread per processor
+     */
+    public ParallelVisitor() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructor creating a ParallelVisitor with the given number of threads
+     *
+     * @param parallelism the number of classes to visit at the same time
+     */
+    public ParallelVisitor(int parallelism) {
+        this.pool = new ForkJoinPool(parallelism);
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Shuts down the threads of this ParallelVisitor
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Runs the visitor over every class of the program and merges the
+     * partial results
+     *
+     * @param ast the Program node at the root of the AST
+     * @param visitor the visitor
+     * @return the merged result
+     */
+    public <P, R> R run(Program ast, MergeableVisitor<P, R> visitor) {
+        ClassList classList = ast.getClassList();
+        Object[] partials = new Object[classList.getSize()];
+        int pieceSize = Math.max(1, partials.length / (parallelism * PIECES_PER_THREAD));
+        if (parallelism == 1 || partials.length <= pieceSize) {
+            visitClasses(classList, 0, partials.length, visitor, partials);
+        }
+        else {
+            pool.invoke(new Piece(classList, 0, partials.length, pieceSize,
+                    visitor, partials));
+        }
+
+        @SuppressWarnings("unchecked")
+        List<P> partialList = (List<P>) new ArrayList<>(Arrays.asList(partials));
+        return visitor.merge(partialList);
+    }
+
+    /**
+     * Visits a range of classes one after another
+     *
+     * @param classList the classes of the program
+     * @param start the position of the first class to visit
+     * @param end the position just past the last class to visit
+     * @param visitor the visitor
+     * @param partials the array to store the partial result of each class in
+     */
+    private static void visitClasses(ClassList classList, int start, int end,
+                                     MergeableVisitor<?, ?> visitor, Object[] partials) {
+        for (int i = start; i < end; i++) {
+            partials[i] = visitor.visitClass((Class_) classList.get(i));
+        }
+    }
+
+    /**
+     * The task visiting a range of classes, splitting it in halves until
+     * it is no larger than the piece size
+     */
+    private static class Piece extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final ClassList classList;
+        private final int start;
+        private final int end;
+        private final int pieceSize;
+        private final MergeableVisitor<?, ?> visitor;
+        private final Object[] partials;
+
+        Piece(ClassList classList, int start, int end, int pieceSize,
+              MergeableVisitor<?, ?> visitor, Object[] partials) {
+            this.classList = classList;
+            this.start = start;
+            this.end = end;
+            this.pieceSize = pieceSize;
+            this.visitor = visitor;
+            this.partials = partials;
+        }
+
+        protected void compute() {
+            if (end - start <= pieceSize) {
+                visitClasses(classList, start, end, visitor, partials);
+                return;
+            }
+            int middle = (start + end) >>> 1;
+            invokeAll(new Piece(classList, start, middle, pieceSize, visitor, partials),
+                    new Piece(classList, middle, end, pieceSize, visitor, partials));
+        }
+    }
+}
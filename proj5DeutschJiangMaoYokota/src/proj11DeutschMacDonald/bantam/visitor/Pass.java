@@ -0,0 +1,53 @@
+/*
+ * File: bantam.visitor.Pass.java
+ * CS361 Project 11
+ * Names: Martin Deutsch and Wyett MacDonald
+ * Date: 2/20/2019
+ * This file contains the Pass interface, for analyses that can share one
+ * walk of the AST with other analyses
+ */
+
+package proj11DeutschMacDonald.bantam.visitor;
+
+import proj11DeutschMacDonald.bantam.ast.ASTNode;
+
+/**
+ * A Pass is an analysis of the AST written as callbacks, so that a
+ * CompositeVisitor can run several passes in one walk of the tree.  The
+ * walk is in the order of Visitor: enter() is called on a node before its
+ * children and exit() after them.  A pass that does not need the children
+ * of a node returns false from enter(), and a pass that has its result
+ * returns true from isFinished(); either way it receives no more callbacks
+ * for those nodes, while the other passes go on.
+ *
+ * @param <R> the type of the result of the pass
+ * @author Martin Deutsch
+ * @author Wyett MacDonald
+ */
+public interface Pass<R> {
+
+    /**
+     * Called when the walk reaches a node, before its children
+     *
+     * @param node the node
+     * @return true to receive the callbacks for the children of the node
+     */
+    boolean enter(ASTNode node);
+
+    /**
+     * Called after the children of a node, for every node entered
+     *
+     * @param node the node
+     */
+    void exit(ASTNode node);
+
+    /**
+     * @return true if the pass needs no more callbacks
+     */
+    boolean isFinished();
+
+    /**
+     * @return the result of the pass, once the walk is over
+     */
+    R getResult();
+}
@@ -0,0 +1,428 @@
+/*
+ * File: bantam.visitor.PrePostVisitor.java
+ * CS361 Project 11
+ * Names: Martin Deutsch and Wyett MacDonald
+ * Date: 2/20/2019
+ * This file contains the PrePostVisitor, a Visitor that reports every
+ * node to two hooks instead of one method per kind of node
+ */
+
+package proj11DeutschMacDonald.bantam.visitor;
+
+import proj11DeutschMacDonald.bantam.ast.*;
+
+/**
+ * A PrePostVisitor walks the whole AST in the order of Visitor, calling
+ * preVisit() on each node before its children and postVisit() after them.
+ * It is the base for visitors that treat many kinds of node alike, such as
+ * CompositeVisitor, so that they need not override every visit method.
+ * Its walk() method calls the same hooks in the same order with an
+ * explicit stack, for trees too deep to visit recursively.
+ *
+ * @author Martin Deutsch
+ * @author Wyett MacDonald
+ */
+public abstract class PrePostVisitor extends Visitor {
+
+    /**
+     * Called when a node is reached, before its children
+     *
+     * @param node the node
+     * @return true to visit the children of the node, false to skip them
+     */
+    protected abstract boolean preVisit(ASTNode node);
+
+    /**
+     * Called after the children of a node were visited or skipped
+     *
+     * @param node the node
+     */
+    protected abstract void postVisit(ASTNode node);
+
+    /**
+     * Walks the tree with the given root, calling the hooks in the same
+     * order as root.accept(this), but without recursion, so that a tree
+     * of any depth can be walked
+     *
+     * @param root the root of the tree
+     */
+    public void walk(ASTNode root) {
+        new TreeWalker(this).walk(root);
+    }
+
+    public Object visit(Program node) {
+        if (preVisit(node)) {
+            super.visit(node);
+        }
+        postVisit(node);
+        return null;
+    }
+
+    public Object visit(ClassList node) {
+        if (preVisit(node)) {
+            super.visit(node);
+        }
+        postVisit(node);
+        return null;
+    }
+
+    public Object visit(Class_ node) {
+        if (preVisit(node)) {
+            super.visit(node);
+        }
+        postVisit(node);
+        return null;
+    }
+
+    public Object visit(MemberList node) {
+        if (preVisit(node)) {
+            super.visit(node);
+        }
+        postVisit(node);
+        return null;
+    }
+
+    public Object visit(Field node) {
+        if (preVisit(node)) {
+            super.visit(node);
+        }
+        postVisit(node);
+        return null;
+    }
+
+    public Object visit(Method node) {
+        if (preVisit(node)) {
+            super.visit(node);
+        }
+        postVisit(node);
+        return null;
+    }
+
+    public Object visit(FormalList node) {
+        if (preVisit(node)) {
+            super.visit(node);
+        }
+        postVisit(node);
+        return null;
+    }
+
+    public Object visit(Formal node) {
+        if (preVisit(node)) {
+            super.visit(node);
+        }
+        postVisit(node);
+        return null;
+    }
+
+    public Object visit(StmtList node) {
+        if (preVisit(node)) {
+            super.visit(node);
+        }
+        postVisit(node);
+        return null;
+    }
+
+    public Object visit(DeclStmt node) {
+        if (preVisit(node)) {
+            super.visit(node);
+        }
+        postVisit(node);
+        return null;
+    }
+
+    public Object visit(ExprStmt node) {
+        if (preVisit(node)) {
+            super.visit(node);
+        }
+        postVisit(node);
+        return null;
+    }
+
+    public Object visit(IfStmt node) {
+        if (preVisit(node)) {
+            super.visit(node);
+        }
+        postVisit(node);
+        return null;
+    }
+
+    public Object visit(WhileStmt node) {
+        if (preVisit(node)) {
+            super.visit(node);
+        }
+        postVisit(node);
+        return null;
+    }
+
+    public Object visit(ForStmt node) {
+        if (preVisit(node)) {
+            super.visit(node);
+        }
+        postVisit(node);
+        return null;
+    }
+
+    public Object visit(BreakStmt node) {
+        if (preVisit(node)) {
+            super.visit(node);
+        }
+        postVisit(node);
+        return null;
+    }
+
+    public Object visit(BlockStmt node) {
+        if (preVisit(node)) {
+            super.visit(node);
+        }
+        postVisit(node);
+        return null;
+    }
+
+    public Object visit(ReturnStmt node) {
+        if (preVisit(node)) {
+            super.visit(node);
+        }
+        postVisit(node);
+        return null;
+    }
+
+    public Object visit(ExprList node) {
+        if (preVisit(node)) {
+            super.visit(node);
+        }
+        postVisit(node);
+        return null;
+    }
+
+    public Object visit(DispatchExpr node) {
+        if (preVisit(node)) {
+            super.visit(node);
+        }
+        postVisit(node);
+        return null;
+    }
+
+    public Object visit(NewExpr node) {
+        if (preVisit(node)) {
+            super.visit(node);
+        }
+        postVisit(node);
+        return null;
+    }
+
+    public Object visit(NewArrayExpr node) {
+        if (preVisit(node)) {
+            super.visit(node);
+        }
+        postVisit(node);
+        return null;
+    }
+
+    public Object visit(InstanceofExpr node) {
+        if (preVisit(node)) {
+            super.visit(node);
+        }
+        postVisit(node);
+        return null;
+    }
+
+    public Object visit(CastExpr node) {
+        if (preVisit(node)) {
+            super.visit(node);
+        }
+        postVisit(node);
+        return null;
+    }
+
+    public Object visit(AssignExpr node) {
+        if (preVisit(node)) {
+            super.visit(node);
+        }
+        postVisit(node);
+        return null;
+    }
+
+    public Object visit(ArrayAssignExpr node) {
+        if (preVisit(node)) {
+            super.visit(node);
+        }
+        postVisit(node);
+        return null;
+    }
+
+    public Object visit(BinaryCompEqExpr node) {
+        if (preVisit(node)) {
+            super.visit(node);
+        }
+        postVisit(node);
+        return null;
+    }
+
+    public Object visit(BinaryCompNeExpr node) {
+        if (preVisit(node)) {
+            super.visit(node);
+        }
+        postVisit(node);
+        return null;
+    }
+
+    public Object visit(BinaryCompLtExpr node) {
+        if (preVisit(node)) {
+            super.visit(node);
+        }
+        postVisit(node);
+        return null;
+    }
+
+    public Object visit(BinaryCompLeqExpr node) {
+        if (preVisit(node)) {
+            super.visit(node);
+        }
+        postVisit(node);
+        return null;
+    }
+
+    public Object visit(BinaryCompGtExpr node) {
+        if (preVisit(node)) {
+            super.visit(node);
+        }
+        postVisit(node);
+        return null;
+    }
+
+    public Object visit(BinaryCompGeqExpr node) {
+        if (preVisit(node)) {
+            super.visit(node);
+        }
+        postVisit(node);
+        return null;
+    }
+
+    public Object visit(BinaryLogicAndExpr node) {
+        if (preVisit(node)) {
+            super.visit(node);
+        }
+        postVisit(node);
+        return null;
+    }
+
+    public Object visit(BinaryLogicOrExpr node) {
+        if (preVisit(node)) {
+            super.visit(node);
+        }
+        postVisit(node);
+        return null;
+    }
+
+    public Object visit(BinaryArithPlusExpr node) {
+        if (preVisit(node)) {
+            super.visit(node);
+        }
+        postVisit(node);
+        return null;
+    }
+
+    public Object visit(BinaryArithMinusExpr node) {
+        if (preVisit(node)) {
+            super.visit(node);
+        }
+        postVisit(node);
+        return null;
+    }
+
+    public Object visit(BinaryArithTimesExpr node) {
+        if (preVisit(node)) {
+            super.visit(node);
+        }
+        postVisit(node);
+        return null;
+    }
+
+    public Object visit(BinaryArithDivideExpr node) {
+        if (preVisit(node)) {
+            super.visit(node);
+        }
+        postVisit(node);
+        return null;
+    }
+
+    public Object visit(BinaryArithModulusExpr node) {
+        if (preVisit(node)) {
+            super.visit(node);
+        }
+        postVisit(node);
+        return null;
+    }
+
+    public Object visit(UnaryNegExpr node) {
+        if (preVisit(node)) {
+            super.visit(node);
+        }
+        postVisit(node);
+        return null;
+    }
+
+    public Object visit(UnaryNotExpr node) {
+        if (preVisit(node)) {
+            super.visit(node);
+        }
+        postVisit(node);
+        return null;
+    }
+
+    public Object visit(UnaryIncrExpr node) {
+        if (preVisit(node)) {
+            super.visit(node);
+        }
+        postVisit(node);
+        return null;
+    }
+
+    public Object visit(UnaryDecrExpr node) {
+        if (preVisit(node)) {
+            super.visit(node);
+        }
+        postVisit(node);
+        return null;
+    }
+
+    public Object visit(VarExpr node) {
+        if (preVisit(node)) {
+            super.visit(node);
+        }
+        postVisit(node);
+        return null;
+    }
+
+    public Object visit(ArrayExpr node) {
+        if (preVisit(node)) {
+            super.visit(node);
+        }
+        postVisit(node);
+        return null;
+    }
+
+    public Object visit(ConstIntExpr node) {
+        if (preVisit(node)) {
+            super.visit(node);
+        }
+        postVisit(node);
+        return null;
+    }
+
+    public Object visit(ConstBooleanExpr node) {
+        if (preVisit(node)) {
+            super.visit(node);
+        }
+        postVisit(node);
+        return null;
+    }
+
+    public Object visit(ConstStringExpr node) {
+        if (preVisit(node)) {
+            super.visit(node);
+        }
+        postVisit(node);
+        return null;
+    }
+}
@@ -0,0 +1,439 @@
+/*
+ * File: bantam.visitor.TreeWalker.java
+ * CS361 Project 11
+ * Names: Martin Deutsch and Wyett MacDonald
+ * Date: 2/20/2019
+ * This file contains the TreeWalker, which walks the AST for a
+ * PrePostVisitor without overflowing the thread's stack
+ */
+
+package proj11DeutschMacDonald.bantam.visitor;
+
+import proj11DeutschMacDonald.bantam.ast.*;
+
+import java.util.Arrays;
+
+/**
+ * A TreeWalker walks an AST for a PrePostVisitor, calling its preVisit() and
+ * postVisit() hooks in the same order as accept() would, for trees of any
+ * depth, such as a long chain of binary expressions.
+ * <p>
+ * The TreeWalker is itself a Visitor whose visit methods hand the children
+ * of a node, in the order of Visitor, to child().  Near the root, child()
+ * visits the child at once by recursion, which is as fast as accept().  Once
+ * the walk is MAX_RECURSION nodes deep, the rest of that subtree is walked
+ * with an explicit stack instead: child() pushes each child, the children
+ * of a node are reversed on the stack so that they are popped in order, and
+ * each node is on the stack once to be entered and, if it has children, once
+ * more to be exited.  The thread's stack therefore never holds more than
+ * MAX_RECURSION nodes.
+ * <p>
+ * The body of a method is only asked for once its parameters have been
+ * visited, since a lazily parsed body is parsed when it is first asked for.
+ *
+ * @author Martin Deutsch
+ * @author Wyett MacDonald
+ */
+final class TreeWalker extends Visitor {
+
+    // the depth below which subtrees are walked with the explicit stack
+    private static final int MAX_RECURSION = 200;
+
+    // what to do with a node when it is popped
+    private static final byte ENTER = 0; // call preVisit() and push the children
+    private static final byte EXIT = 1;  // call postVisit()
+    private static final byte BODY = 2;  // push the body of the method
+
+    private final PrePostVisitor visitor;
+    private int depth;                         // the depth of the recursion
+    private boolean pushing;                   // whether child() pushes children
+    private ASTNode[] nodes = new ASTNode[64]; // the stack of nodes
+    private byte[] states = new byte[64];      // what to do with each node
+    private int size;                          // the number of nodes on the stack
+
+    /**
+     * Constructor creating a TreeWalker for the given visitor
+     *
+     * @param visitor the visitor whose hooks to call
+     */
+    TreeWalker(PrePostVisitor visitor) {
+        this.visitor = visitor;
+    }
+
+    /**
+     * Walks the tree with the given root
+     *
+     * @param root the root of the tree
+     */
+    void walk(ASTNode root) {
+        visitNode(root);
+    }
+
+    /**
+     * Visits a node and its children by recursion, or with the explicit
+     * stack if the recursion is too deep
+     *
+     * @param node the node
+     */
+    private void visitNode(ASTNode node) {
+        if (depth == MAX_RECURSION) {
+            walkWithStack(node);
+            return;
+        }
+        if (visitor.preVisit(node)) {
+            depth++;
+            node.accept(this);
+            depth--;
+        }
+        visitor.postVisit(node);
+    }
+
+    /**
+     * Walks a subtree with the explicit stack
+     *
+     * @param root the root of the subtree
+     */
+    private void walkWithStack(ASTNode root) {
+        pushing = true;
+        push(root, ENTER);
+        while (size > 0) {
+            size--;
+            ASTNode node = nodes[size];
+            byte state = states[size];
+            if (state == ENTER) {
+                if (visitor.preVisit(node)) {
+                    push(node, EXIT);
+                    int first = size;
+                    node.accept(this);
+                    if (size == first) {
+                        // no children, so exit the node now
+                        size--;
+                        visitor.postVisit(node);
+                    }
+                    else {
+                        reverse(first, size);
+                    }
+                }
+                else {
+                    visitor.postVisit(node);
+                }
+            }
+            else if (state == EXIT) {
+                visitor.postVisit(node);
+            }
+            else {
+                push(((Method) node).getStmtList(), ENTER);
+            }
+        }
+        pushing = false;
+    }
+
+    /**
+     * Visits or pushes a child of the current node
+     *
+     * @param node the child
+     */
+    private void child(ASTNode node) {
+        if (pushing) {
+            push(node, ENTER);
+        }
+        else {
+            visitNode(node);
+        }
+    }
+
+    /**
+     * Visits or pushes a child of the current node, if there is one
+     *
+     * @param node the child, or null
+     */
+    private void childIfPresent(ASTNode node) {
+        if (node != null) {
+            child(node);
+        }
+    }
+
+    /**
+     * Visits or pushes the elements of a list node
+     *
+     * @param node the list node
+     */
+    private void children(ListNode node) {
+        for (int i = 0; i < node.getSize(); i++) {
+            child(node.get(i));
+        }
+    }
+
+    /**
+     * Visits or pushes the operands of a binary expression
+     *
+     * @param node the binary expression node
+     */
+    private void operands(BinaryExpr node) {
+        child(node.getLeftExpr());
+        child(node.getRightExpr());
+    }
+
+    /**
+     * Visits the body of a method, or pushes the method so that its body
+     * is pushed once its parameters have been visited
+     *
+     * @param node the method node
+     */
+    private void body(Method node) {
+        if (pushing) {
+            push(node, BODY);
+        }
+        else {
+            visitNode(node.getStmtList());
+        }
+    }
+
+    /**
+     * Pushes a node with what to do with it, growing the stack if needed
+     *
+     * @param node the node
+     * @param state what to do with the node when it is popped
+     */
+    private void push(ASTNode node, byte state) {
+        if (size == nodes.length) {
+            nodes = Arrays.copyOf(nodes, size * 2);
+            states = Arrays.copyOf(states, size * 2);
+        }
+        nodes[size] = node;
+        states[size] = state;
+        size++;
+    }
+
+    /**
+     * Reverses the entries of the stack from first to end
+     *
+     * @param first the first entry to reverse
+     * @param end the entry just past the last one to reverse
+     */
+    private void reverse(int first, int end) {
+        for (int i = first, j = end - 1; i < j; i++, j--) {
+            ASTNode node = nodes[i];
+            nodes[i] = nodes[j];
+            nodes[j] = node;
+            byte state = states[i];
+            states[i] = states[j];
+            states[j] = state;
+        }
+    }
+
+    public Object visit(Program node) {
+        child(node.getClassList());
+        return null;
+    }
+
+    public Object visit(ClassList node) {
+        children(node);
+        return null;
+    }
+
+    public Object visit(MemberList node) {
+        children(node);
+        return null;
+    }
+
+    public Object visit(Class_ node) {
+        child(node.getMemberList());
+        return null;
+    }
+
+    public Object visit(Field node) {
+        childIfPresent(node.getInit());
+        return null;
+    }
+
+    public Object visit(Method node) {
+        child(node.getFormalList());
+        body(node);
+        return null;
+    }
+
+    public Object visit(FormalList node) {
+        children(node);
+        return null;
+    }
+
+    public Object visit(StmtList node) {
+        children(node);
+        return null;
+    }
+
+    public Object visit(DeclStmt node) {
+        child(node.getInit());
+        return null;
+    }
+
+    public Object visit(ExprStmt node) {
+        child(node.getExpr());
+        return null;
+    }
+
+    public Object visit(IfStmt node) {
+        child(node.getPredExpr());
+        child(node.getThenStmt());
+        childIfPresent(node.getElseStmt());
+        return null;
+    }
+
+    public Object visit(WhileStmt node) {
+        child(node.getPredExpr());
+        child(node.getBodyStmt());
+        return null;
+    }
+
+    public Object visit(ForStmt node) {
+        childIfPresent(node.getInitExpr());
+        childIfPresent(node.getPredExpr());
+        childIfPresent(node.getUpdateExpr());
+        child(node.getBodyStmt());
+        return null;
+    }
+
+    public Object visit(BlockStmt node) {
+        child(node.getStmtList());
+        return null;
+    }
+
+    public Object visit(ReturnStmt node) {
+        childIfPresent(node.getExpr());
+        return null;
+    }
+
+    public Object visit(ExprList node) {
+        children(node);
+        return null;
+    }
+
+    public Object visit(DispatchExpr node) {
+        childIfPresent(node.getRefExpr());
+        child(node.getActualList());
+        return null;
+    }
+
+    public Object visit(NewArrayExpr node) {
+        child(node.getSize());
+        return null;
+    }
+
+    public Object visit(InstanceofExpr node) {
+        child(node.getExpr());
+        return null;
+    }
+
+    public Object visit(CastExpr node) {
+        child(node.getExpr());
+        return null;
+    }
+
+    public Object visit(AssignExpr node) {
+        child(node.getExpr());
+        return null;
+    }
+
+    public Object visit(ArrayAssignExpr node) {
+        child(node.getIndex());
+        child(node.getExpr());
+        return null;
+    }
+
+    public Object visit(BinaryCompEqExpr node) {
+        operands(node);
+        return null;
+    }
+
+    public Object visit(BinaryCompNeExpr node) {
+        operands(node);
+        return null;
+    }
+
+    public Object visit(BinaryCompLtExpr node) {
+        operands(node);
+        return null;
+    }
+
+    public Object visit(BinaryCompLeqExpr node) {
+        operands(node);
+        return null;
+    }
+
+    public Object visit(BinaryCompGtExpr node) {
+        operands(node);
+        return null;
+    }
+
+    public Object visit(BinaryCompGeqExpr node) {
+        operands(node);
+        return null;
+    }
+
+    public Object visit(BinaryLogicAndExpr node) {
+        operands(node);
+        return null;
+    }
+
+    public Object visit(BinaryLogicOrExpr node) {
+        operands(node);
+        return null;
+    }
+
+    public Object visit(BinaryArithPlusExpr node) {
+        operands(node);
+        return null;
+    }
+
+    public Object visit(BinaryArithMinusExpr node) {
+        operands(node);
+        return null;
+    }
+
+    public Object visit(BinaryArithTimesExpr node) {
+        operands(node);
+        return null;
+    }
+
+    public Object visit(BinaryArithDivideExpr node) {
+        operands(node);
+        return null;
+    }
+
+    public Object visit(BinaryArithModulusExpr node) {
+        operands(node);
+        return null;
+    }
+
+    public Object visit(UnaryNegExpr node) {
+        child(node.getExpr());
+        return null;
+    }
+
+    public Object visit(UnaryNotExpr node) {
+        child(node.getExpr());
+        return null;
+    }
+
+    public Object visit(UnaryIncrExpr node) {
+        child(node.getExpr());
+        return null;
+    }
+
+    public Object visit(UnaryDecrExpr node) {
+        child(node.getExpr());
+        return null;
+    }
+
+    public Object visit(VarExpr node) {
+        childIfPresent(node.getRef());
+        return null;
+    }
+
+    public Object visit(ArrayExpr node) {
+        childIfPresent(node.getRef());
+        child(node.getIndex());
+        return null;
+    }
+}